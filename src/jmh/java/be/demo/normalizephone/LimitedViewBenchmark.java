@@ -0,0 +1,118 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.beans.OutputPhone;
+import be.demo.normalizephone.beans.Validity;
+import be.demo.normalizephone.beans.Views;
+import be.demo.normalizephone.business.NormalizePhone;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of an invalid phone number, for which only the limited view is returned.
+ * <p>
+ * legacyLimitedViewRoundTrip is the serialize/deserialize round trip that was done on top of the normalization of
+ * every invalid phone number, to drop the fields that are not part of Views.Limited. Run with the gc profiler to
+ * compare the allocation per invalid phone number.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LimitedViewBenchmark {
+
+    private final NormalizePhone normalizePhone = new NormalizePhone();
+
+    // too long national number, limited view
+    private final InputPhone invalidPhone = new InputPhone("+32255596566", "BE");
+
+    private final LegacyOutputPhone fullOutputPhone = new LegacyOutputPhone(32, "2", "55596566", 255596566L, "02/55596566", 320002,
+            new Validity((short) 1, "invalid length for National def", "01", "ERROR_OUTPUT_TOO_LONG"), "BE", null,
+            "+32255596566", "+32 2555 96 56 6", "+32 (02) 55596566");
+
+    @Benchmark
+    public OutputPhone normalizeInvalid() {
+        return normalizePhone.normalize(invalidPhone);
+    }
+
+    @Benchmark
+    public LegacyOutputPhone legacyLimitedViewRoundTrip() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        String output = mapper.writeValueAsString(fullOutputPhone);
+
+        return mapper
+                .readerWithView(Views.Limited.class)
+                .forType(LegacyOutputPhone.class)
+                .readValue(output);
+    }
+
+    /**
+     * The mutable OutputPhone bean of that time
+     */
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public static class LegacyOutputPhone {
+
+        @JsonView(Views.Internal.class)
+        public Integer internationalPrefix;
+        @JsonView(Views.Internal.class)
+        public String zonalPrefix;
+        @JsonView(Views.Internal.class)
+        public String number;
+        @JsonView(Views.Internal.class)
+        public Long phoneDedupKey;
+        @JsonView(Views.Internal.class)
+        public String phoneNormalized;
+        @JsonIgnore
+        public Integer zoneId;
+        @JsonView(Views.Limited.class)
+        public Validity validity;
+        @JsonView(Views.Internal.class)
+        public String countryCode;
+        @JsonView(Views.Limited.class)
+        public Short phoneType;
+        @JsonView(Views.Internal.class)
+        public String phoneIntNormalized;
+        @JsonView(Views.Internal.class)
+        public String phoneIntNormalizedE123;
+        @JsonView(Views.Internal.class)
+        public String phoneIntNormalizedSopres;
+
+        public LegacyOutputPhone() {
+        }
+
+        LegacyOutputPhone(Integer internationalPrefix, String zonalPrefix, String number, Long phoneDedupKey, String phoneNormalized, Integer zoneId,
+                          Validity validity, String countryCode, Short phoneType, String phoneIntNormalized, String phoneIntNormalizedE123,
+                          String phoneIntNormalizedSopres) {
+            this.internationalPrefix = internationalPrefix;
+            this.zonalPrefix = zonalPrefix;
+            this.number = number;
+            this.phoneDedupKey = phoneDedupKey;
+            this.phoneNormalized = phoneNormalized;
+            this.zoneId = zoneId;
+            this.validity = validity;
+            this.countryCode = countryCode;
+            this.phoneType = phoneType;
+            this.phoneIntNormalized = phoneIntNormalized;
+            this.phoneIntNormalizedE123 = phoneIntNormalizedE123;
+            this.phoneIntNormalizedSopres = phoneIntNormalizedSopres;
+        }
+
+    }
+
+}
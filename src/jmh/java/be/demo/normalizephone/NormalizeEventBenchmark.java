@@ -0,0 +1,75 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.beans.OutputPhone;
+import be.demo.normalizephone.business.NormalizeEvent;
+import be.demo.normalizephone.business.NormalizePhone;
+import jdk.jfr.Recording;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the JFR normalization events: without recording, with a recording that leaves out the events below its
+ * threshold, and with a recording of every event
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalizeEventBenchmark {
+
+    public enum RecordingMode {
+        OFF,
+        THRESHOLD,
+        ALL
+    }
+
+    @Param
+    public RecordingMode recordingMode;
+
+    @Param({"VALID_BE_MOBILE", "TOO_LONG"})
+    public NormalizePhoneBenchmark.ValidityClass validityClass;
+
+    private NormalizePhone normalizePhone;
+    private InputPhone inputPhone;
+    private Recording recording;
+
+    @Setup
+    public void setup() {
+        normalizePhone = new NormalizePhone();
+        inputPhone = validityClass.inputPhone();
+        if (recordingMode != RecordingMode.OFF) {
+            recording = new Recording();
+            recording.enable(NormalizeEvent.NAME).withThreshold(recordingMode == RecordingMode.ALL ? Duration.ZERO : Duration.ofMillis(1));
+            recording.start();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    @Benchmark
+    public OutputPhone normalize() {
+        return normalizePhone.normalize(inputPhone);
+    }
+
+}
@@ -0,0 +1,81 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.beans.OutputField;
+import be.demo.normalizephone.beans.OutputPhone;
+import be.demo.normalizephone.business.NormalizePhone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalization hot path, for each validity class
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalizePhoneBenchmark {
+
+    private static final Set<OutputField> E164 = EnumSet.of(OutputField.PHONE_INT_NORMALIZED);
+
+    @Param
+    public ValidityClass validityClass;
+
+    private NormalizePhone normalizePhone;
+    private InputPhone inputPhone;
+
+    @Setup
+    public void setup() {
+        normalizePhone = new NormalizePhone();
+        inputPhone = validityClass.inputPhone();
+    }
+
+    @Benchmark
+    public OutputPhone normalize() {
+        return normalizePhone.normalize(inputPhone);
+    }
+
+    // only the validity and the E.164 format
+    @Benchmark
+    public OutputPhone normalizeE164() {
+        return normalizePhone.normalize(inputPhone, E164);
+    }
+
+    public enum ValidityClass {
+        VALID_BE_MOBILE("0479445566", "BE"),
+        VALID_FOREIGN_FIXED_LINE("+33 1 42 68 53 00", "BE"),
+        TOO_LONG("+32255596566", "BE"),
+        LETTERS("+3247944556A", "BE"),
+        BLANK("   ", "BE"),
+        UNKNOWN_COUNTRY_CODE("+999123456", "BE"),
+        MISSING_DEFAULT_COUNTRY("0479445566", "");
+
+        private final String phone;
+        private final String defaultCountryCode;
+
+        ValidityClass(String phone, String defaultCountryCode) {
+            this.phone = phone;
+            this.defaultCountryCode = defaultCountryCode;
+        }
+
+        public InputPhone inputPhone() {
+            return new InputPhone(phone, defaultCountryCode);
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.business.NormalizePhone;
+import be.demo.normalizephone.business.NormalizePhoneBatch;
+import be.demo.normalizephone.business.NormalizePhoneStream;
+import be.demo.normalizephone.config.NormalizeProperties;
+import be.demo.normalizephone.controller.NormalizePhoneController;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full JSON path of POST /normalize: read the request body, normalize and write the response body, with the same
+ * Jackson defaults as the application. The servlet container and the Spring dispatching are left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalizePhoneControllerBenchmark {
+
+    @Param
+    public NormalizePhoneBenchmark.ValidityClass validityClass;
+
+    private NormalizePhoneBatch batchService;
+    private NormalizePhoneController controller;
+    private ObjectReader inputReader;
+    private ObjectWriter phoneWriter;
+    private byte[] requestBody;
+    private InputPhone inputPhone;
+    // a response stream that drops the bytes, Jackson closes it after each response
+    private final OutputStream responseStream = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        NormalizePhone normalizePhone = new NormalizePhone();
+        batchService = new NormalizePhoneBatch(normalizePhone, new NormalizeProperties());
+        controller = new NormalizePhoneController(normalizePhone, batchService, new NormalizePhoneStream(batchService, objectMapper));
+
+        inputReader = objectMapper.readerFor(InputPhone.class);
+        phoneWriter = objectMapper.writer();
+        requestBody = objectMapper.writeValueAsString(validityClass.inputPhone()).getBytes(StandardCharsets.UTF_8);
+        inputPhone = validityClass.inputPhone();
+    }
+
+    @TearDown
+    public void tearDown() {
+        batchService.shutdown();
+    }
+
+    @Benchmark
+    public byte[] normalizeJson() throws IOException {
+        InputPhone inputPhone = inputReader.readValue(requestBody);
+
+        return phoneWriter.writeValueAsBytes(controller.normalizePhone(inputPhone, null, null));
+    }
+
+    /**
+     * Normalize an already read request and write the response to the response stream, the allocation of this part
+     * depends on the result objects. Run with the gc profiler.
+     */
+    @Benchmark
+    public void normalizeToStream(Blackhole blackhole) throws IOException {
+        phoneWriter.writeValue(responseStream, controller.normalizePhone(inputPhone, null, null));
+        blackhole.consume(responseStream);
+    }
+
+}
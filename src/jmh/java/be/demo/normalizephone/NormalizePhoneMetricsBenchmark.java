@@ -0,0 +1,58 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.beans.OutputPhone;
+import be.demo.normalizephone.business.NormalizePhone;
+import be.demo.normalizephone.business.NormalizePhoneMetrics;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the stage timers and the result counters on the normalization
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalizePhoneMetricsBenchmark {
+
+    @Param({"false", "true"})
+    public boolean metricsEnabled;
+
+    @Param({"VALID_BE_MOBILE", "TOO_LONG"})
+    public NormalizePhoneBenchmark.ValidityClass validityClass;
+
+    private NormalizePhone normalizePhone;
+    private InputPhone inputPhone;
+
+    @Setup
+    public void setup() {
+        NormalizePhoneMetrics metrics = metricsEnabled
+                ? new NormalizePhoneMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT), List.of("BE", "FR", "NL", "LU", "DE"))
+                : null;
+        normalizePhone = new NormalizePhone(NormalizePhone.Options.builder().metrics(metrics).build());
+        inputPhone = validityClass.inputPhone();
+    }
+
+    @Benchmark
+    public OutputPhone normalize() {
+        return normalizePhone.normalize(inputPhone);
+    }
+
+}
@@ -0,0 +1,148 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.beans.ResponseMode;
+import be.demo.normalizephone.business.NormalizePhone;
+import be.demo.normalizephone.business.NormalizePhoneBatch;
+import be.demo.normalizephone.business.NormalizePhoneStream;
+import be.demo.normalizephone.config.NormalizeProperties;
+import be.demo.normalizephone.controller.NormalizePhoneController;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bytes and latency of POST /normalize/batch by response mode and compression: read the (gzip) request body, normalize
+ * the batch and write the (gzip) response body, with the same Jackson defaults as the application. The request and
+ * response bytes of an operation are reported as secondary results (requestBytes, responseBytes), summed by JMH over
+ * the measured iterations: divide by Cnt. The end-to-end latency over HTTP is measured by the load test with
+ * --batch-size, --response and --gzip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalizeResponseBenchmark {
+
+    public enum Compression {
+        NONE,
+        GZIP
+    }
+
+    /**
+     * Bytes of the last operation of an iteration, reported next to the average time
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Bytes {
+
+        public long requestBytes;
+        public long responseBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            requestBytes = 0;
+            responseBytes = 0;
+        }
+
+    }
+
+    private static final TypeReference<List<InputPhone>> INPUT_PHONES = new TypeReference<>() {
+    };
+
+    @Param({"10", "1000"})
+    public int batchSize;
+
+    @Param
+    public ResponseMode responseMode;
+
+    @Param
+    public Compression compression;
+
+    private NormalizePhoneBatch batchService;
+    private NormalizePhoneController controller;
+    private ObjectReader inputReader;
+    private ObjectWriter phoneWriter;
+    private byte[] requestBody;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        NormalizePhone normalizePhone = new NormalizePhone();
+        batchService = new NormalizePhoneBatch(normalizePhone, new NormalizeProperties());
+        controller = new NormalizePhoneController(normalizePhone, batchService, new NormalizePhoneStream(batchService, objectMapper));
+        inputReader = objectMapper.readerFor(INPUT_PHONES);
+        phoneWriter = objectMapper.writer();
+
+        NormalizePhoneBenchmark.ValidityClass[] validityClasses = NormalizePhoneBenchmark.ValidityClass.values();
+        List<InputPhone> inputPhones = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            InputPhone inputPhone = validityClasses[i % validityClasses.length].inputPhone();
+            inputPhone.setId("customer-" + i);
+            inputPhones.add(inputPhone);
+        }
+        byte[] json = objectMapper.writeValueAsBytes(inputPhones);
+        requestBody = compression == Compression.GZIP ? gzip(json) : json;
+    }
+
+    @TearDown
+    public void tearDown() {
+        batchService.shutdown();
+    }
+
+    @Benchmark
+    public byte[] normalize(Bytes bytes) throws IOException {
+        List<InputPhone> inputPhones;
+        try (InputStream input = compression == Compression.GZIP ? new GZIPInputStream(new ByteArrayInputStream(requestBody))
+                : new ByteArrayInputStream(requestBody)) {
+            inputPhones = inputReader.readValue(input);
+        }
+
+        ByteArrayOutputStream responseBody = new ByteArrayOutputStream(batchSize * 256);
+        try (OutputStream output = compression == Compression.GZIP ? new GZIPOutputStream(responseBody, 8192) : responseBody) {
+            phoneWriter.writeValue(output, controller.normalizePhones(inputPhones, null, responseMode));
+        }
+        byte[] response = responseBody.toByteArray();
+        bytes.requestBytes = requestBody.length;
+        bytes.responseBytes = response.length;
+        return response;
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+}
@@ -0,0 +1,66 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.beans.OutputPhone;
+import be.demo.normalizephone.business.NormalizePhone;
+import be.demo.normalizephone.business.NormalizeResultStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalization of a phone number that is in the result store, compare with NormalizePhoneBenchmark.normalize
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalizeResultStoreBenchmark {
+
+    @Param({"VALID_BE_MOBILE", "VALID_FOREIGN_FIXED_LINE"})
+    public NormalizePhoneBenchmark.ValidityClass validityClass;
+
+    private Path directory;
+    private NormalizeResultStore store;
+    private NormalizePhone normalizePhone;
+    private InputPhone inputPhone;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("normalize-store");
+        store = new NormalizeResultStore(directory.resolve("results.bin"), "", 1000, null, Clock.systemUTC());
+        normalizePhone = new NormalizePhone(NormalizePhone.Options.builder().store(store).build());
+        inputPhone = validityClass.inputPhone();
+        normalizePhone.normalize(inputPhone);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        Files.deleteIfExists(directory.resolve("results.bin"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public OutputPhone normalizeStored() {
+        return normalizePhone.normalize(inputPhone);
+    }
+
+}
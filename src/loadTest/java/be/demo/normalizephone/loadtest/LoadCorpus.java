@@ -0,0 +1,172 @@
+package be.demo.normalizephone.loadtest;
+
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.Phonenumber;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Request bodies of POST /normalize, read from a CSV file or generated with a mix of kinds of phone numbers
+ */
+final class LoadCorpus {
+
+    private static final PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
+
+    private static final String[] FOREIGN_REGIONS = {"FR", "NL", "DE", "LU", "GB", "US", "IT", "ES"};
+    private static final String[] BELGIAN_FORMATS = {"0%s", "+32%s", "0032%s", "+32 %s", "0%s "};
+
+    enum Kind {
+        // valid Belgian mobile and fixed-line numbers in the usual formats
+        BE,
+        // valid numbers of the neighbouring countries, in international format with default country BE
+        FOREIGN,
+        // Belgian numbers that are too long, too short or not assigned
+        INVALID,
+        // phone numbers with letters or blank
+        GARBAGE
+    }
+
+    private LoadCorpus() {
+    }
+
+    /**
+     * @param mix proportion per kind, f.e. be:60,foreign:20,invalid:15,garbage:5
+     * @return the proportions
+     */
+    static Map<Kind, Integer> parseMix(String mix) {
+        Map<Kind, Integer> proportions = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] kindAndProportion = part.trim().split(":");
+            if (kindAndProportion.length != 2) {
+                throw new IllegalArgumentException("Invalid mix " + mix + ", expected kind:proportion,...");
+            }
+            proportions.put(Kind.valueOf(kindAndProportion[0].trim().toUpperCase()), Integer.parseInt(kindAndProportion[1].trim()));
+        }
+        return proportions;
+    }
+
+    /**
+     * Generate request bodies in the proportions of the mix
+     *
+     * @param size        number of request bodies
+     * @param proportions proportion per kind
+     * @param random      source of the phone numbers
+     * @return the request bodies, in random order
+     */
+    static List<byte[]> generate(int size, Map<Kind, Integer> proportions, Random random) {
+        int total = proportions.values().stream().mapToInt(Integer::intValue).sum();
+        List<byte[]> bodies = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int pick = random.nextInt(total);
+            for (Map.Entry<Kind, Integer> proportion : proportions.entrySet()) {
+                pick -= proportion.getValue();
+                if (pick < 0) {
+                    bodies.add(body(phone(proportion.getKey(), random), "BE"));
+                    break;
+                }
+            }
+        }
+        return bodies;
+    }
+
+    /**
+     * Read request bodies from a CSV file of phone numbers and default countries, without header
+     *
+     * @param file CSV file
+     * @return the request bodies, in the order of the file
+     */
+    static List<byte[]> read(Path file) throws IOException {
+        List<byte[]> bodies = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                int comma = line.lastIndexOf(',');
+                bodies.add(comma < 0 ? body(line, "BE") : body(line.substring(0, comma), line.substring(comma + 1).trim()));
+            }
+        }
+        if (bodies.isEmpty()) {
+            throw new IllegalArgumentException("No phone numbers in " + file);
+        }
+        return bodies;
+    }
+
+    /**
+     * Group request bodies in JSON arrays, for POST /normalize/batch
+     *
+     * @param bodies    request bodies of one phone number
+     * @param batchSize phone numbers per array
+     * @return the request bodies of the batches, the last one can be smaller
+     */
+    static List<byte[]> batches(List<byte[]> bodies, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size " + batchSize + ", expected at least 1");
+        }
+        List<byte[]> batches = new ArrayList<>(bodies.size() / batchSize + 1);
+        for (int from = 0; from < bodies.size(); from += batchSize) {
+            ByteArrayOutputStream batch = new ByteArrayOutputStream();
+            batch.write('[');
+            for (int i = from; i < Math.min(from + batchSize, bodies.size()); i++) {
+                if (i > from) {
+                    batch.write(',');
+                }
+                batch.writeBytes(bodies.get(i));
+            }
+            batch.write(']');
+            batches.add(batch.toByteArray());
+        }
+        return batches;
+    }
+
+    private static String phone(Kind kind, Random random) {
+        switch (kind) {
+            case BE:
+                String national = random.nextBoolean()
+                        ? "4" + (70 + random.nextInt(30)) + digits(random, 6)
+                        : (2 + random.nextInt(8)) + digits(random, 7);
+                return String.format(BELGIAN_FORMATS[random.nextInt(BELGIAN_FORMATS.length)], national);
+            case FOREIGN:
+                String region = FOREIGN_REGIONS[random.nextInt(FOREIGN_REGIONS.length)];
+                Phonenumber.PhoneNumber example = phoneUtil.getExampleNumberForType(region,
+                        random.nextBoolean() ? PhoneNumberUtil.PhoneNumberType.MOBILE : PhoneNumberUtil.PhoneNumberType.FIXED_LINE);
+                String e164 = phoneUtil.format(example, PhoneNumberUtil.PhoneNumberFormat.E164);
+                // other numbers of the same range
+                return e164.substring(0, e164.length() - 2) + digits(random, 2);
+            case INVALID:
+                switch (random.nextInt(3)) {
+                    case 0:
+                        return "0479" + digits(random, 8);
+                    case 1:
+                        return "02" + digits(random, 4);
+                    default:
+                        return "+999" + digits(random, 8);
+                }
+            default:
+                return random.nextBoolean() ? "0479 44 55 6" + (char) ('A' + random.nextInt(26)) : "   ";
+        }
+    }
+
+    private static String digits(Random random, int count) {
+        StringBuilder digits = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            digits.append((char) ('0' + random.nextInt(10)));
+        }
+        return digits.toString();
+    }
+
+    private static byte[] body(String phone, String defaultCountryCode) {
+        return ("{\"phone\":\"" + escape(phone) + "\",\"defaultCountryCode\":\"" + escape(defaultCountryCode) + "\"}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
@@ -0,0 +1,306 @@
+package be.demo.normalizephone.loadtest;
+
+import be.demo.normalizephone.NormalizePhoneApplication;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Open-loop load test of POST /normalize or /normalize/batch, with a latency and size report per request rate.
+ * <p>
+ * The requests are sent at a fixed rate, whatever the response times: a request is sent at its intended start time
+ * even when earlier requests didn't complete yet. The latency is measured from the intended start time, so a stall
+ * of the service or of the client counts for all the requests that should have been sent during the stall
+ * (coordinated omission). The service time, measured from the actual send, is reported next to it.
+ * <p>
+ * Options, the other arguments are passed to the application:
+ * <ul>
+ * <li>--url: base URL of a running service, the application is started in this JVM when not set</li>
+ * <li>--rates: requests per second, one run per rate (default 200,500,1000)</li>
+ * <li>--duration: measured duration of a run (default 30s)</li>
+ * <li>--warmup: duration of the requests before each run, not measured (default 10s)</li>
+ * <li>--corpus: CSV file of phone numbers and default countries, generated when not set</li>
+ * <li>--mix: proportions of the generated corpus (default be:60,foreign:20,invalid:15,garbage:5)</li>
+ * <li>--report: directory of the report and the percentile distributions (default build/reports/loadtest)</li>
+ * <li>--slo-p99: maximum p99 latency in milliseconds, the exit code is 1 when a run exceeds it</li>
+ * <li>--batch-size: phone numbers per request to POST /normalize/batch, POST /normalize when not set</li>
+ * <li>--response: response mode, full, lean or id (default full)</li>
+ * <li>--gzip: gzip request bodies and accept gzip responses (Content-Encoding and Accept-Encoding: gzip)</li>
+ * </ul>
+ */
+public final class LoadTest {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "load-test-client");
+                thread.setDaemon(true);
+                return thread;
+            }))
+            .build();
+
+    private final URI uri;
+    private final List<byte[]> corpus;
+    private final boolean gzip;
+
+    private LoadTest(URI uri, List<byte[]> corpus, boolean gzip) {
+        this.uri = uri;
+        this.corpus = corpus;
+        this.gzip = gzip;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = null;
+        List<Integer> rates = List.of(200, 500, 1000);
+        Duration duration = Duration.ofSeconds(30);
+        Duration warmup = Duration.ofSeconds(10);
+        String corpusFile = null;
+        String mix = "be:60,foreign:20,invalid:15,garbage:5";
+        Path reportDirectory = Paths.get("build", "reports", "loadtest");
+        Double sloP99 = null;
+        Integer batchSize = null;
+        String responseMode = null;
+        boolean gzip = false;
+        List<String> applicationArgs = new ArrayList<>();
+
+        for (String arg : args) {
+            String value = arg.contains("=") ? arg.substring(arg.indexOf('=') + 1) : "";
+            if (arg.startsWith("--url=")) {
+                url = value;
+            } else if (arg.startsWith("--rates=")) {
+                rates = Arrays.stream(value.split(",")).map(String::trim).map(Integer::valueOf).collect(Collectors.toList());
+            } else if (arg.startsWith("--duration=")) {
+                duration = parseDuration(value);
+            } else if (arg.startsWith("--warmup=")) {
+                warmup = parseDuration(value);
+            } else if (arg.startsWith("--corpus=")) {
+                corpusFile = value;
+            } else if (arg.startsWith("--mix=")) {
+                mix = value;
+            } else if (arg.startsWith("--report=")) {
+                reportDirectory = Paths.get(value);
+            } else if (arg.startsWith("--slo-p99=")) {
+                sloP99 = Double.valueOf(value);
+            } else if (arg.startsWith("--batch-size=")) {
+                batchSize = Integer.valueOf(value);
+            } else if (arg.startsWith("--response=")) {
+                responseMode = value;
+            } else if (arg.equals("--gzip")) {
+                gzip = true;
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+
+        List<byte[]> corpus = corpusFile != null
+                ? LoadCorpus.read(Paths.get(corpusFile))
+                : LoadCorpus.generate(100000, LoadCorpus.parseMix(mix), new Random(20231018));
+
+        ConfigurableApplicationContext application = null;
+        if (url == null) {
+            applicationArgs.add(0, "--server.port=0");
+            application = SpringApplication.run(NormalizePhoneApplication.class, applicationArgs.toArray(new String[0]));
+            url = "http://localhost:" + ((WebServerApplicationContext) application).getWebServer().getPort();
+        }
+
+        boolean sloMet;
+        try {
+            Files.createDirectories(reportDirectory);
+            String path = batchSize != null ? "/normalize/batch" : "/normalize";
+            List<byte[]> bodies = batchSize != null ? LoadCorpus.batches(corpus, batchSize) : corpus;
+            if (gzip) {
+                bodies = bodies.stream().map(LoadTest::gzip).collect(Collectors.toList());
+            }
+            LoadTest loadTest = new LoadTest(URI.create(url + path + (responseMode != null ? "?response=" + responseMode : "")), bodies, gzip);
+            List<String> lines = new ArrayList<>();
+            lines.add(String.format("POST %s, %d phone numbers%s%s, %s per rate after a warm-up of %s", loadTest.uri, corpus.size(),
+                    batchSize != null ? " in batches of " + batchSize : "", gzip ? ", gzip" : "", duration, warmup));
+            lines.add(String.format("%8s %10s %8s %8s %10s %10s %10s %10s %10s %12s %10s %10s",
+                    "rate", "achieved", "sent", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "service p99", "request B", "response B"));
+            lines.forEach(System.out::println);
+
+            sloMet = true;
+            for (int rate : rates) {
+                loadTest.run(rate, warmup, null, null);
+                Recorder latency = new Recorder(3);
+                Recorder serviceTime = new Recorder(3);
+                Result result = loadTest.run(rate, duration, latency, serviceTime);
+
+                Histogram latencyHistogram = latency.getIntervalHistogram();
+                Histogram serviceTimeHistogram = serviceTime.getIntervalHistogram();
+                writeDistribution(reportDirectory.resolve("latency-" + rate + ".hgrm"), latencyHistogram);
+                writeDistribution(reportDirectory.resolve("service-time-" + rate + ".hgrm"), serviceTimeHistogram);
+
+                double p99 = millis(latencyHistogram.getValueAtPercentile(99));
+                lines.add(String.format("%8d %10.1f %8d %8d %10.2f %10.2f %10.2f %10.2f %10.2f %12.2f %10.0f %10.0f",
+                        rate, result.completed / (duration.toNanos() / 1e9), result.sent, result.errors,
+                        millis(latencyHistogram.getValueAtPercentile(PERCENTILES[0])), millis(latencyHistogram.getValueAtPercentile(PERCENTILES[1])),
+                        p99, millis(latencyHistogram.getValueAtPercentile(PERCENTILES[3])), millis(latencyHistogram.getMaxValue()),
+                        millis(serviceTimeHistogram.getValueAtPercentile(99)),
+                        (double) result.requestBytes / Math.max(result.sent, 1), (double) result.responseBytes / Math.max(result.completed, 1)));
+                System.out.println(lines.get(lines.size() - 1));
+
+                if (sloP99 != null && (p99 > sloP99 || result.errors > 0)) {
+                    sloMet = false;
+                }
+            }
+            if (sloP99 != null) {
+                lines.add(sloMet ? "p99 SLO of " + sloP99 + " ms met" : "p99 SLO of " + sloP99 + " ms NOT met");
+                System.out.println(lines.get(lines.size() - 1));
+            }
+
+            Files.write(reportDirectory.resolve("summary.txt"), lines, StandardCharsets.UTF_8);
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+        }
+        System.exit(sloMet ? 0 : 1);
+    }
+
+    /**
+     * Send requests at a fixed rate during a duration, and wait for their responses
+     *
+     * @param rate        requests per second
+     * @param duration    duration of the sending
+     * @param latency     latency from the intended start time, null to not record it
+     * @param serviceTime latency from the actual send, null to not record it
+     * @return the number of sent, completed and failed requests, and the bytes of the sent and completed requests
+     */
+    private Result run(int rate, Duration duration, Recorder latency, Recorder serviceTime) throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long count = duration.toNanos() / interval;
+        AtomicLong completed = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong pending = new AtomicLong();
+        AtomicLong requestBytes = new AtomicLong();
+        AtomicLong responseBytes = new AtomicLong();
+
+        long start = System.nanoTime();
+        for (long i = 0; i < count; i++) {
+            long intended = start + i * interval;
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            byte[] body = corpus.get((int) (i % corpus.size()));
+            HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                    .timeout(TIMEOUT)
+                    .header("Content-Type", "application/json");
+            if (gzip) {
+                builder.header("Content-Encoding", "gzip").header("Accept-Encoding", "gzip");
+            }
+            HttpRequest request = builder.POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+            long sent = System.nanoTime();
+            pending.incrementAndGet();
+            requestBytes.addAndGet(body.length);
+            // the client doesn't decompress, the length is the one on the wire
+            client.sendAsync(request, responseInfo -> HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(),
+                    bytes -> bytes.length)).whenComplete((response, failure) -> {
+                long end = System.nanoTime();
+                if (failure != null || response.statusCode() != 200) {
+                    errors.incrementAndGet();
+                } else {
+                    completed.incrementAndGet();
+                    responseBytes.addAndGet(response.body());
+                }
+                if (latency != null) {
+                    latency.recordValue(end - intended);
+                    serviceTime.recordValue(end - sent);
+                }
+                pending.decrementAndGet();
+            });
+        }
+
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (pending.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return new Result(count, completed.get(), errors.get() + pending.get(), requestBytes.get(), responseBytes.get());
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static void writeDistribution(Path file, Histogram histogram) throws IOException {
+        try (PrintStream output = new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8.name())) {
+            // in milliseconds
+            histogram.outputPercentileDistribution(output, 1e6);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Duration parseDuration(String value) {
+        String trimmed = value.trim().toLowerCase();
+        if (trimmed.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(trimmed.substring(0, trimmed.length() - 2)));
+        }
+        if (trimmed.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(trimmed.substring(0, trimmed.length() - 1)));
+        }
+        if (trimmed.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(trimmed.substring(0, trimmed.length() - 1)));
+        }
+        return Duration.parse(value);
+    }
+
+    private static final class Result {
+
+        private final long sent;
+        private final long completed;
+        private final long errors;
+        private final long requestBytes;
+        private final long responseBytes;
+
+        private Result(long sent, long completed, long errors, long requestBytes, long responseBytes) {
+            this.sent = sent;
+            this.completed = completed;
+            this.errors = errors;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,108 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.business.NormalizePhone;
+import be.demo.normalizephone.business.NormalizePhoneBatch;
+import be.demo.normalizephone.business.NormalizePhoneFile;
+import be.demo.normalizephone.business.NormalizePhoneStream;
+import be.demo.normalizephone.business.PhoneRecordFormat;
+import be.demo.normalizephone.config.NormalizeProperties;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Offline normalization of a file of phone numbers, next to the HTTP service: the same normalization and record
+ * formats as POST /normalize/stream, without the web server. See NormalizePhoneFile.
+ * <p>
+ * Options:
+ * <ul>
+ * <li>--input: CSV or NDJSON file, one record per line</li>
+ * <li>--output: normalized records, in the order of the input</li>
+ * <li>--format: csv or ndjson (default csv when the input ends with .csv, ndjson otherwise)</li>
+ * <li>--threads: number of workers (default the number of available processors)</li>
+ * <li>--chunk-size: number of records normalized together by one worker (default 4096)</li>
+ * <li>--resume: continue from the checkpoint of the output after a crash</li>
+ * <li>--checkpoint: interval of the checkpoints (default 5s)</li>
+ * <li>--progress: interval of the progress reports (default 10s)</li>
+ * </ul>
+ * The exit code is 0 when the whole input is normalized, 1 when the normalization failed and 2 for invalid options.
+ */
+public final class NormalizePhoneCli {
+
+    private NormalizePhoneCli() {
+    }
+
+    public static void main(String[] args) {
+        Path input = null;
+        Path output = null;
+        PhoneRecordFormat format = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunkSize = 4096;
+        boolean resume = false;
+        Duration checkpointInterval = Duration.ofSeconds(5);
+        Duration progressInterval = Duration.ofSeconds(10);
+
+        try {
+            for (String arg : args) {
+                String value = arg.contains("=") ? arg.substring(arg.indexOf('=') + 1) : "";
+                if (arg.startsWith("--input=")) {
+                    input = Paths.get(value);
+                } else if (arg.startsWith("--output=")) {
+                    output = Paths.get(value);
+                } else if (arg.startsWith("--format=")) {
+                    format = PhoneRecordFormat.valueOf(value.toUpperCase(Locale.ROOT));
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(value);
+                } else if (arg.startsWith("--chunk-size=")) {
+                    chunkSize = Integer.parseInt(value);
+                } else if (arg.equals("--resume")) {
+                    resume = true;
+                } else if (arg.startsWith("--checkpoint=")) {
+                    checkpointInterval = DurationStyle.detectAndParse(value);
+                } else if (arg.startsWith("--progress=")) {
+                    progressInterval = DurationStyle.detectAndParse(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (input == null || output == null) {
+                throw new IllegalArgumentException("--input and --output are required");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (format == null) {
+            format = input.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv") ? PhoneRecordFormat.CSV : PhoneRecordFormat.NDJSON;
+        }
+
+        NormalizeProperties properties = new NormalizeProperties();
+        properties.getBatch().setParallelism(threads);
+        NormalizePhoneBatch batchService = new NormalizePhoneBatch(new NormalizePhone(), properties);
+        NormalizePhoneFile fileService = new NormalizePhoneFile(batchService,
+                new NormalizePhoneStream(batchService, Jackson2ObjectMapperBuilder.json().build()), chunkSize, checkpointInterval);
+
+        System.out.printf("Normalizing %s to %s (%s) on %d threads%n", input, output, format, threads);
+        try {
+            NormalizePhoneFile.Progress done = fileService.normalize(input, output, format, resume, progressInterval, NormalizePhoneCli::report);
+            System.out.printf("Normalized %d records in %.1f s: %.0f records/s, %.1f MB/s%s%n", done.getRecords() - done.getResumedRecords(),
+                    done.getElapsedNanos() / 1e9, done.getRecordsPerSecond(), done.getBytesPerSecond() / 1e6,
+                    done.getResumedRecords() > 0 ? ", resumed after " + done.getResumedRecords() + " records" : "");
+        } catch (Exception e) {
+            System.err.println("Normalization failed, run again with --resume to continue from the last checkpoint: " + e);
+            System.exit(1);
+        } finally {
+            batchService.shutdown();
+        }
+    }
+
+    private static void report(NormalizePhoneFile.Progress progress) {
+        System.out.printf("%5.1f%% %,d records, %.0f records/s%n", progress.getPercent(), progress.getRecords(), progress.getRecordsPerSecond());
+    }
+
+}
@@ -0,0 +1,33 @@
+package be.demo.normalizephone.beans;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Input of the compact protocol (application/cbor), with one letter field names
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CompactInputPhone {
+
+    @JsonProperty("p")
+    @Schema(description = "Phone number", example = "025559719")
+    String phone;
+
+    @JsonProperty("c")
+    @Schema(description = "Default country, see CompactPhone.encodeCountry", example = "30")
+    Integer defaultCountry;
+
+    @JsonProperty("o")
+    @Schema(description = "Requested output fields, bit per field at the ordinal of OutputField. All fields when not set", example = "256")
+    int outputs;
+
+    public InputPhone toInputPhone() {
+        return new InputPhone(phone, defaultCountry != null ? CompactPhone.decodeCountry(defaultCountry) : "", outputs != 0 ? OutputField.fromBits(outputs) : null);
+    }
+
+}
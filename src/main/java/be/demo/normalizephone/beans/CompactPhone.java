@@ -0,0 +1,115 @@
+package be.demo.normalizephone.beans;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Output of the compact protocol (application/cbor): one letter field names, no echo of the input, and small
+ * integers for the country, the validity flags and the phone type
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CompactPhone {
+
+    public static final String MEDIA_TYPE = "application/cbor";
+
+    // country of the non geographical numbers, region 001
+    private static final int NON_GEOGRAPHICAL = 1000;
+
+    @JsonProperty("f")
+    @Schema(description = "Validity flag", example = "0")
+    Short flag;
+
+    @JsonProperty("d")
+    @Schema(description = "Validity detailed flag, 0 for 00", example = "0")
+    Short detailedFlag;
+
+    @JsonProperty("t")
+    @Schema(description = "Phone type, 1 for a mobile number", example = "0")
+    Short phoneType;
+
+    @JsonProperty("c")
+    @Schema(description = "Country, see encodeCountry", example = "30")
+    Integer country;
+
+    @JsonProperty("p")
+    @Schema(example = "32")
+    Integer internationalPrefix;
+
+    @JsonProperty("z")
+    @Schema(example = "2")
+    String zonalPrefix;
+
+    @JsonProperty("n")
+    @Schema(example = "5559719")
+    String number;
+
+    @JsonProperty("k")
+    @Schema(example = "25559719")
+    Long phoneDedupKey;
+
+    @JsonProperty("l")
+    @Schema(example = "02/5559719")
+    String phoneNormalized;
+
+    @JsonProperty("e")
+    @Schema(example = "+3225559719")
+    String phoneIntNormalized;
+
+    @JsonProperty("i")
+    @Schema(example = "+32 2 555 97 19")
+    String phoneIntNormalizedE123;
+
+    @JsonProperty("s")
+    @Schema(example = "+32 (02) 5559719")
+    String phoneIntNormalizedSopres;
+
+    public static CompactPhone of(OutputPhone outputPhone) {
+        Validity validity = outputPhone.getValidity();
+
+        return new CompactPhone(validity.getFlag(), Short.valueOf(validity.getDetailedFlag()), outputPhone.getPhoneType(),
+                outputPhone.getCountryCode() != null ? encodeCountry(outputPhone.getCountryCode()) : null,
+                outputPhone.getInternationalPrefix(), outputPhone.getZonalPrefix(), outputPhone.getNumber(), outputPhone.getPhoneDedupKey(),
+                outputPhone.getPhoneNormalized(), outputPhone.getPhoneIntNormalized(), outputPhone.getPhoneIntNormalizedE123(),
+                outputPhone.getPhoneIntNormalizedSopres());
+    }
+
+    /**
+     * Encode an ISO 3166 alpha-2 country as a small integer: (first letter - 'A') * 26 + (second letter - 'A'), so
+     * BE is 1 * 26 + 4 = 30. The region 001 of the non geographical numbers is encoded as 1000.
+     *
+     * @param country ISO 3166 alpha-2 country
+     * @return the encoded country
+     */
+    public static int encodeCountry(String country) {
+        if (country.length() == 2 && isLetter(country.charAt(0)) && isLetter(country.charAt(1))) {
+            return (country.charAt(0) - 'A') * 26 + (country.charAt(1) - 'A');
+        }
+        return NON_GEOGRAPHICAL;
+    }
+
+    /**
+     * @param country encoded country
+     * @return the ISO 3166 alpha-2 country, an unknown country when the country can't be decoded
+     */
+    public static String decodeCountry(int country) {
+        if (country == NON_GEOGRAPHICAL) {
+            return "001";
+        }
+        if (country < 0 || country >= 26 * 26) {
+            return "ZZ";
+        }
+        return new String(new char[]{(char) ('A' + country / 26), (char) ('A' + country % 26)});
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+}
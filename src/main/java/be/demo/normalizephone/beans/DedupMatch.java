@@ -0,0 +1,36 @@
+package be.demo.normalizephone.beans;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * The records of the dedup index that share a phone number
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DedupMatch {
+
+    @Schema(description = "ID of the ingested record, not set for a query", example = "1001")
+    Long recordId;
+    @Schema(example = "32")
+    Integer internationalPrefix;
+    @Schema(example = "25559719")
+    Long phoneDedupKey;
+    @Schema(description = "Combination of the international prefix and the zonal prefix, only set for a query", example = "320002")
+    Integer zoneId;
+    Validity validity;
+    @Schema(description = "Number of records with this phone number, 0 when the phone number was never ingested", example = "2")
+    Long recordCount;
+    @Schema(description = "IDs of the records with this phone number, the last ingested first", example = "[1001, 987]")
+    List<Long> recordIds;
+    @Schema(description = "Error, only set when the record could not be indexed")
+    String error;
+
+}
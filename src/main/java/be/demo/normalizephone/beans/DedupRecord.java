@@ -0,0 +1,23 @@
+package be.demo.normalizephone.beans;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A record of the caller with its phone number, to add to the dedup index
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DedupRecord {
+
+    @Schema(description = "ID of the record in the system of the caller", example = "1001")
+    Long recordId;
+    @Schema(example = "025559719")
+    String phone;
+    @Schema(example = "BE", defaultValue = "BE")
+    String defaultCountryCode;
+
+}
@@ -1,10 +1,14 @@
 package be.demo.normalizephone.beans;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -14,5 +18,24 @@ public class InputPhone {
     String phone;
     @Schema(example = "BE", defaultValue = "BE")
     String defaultCountryCode;
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    @Schema(description = "Requested output fields, the validity is always returned. All fields when not set", example = "[\"phoneIntNormalized\"]")
+    Set<OutputField> outputs;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Schema(description = "Correlation ID of the caller, returned instead of the input with ?response=id", example = "customer-1001")
+    String id;
+
+    public InputPhone(String phone, String defaultCountryCode) {
+        this(phone, defaultCountryCode, null, null);
+    }
+
+    public InputPhone(String phone, String defaultCountryCode, Set<OutputField> outputs) {
+        this(phone, defaultCountryCode, outputs, null);
+    }
+
+    public void setOutputs(Set<OutputField> outputs) {
+        // the requested fields are looked up for every field of the output
+        this.outputs = outputs == null || outputs.isEmpty() ? outputs : EnumSet.copyOf(outputs);
+    }
 
 }
\ No newline at end of file
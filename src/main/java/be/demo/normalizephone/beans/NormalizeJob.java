@@ -0,0 +1,55 @@
+package be.demo.normalizephone.beans;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+import java.time.Instant;
+
+/**
+ * Status and progress of an asynchronous normalization job
+ */
+@Value
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class NormalizeJob {
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED;
+
+        public boolean isFinished() {
+            return this == DONE || this == FAILED;
+        }
+    }
+
+    @Schema(example = "0f8fad5b-d9cb-469f-a165-70867728950e")
+    String id;
+    Status status;
+    @Schema(description = "Record format of the input and the result", example = "csv")
+    String format;
+    @Schema(description = "Queued jobs with a higher priority run first", example = "0")
+    int priority;
+    Instant submitted;
+    @Schema(description = "Start of the last run, a job that was running during a restart runs again from its checkpoint")
+    Instant started;
+    Instant finished;
+    @Schema(description = "Number of normalized records", example = "250000")
+    long records;
+    @Schema(description = "Size of the input in bytes", example = "8000000")
+    long inputSize;
+    @Schema(description = "Normalized part of the input in bytes", example = "4000000")
+    long inputOffset;
+    @Schema(description = "Error, only set when the job failed")
+    String error;
+
+    @Schema(description = "Normalized part of the input in percent", example = "50.0")
+    public double getPercent() {
+        if (status == Status.DONE) {
+            return 100;
+        }
+        return inputSize > 0 ? Math.floor(1000.0 * inputOffset / inputSize) / 10 : 0;
+    }
+
+}
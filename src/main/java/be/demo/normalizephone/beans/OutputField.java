@@ -0,0 +1,105 @@
+package be.demo.normalizephone.beans;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Fields of OutputPhone that can be requested. The validity is always returned. A field that is not requested is not
+ * computed.
+ */
+public enum OutputField {
+
+    INTERNATIONAL_PREFIX("internationalPrefix"),
+    ZONAL_PREFIX("zonalPrefix"),
+    NUMBER("number"),
+    PHONE_DEDUP_KEY("phoneDedupKey"),
+    PHONE_NORMALIZED("phoneNormalized"),
+    ZONE_ID("zoneId"),
+    COUNTRY_CODE("countryCode"),
+    PHONE_TYPE("phoneType"),
+    PHONE_INT_NORMALIZED("phoneIntNormalized"),
+    PHONE_INT_NORMALIZED_E123("phoneIntNormalizedE123"),
+    PHONE_INT_NORMALIZED_SOPRES("phoneIntNormalizedSopres");
+
+    // all fields, the default when no fields are requested
+    public static final Set<OutputField> ALL = Collections.unmodifiableSet(EnumSet.allOf(OutputField.class));
+
+    private static final OutputField[] VALUES = values();
+
+    private final String fieldName;
+
+    OutputField(String fieldName) {
+        this.fieldName = fieldName;
+    }
+
+    /**
+     * @return the name of the field in OutputPhone
+     */
+    @JsonValue
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @param name the name of the field in OutputPhone, or the name of the constant
+     * @return the field
+     * @throws IllegalArgumentException when there is no field with this name
+     */
+    @JsonCreator
+    public static OutputField of(String name) {
+        for (OutputField field : VALUES) {
+            if (field.fieldName.equals(name) || field.name().equalsIgnoreCase(name)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output field " + name);
+    }
+
+    /**
+     * @param outputs        fields requested for a phone number, can be null
+     * @param defaultOutputs fields to use when no fields are requested for the phone number
+     * @return the fields to compute
+     */
+    public static Set<OutputField> orDefault(Set<OutputField> outputs, Set<OutputField> defaultOutputs) {
+        return outputs != null && !outputs.isEmpty() ? outputs : defaultOutputs;
+    }
+
+    /**
+     * @param outputs requested fields
+     * @return a bit per requested field, at the ordinal of the field
+     */
+    public static int toBits(Set<OutputField> outputs) {
+        if (outputs.size() == VALUES.length) {
+            return (1 << VALUES.length) - 1;
+        }
+
+        int fields = 0;
+        for (OutputField field : outputs) {
+            fields |= 1 << field.ordinal();
+        }
+        return fields;
+    }
+
+    /**
+     * @param fields bit per requested field, at the ordinal of the field
+     * @return the requested fields, all fields when no bit is set
+     */
+    public static Set<OutputField> fromBits(int fields) {
+        if (fields == 0) {
+            return ALL;
+        }
+
+        Set<OutputField> outputs = EnumSet.noneOf(OutputField.class);
+        for (OutputField field : VALUES) {
+            if ((fields & (1 << field.ordinal())) != 0) {
+                outputs.add(field);
+            }
+        }
+        return outputs;
+    }
+
+}
@@ -1,67 +1,396 @@
 package be.demo.normalizephone.beans;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import io.swagger.v3.oas.annotations.media.Schema;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
 
-@Data
-@AllArgsConstructor
-@NoArgsConstructor
-@JsonInclude(JsonInclude.Include.NON_EMPTY)
-public class OutputPhone {
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable normalized phone number. Only the parts of the phone number are kept, in primitive fields: the format
+ * strings are derived from them when they are asked for, and written straight to the JSON output by
+ * OutputPhoneSerializer. The getters give the same values as the fields of the former bean, null when a field is not
+ * set.
+ * <p>
+ * The JSON shape is unchanged: the fields in the same order, the empty fields left out, the zone id never written,
+ * and the fields of Views.Internal left out of the narrower views.
+ */
+@JsonSerialize(using = OutputPhoneSerializer.class)
+public final class OutputPhone {
+
+    // the longest derived format: + international prefix (0) zonal prefix ) number, or the E.123 format of the
+    // longest national significant number with a separator between every 2 digits
+    static final int MAX_FORMAT_LENGTH = 64;
+
+    private static final long[] POWERS = new long[19];
+    // the phone number with only the validity, per validity detailed flag
+    private static final OutputPhone[] LIMITED = new OutputPhone[ValidityDetailedFlag.values().length];
+
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++) {
+            POWERS[i] = POWERS[i - 1] * 10;
+        }
+        for (ValidityDetailedFlag validityDetailedFlag : ValidityDetailedFlag.values()) {
+            LIMITED[validityDetailedFlag.ordinal()] = new OutputPhone(validityDetailedFlag);
+        }
+    }
+
+    // bit per set field, at the ordinal of the OutputField
+    private final int fields;
+    private final ValidityDetailedFlag validityDetailedFlag;
+    private final String countryCode;
+    // -1 when not set
+    private final byte phoneType;
+    private final int internationalPrefix;
+    private final long nationalNumber;
+    private final byte leadingZeros;
+    private final byte nationalDestinationCodeLength;
+    // the E.123 format, null when it is derived from the separators
+    private final String phoneIntNormalizedE123;
+    // 2 bits per gap between 2 digits of the national significant number: 0 nothing, 1 space, 2 dash
+    private final long e123Separators;
+
+    private OutputPhone(ValidityDetailedFlag validityDetailedFlag) {
+        this(validityDetailedFlag, 0, null, null, 0, 0, 0, 0, null, 0);
+    }
+
+    private OutputPhone(ValidityDetailedFlag validityDetailedFlag, int fields, String countryCode, Short phoneType, int internationalPrefix,
+                        long nationalNumber, int leadingZeros, int nationalDestinationCodeLength, String phoneIntNormalizedE123, long e123Separators) {
+        this.validityDetailedFlag = Objects.requireNonNull(validityDetailedFlag);
+        this.countryCode = countryCode;
+        this.phoneType = phoneType != null ? phoneType.byteValue() : -1;
+        this.internationalPrefix = internationalPrefix;
+        this.nationalNumber = nationalNumber;
+        this.leadingZeros = (byte) leadingZeros;
+        this.nationalDestinationCodeLength = (byte) nationalDestinationCodeLength;
+        this.phoneIntNormalizedE123 = phoneIntNormalizedE123;
+        this.e123Separators = e123Separators;
+
+        int set = fields;
+        if (countryCode == null) {
+            set &= ~bit(OutputField.COUNTRY_CODE);
+        }
+        if (phoneType == null) {
+            set &= ~bit(OutputField.PHONE_TYPE);
+        }
+        if (nationalDestinationCodeLength == 0) {
+            set &= ~bit(OutputField.ZONE_ID);
+        }
+        this.fields = set;
+    }
+
+    /**
+     * @param validityDetailedFlag validity of a phone number for which only the validity is returned
+     * @return the shared phone number with only the validity
+     */
+    public static OutputPhone of(ValidityDetailedFlag validityDetailedFlag) {
+        return LIMITED[validityDetailedFlag.ordinal()];
+    }
+
+    /**
+     * A parsed phone number, its format strings are derived from the parts
+     *
+     * @param validityDetailedFlag          validity
+     * @param outputs                       fields to return
+     * @param countryCode                   ISO 3166 alpha-2 code of the international prefix, can be null
+     * @param phoneType                     1 for a mobile number, 0 for an other number, null when not known
+     * @param internationalPrefix           international prefix
+     * @param nationalNumber                national number, without the leading zeros
+     * @param leadingZeros                  leading zeros of the national significant number
+     * @param nationalDestinationCodeLength length of the zonal prefix, at the start of the national number
+     * @param phoneIntNormalizedE123        E.123 format
+     * @return the phone number
+     */
+    public static OutputPhone of(ValidityDetailedFlag validityDetailedFlag, Set<OutputField> outputs, String countryCode, Short phoneType,
+                                 int internationalPrefix, long nationalNumber, int leadingZeros, int nationalDestinationCodeLength,
+                                 String phoneIntNormalizedE123) {
+        return new OutputPhone(validityDetailedFlag, OutputField.toBits(outputs), countryCode, phoneType, internationalPrefix, nationalNumber,
+                leadingZeros, nationalDestinationCodeLength, phoneIntNormalizedE123, 0);
+    }
+
+    /**
+     * A parsed phone number of which the E.123 format is the national significant number with separators, all format
+     * strings are derived from the parts
+     *
+     * @param e123Separators 2 bits per gap between 2 digits of the national significant number: 0 nothing, 1 space,
+     *                       2 dash
+     * @return the phone number
+     * @see #of(ValidityDetailedFlag, Set, String, Short, int, long, int, int, String)
+     */
+    public static OutputPhone of(ValidityDetailedFlag validityDetailedFlag, Set<OutputField> outputs, String countryCode, Short phoneType,
+                                 int internationalPrefix, long nationalNumber, int leadingZeros, int nationalDestinationCodeLength,
+                                 long e123Separators) {
+        return new OutputPhone(validityDetailedFlag, OutputField.toBits(outputs), countryCode, phoneType, internationalPrefix, nationalNumber,
+                leadingZeros, nationalDestinationCodeLength, null, e123Separators);
+    }
+
+    /**
+     * @param outputs requested fields
+     * @return this phone number with only the requested fields and the validity
+     */
+    public OutputPhone retain(Set<OutputField> outputs) {
+        int retained = fields & OutputField.toBits(outputs);
+        if (retained == fields) {
+            return this;
+        }
+        return new OutputPhone(validityDetailedFlag, retained, countryCode, phoneType >= 0 ? (short) phoneType : null, internationalPrefix,
+                nationalNumber, leadingZeros, nationalDestinationCodeLength, phoneIntNormalizedE123, e123Separators);
+    }
+
+    /**
+     * @param validityDetailedFlag validity of the same phone number
+     * @return this phone number with the other validity, its fields are kept
+     */
+    public OutputPhone withValidity(ValidityDetailedFlag validityDetailedFlag) {
+        if (validityDetailedFlag == this.validityDetailedFlag) {
+            return this;
+        }
+        return new OutputPhone(validityDetailedFlag, fields, countryCode, phoneType >= 0 ? (short) phoneType : null, internationalPrefix,
+                nationalNumber, leadingZeros, nationalDestinationCodeLength, phoneIntNormalizedE123, e123Separators);
+    }
+
+    /**
+     * @param other an other parsed phone number
+     * @return true when both are the same international phone number, whatever fields they return
+     */
+    public boolean isSameNumber(OutputPhone other) {
+        return internationalPrefix == other.internationalPrefix && nationalNumber == other.nationalNumber && leadingZeros == other.leadingZeros;
+    }
 
-    @JsonView(Views.Internal.class)
     @Schema(example = "32")
-    Integer internationalPrefix;
+    public Integer getInternationalPrefix() {
+        return has(OutputField.INTERNATIONAL_PREFIX) ? internationalPrefix : null;
+    }
 
-    @JsonView(Views.Internal.class)
     @Schema(example = "2")
-    String zonalPrefix;
+    public String getZonalPrefix() {
+        return formatted(OutputField.ZONAL_PREFIX);
+    }
 
-    @JsonView(Views.Internal.class)
     @Schema(example = "5559719")
-    String number;
+    public String getNumber() {
+        return formatted(OutputField.NUMBER);
+    }
 
-    @JsonView(Views.Internal.class)
     @Schema(example = "25559719")
-    Long phoneDedupKey;
+    public Long getPhoneDedupKey() {
+        return has(OutputField.PHONE_DEDUP_KEY) ? nationalNumber : null;
+    }
 
-    @JsonView(Views.Internal.class)
     @Schema(example = "02/5559719")
-    String phoneNormalized;
+    public String getPhoneNormalized() {
+        return formatted(OutputField.PHONE_NORMALIZED);
+    }
 
+    /**
+     * @return the combination of the international prefix and the zonal prefix, f.e. 32479112233 => 320479
+     */
     @JsonIgnore
     @Schema(hidden = true)
-    Integer zoneId;
+    public Integer getZoneId() {
+        return has(OutputField.ZONE_ID) ? internationalPrefix * 10000 + (int) (nationalNumber / POWERS[digits() - nationalDestinationCodeLength]) : null;
+    }
 
-    // Contains validity flag + description
-    // AND validity detailed flag + description
-    @JsonView(Views.Limited.class)
+    /**
+     * @return the validity flag + description AND validity detailed flag + description
+     */
     @Schema(example = "1")
-    Validity validity;
+    public Validity getValidity() {
+        return validityDetailedFlag.getValidity();
+    }
 
-    @JsonView(Views.Internal.class)
     @Schema(example = "BE")
-    String countryCode;
+    public String getCountryCode() {
+        return has(OutputField.COUNTRY_CODE) ? countryCode : null;
+    }
 
-    @JsonView(Views.Limited.class)
     @Schema(example = "0")
-    Short phoneType;
+    public Short getPhoneType() {
+        return has(OutputField.PHONE_TYPE) ? (short) phoneType : null;
+    }
 
-    @JsonView(Views.Internal.class)
     @Schema(example = "+3225559719")
-    String phoneIntNormalized;
+    public String getPhoneIntNormalized() {
+        return formatted(OutputField.PHONE_INT_NORMALIZED);
+    }
 
-    @JsonView(Views.Internal.class)
     @Schema(example = "+32 2 555 97 19")
-    String phoneIntNormalizedE123;
+    public String getPhoneIntNormalizedE123() {
+        if (phoneIntNormalizedE123 != null) {
+            return has(OutputField.PHONE_INT_NORMALIZED_E123) ? phoneIntNormalizedE123 : null;
+        }
+        return formatted(OutputField.PHONE_INT_NORMALIZED_E123);
+    }
 
-    @JsonView(Views.Internal.class)
     @Schema(example = "+32 (02) 5559719")
-    String phoneIntNormalizedSopres;
+    public String getPhoneIntNormalizedSopres() {
+        return formatted(OutputField.PHONE_INT_NORMALIZED_SOPRES);
+    }
+
+    boolean has(OutputField field) {
+        return (fields & bit(field)) != 0;
+    }
+
+    // the values of the set fields without boxing, for OutputPhoneSerializer
+
+    int internationalPrefix() {
+        return internationalPrefix;
+    }
+
+    long nationalNumber() {
+        return nationalNumber;
+    }
+
+    String countryCode() {
+        return countryCode;
+    }
+
+    int phoneType() {
+        return phoneType;
+    }
+
+    String explicitPhoneIntNormalizedE123() {
+        return phoneIntNormalizedE123;
+    }
+
+    private String formatted(OutputField field) {
+        char[] buffer = new char[MAX_FORMAT_LENGTH];
+        int length = format(field, buffer);
+        return length >= 0 ? new String(buffer, 0, length) : null;
+    }
+
+    /**
+     * Write a derived format string
+     *
+     * @param field  zonal prefix, number, phone normalized, E.164, E.123 when it is derived or Sopres
+     * @param buffer buffer of MAX_FORMAT_LENGTH characters
+     * @return the length of the format string, -1 when the field is not set
+     */
+    int format(OutputField field, char[] buffer) {
+        if (!has(field)) {
+            return -1;
+        }
+
+        int digits = digits();
+        int zonalPrefixLength = Math.min(nationalDestinationCodeLength, digits);
+        int position = 0;
+        switch (field) {
+            case ZONAL_PREFIX:
+                return appendDigits(buffer, 0, 0, zonalPrefixLength, digits);
+            case NUMBER:
+                return appendDigits(buffer, 0, zonalPrefixLength, digits, digits);
+            case PHONE_NORMALIZED:
+                // 0 + zonal prefix + / + number
+                buffer[position++] = '0';
+                position = appendDigits(buffer, position, 0, zonalPrefixLength, digits);
+                buffer[position++] = '/';
+                return appendDigits(buffer, position, zonalPrefixLength, digits, digits);
+            case PHONE_INT_NORMALIZED:
+                // + international prefix + national significant number
+                position = appendInternationalPrefix(buffer);
+                for (int i = 0; i < leadingZeros; i++) {
+                    buffer[position++] = '0';
+                }
+                return appendDigits(buffer, position, 0, digits, digits);
+            case PHONE_INT_NORMALIZED_E123:
+                if (phoneIntNormalizedE123 != null) {
+                    return -1;
+                }
+                // + international prefix, a space and the national significant number with its separators
+                position = appendInternationalPrefix(buffer);
+                buffer[position++] = ' ';
+                int significantDigits = leadingZeros + digits;
+                for (int i = 0; i < significantDigits; i++) {
+                    buffer[position++] = i < leadingZeros ? '0' : digit(i - leadingZeros, digits);
+                    int separator = (int) (e123Separators >>> (2 * i) & 3);
+                    if (separator == 1 && i + 1 < significantDigits) {
+                        buffer[position++] = ' ';
+                    } else if (separator == 2 && i + 1 < significantDigits) {
+                        buffer[position++] = '-';
+                    }
+                }
+                return position;
+            case PHONE_INT_NORMALIZED_SOPRES:
+                // + international prefix (0 + zonal prefix ) number
+                position = appendInternationalPrefix(buffer);
+                buffer[position++] = ' ';
+                buffer[position++] = '(';
+                buffer[position++] = '0';
+                position = appendDigits(buffer, position, 0, zonalPrefixLength, digits);
+                buffer[position++] = ')';
+                buffer[position++] = ' ';
+                return appendDigits(buffer, position, zonalPrefixLength, digits, digits);
+            default:
+                throw new IllegalArgumentException(field + " is not a format string");
+        }
+    }
+
+    private int appendInternationalPrefix(char[] buffer) {
+        buffer[0] = '+';
+        int length = 1;
+        for (long power = POWERS[length(internationalPrefix) - 1]; power > 0; power /= 10) {
+            buffer[length++] = (char) ('0' + internationalPrefix / power % 10);
+        }
+        return length;
+    }
+
+    // the digits from..to of the national number
+    private int appendDigits(char[] buffer, int position, int from, int to, int digits) {
+        for (int i = from; i < to; i++) {
+            buffer[position++] = digit(i, digits);
+        }
+        return position;
+    }
+
+    private char digit(int index, int digits) {
+        return (char) ('0' + nationalNumber / POWERS[digits - 1 - index] % 10);
+    }
+
+    private int digits() {
+        return length(nationalNumber);
+    }
+
+    private static int length(long value) {
+        int length = 1;
+        while (length < POWERS.length && value >= POWERS[length]) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int bit(OutputField field) {
+        return 1 << field.ordinal();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof OutputPhone)) return false;
+        OutputPhone that = (OutputPhone) o;
+        // the same fields, whether they are derived or not
+        return validityDetailedFlag == that.validityDetailedFlag && Objects.equals(getInternationalPrefix(), that.getInternationalPrefix())
+                && Objects.equals(getZonalPrefix(), that.getZonalPrefix()) && Objects.equals(getNumber(), that.getNumber())
+                && Objects.equals(getPhoneDedupKey(), that.getPhoneDedupKey()) && Objects.equals(getPhoneNormalized(), that.getPhoneNormalized())
+                && Objects.equals(getZoneId(), that.getZoneId()) && Objects.equals(getCountryCode(), that.getCountryCode())
+                && Objects.equals(getPhoneType(), that.getPhoneType()) && Objects.equals(getPhoneIntNormalized(), that.getPhoneIntNormalized())
+                && Objects.equals(getPhoneIntNormalizedE123(), that.getPhoneIntNormalizedE123())
+                && Objects.equals(getPhoneIntNormalizedSopres(), that.getPhoneIntNormalizedSopres());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(validityDetailedFlag, getPhoneDedupKey(), getPhoneIntNormalized());
+    }
+
+    @Override
+    public String toString() {
+        return "OutputPhone(internationalPrefix=" + getInternationalPrefix() + ", zonalPrefix=" + getZonalPrefix() + ", number=" + getNumber()
+                + ", phoneDedupKey=" + getPhoneDedupKey() + ", phoneNormalized=" + getPhoneNormalized() + ", zoneId=" + getZoneId()
+                + ", validity=" + getValidity() + ", countryCode=" + getCountryCode() + ", phoneType=" + getPhoneType()
+                + ", phoneIntNormalized=" + getPhoneIntNormalized() + ", phoneIntNormalizedE123=" + getPhoneIntNormalizedE123()
+                + ", phoneIntNormalizedSopres=" + getPhoneIntNormalizedSopres() + ")";
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,78 @@
+package be.demo.normalizephone.beans;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Write an OutputPhone straight to the JSON output, the format strings are written from the parts of the phone number
+ * without building them. The same JSON as the former bean: the fields in the same order, the empty fields left out
+ * and the fields of Views.Internal only written in that view or without view.
+ */
+public class OutputPhoneSerializer extends StdSerializer<OutputPhone> {
+
+    // one format buffer per thread, the serializer is shared
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[OutputPhone.MAX_FORMAT_LENGTH]);
+
+    public OutputPhoneSerializer() {
+        super(OutputPhone.class);
+    }
+
+    @Override
+    public void serialize(OutputPhone outputPhone, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        Class<?> view = provider.getActiveView();
+        boolean internal = view == null || Views.Internal.class.isAssignableFrom(view);
+        boolean limited = view == null || Views.Limited.class.isAssignableFrom(view);
+        char[] buffer = BUFFER.get();
+
+        gen.writeStartObject(outputPhone);
+        if (internal) {
+            if (outputPhone.has(OutputField.INTERNATIONAL_PREFIX)) {
+                gen.writeNumberField("internationalPrefix", outputPhone.internationalPrefix());
+            }
+            writeFormat(gen, "zonalPrefix", outputPhone, OutputField.ZONAL_PREFIX, buffer);
+            writeFormat(gen, "number", outputPhone, OutputField.NUMBER, buffer);
+            if (outputPhone.has(OutputField.PHONE_DEDUP_KEY)) {
+                gen.writeNumberField("phoneDedupKey", outputPhone.nationalNumber());
+            }
+            writeFormat(gen, "phoneNormalized", outputPhone, OutputField.PHONE_NORMALIZED, buffer);
+        }
+        if (limited) {
+            provider.defaultSerializeField("validity", outputPhone.getValidity(), gen);
+        }
+        if (internal && outputPhone.has(OutputField.COUNTRY_CODE) && !outputPhone.countryCode().isEmpty()) {
+            gen.writeStringField("countryCode", outputPhone.countryCode());
+        }
+        if (limited && outputPhone.has(OutputField.PHONE_TYPE)) {
+            gen.writeNumberField("phoneType", (short) outputPhone.phoneType());
+        }
+        if (internal) {
+            writeFormat(gen, "phoneIntNormalized", outputPhone, OutputField.PHONE_INT_NORMALIZED, buffer);
+            String e123 = outputPhone.explicitPhoneIntNormalizedE123();
+            if (e123 == null) {
+                writeFormat(gen, "phoneIntNormalizedE123", outputPhone, OutputField.PHONE_INT_NORMALIZED_E123, buffer);
+            } else if (outputPhone.has(OutputField.PHONE_INT_NORMALIZED_E123) && !e123.isEmpty()) {
+                gen.writeStringField("phoneIntNormalizedE123", e123);
+            }
+            writeFormat(gen, "phoneIntNormalizedSopres", outputPhone, OutputField.PHONE_INT_NORMALIZED_SOPRES, buffer);
+        }
+        gen.writeEndObject();
+    }
+
+    @Override
+    public boolean isEmpty(SerializerProvider provider, OutputPhone value) {
+        return value == null;
+    }
+
+    private static void writeFormat(JsonGenerator gen, String name, OutputPhone outputPhone, OutputField field, char[] buffer) throws IOException {
+        int length = outputPhone.format(field, buffer);
+        // an empty string is left out, as Include.NON_EMPTY did
+        if (length > 0) {
+            gen.writeFieldName(name);
+            gen.writeString(buffer, 0, length);
+        }
+    }
+
+}
@@ -14,5 +14,32 @@ public class Phone {
     InputPhone inputPhone;
     @Schema(description = "Output")
     OutputPhone outputPhone;
+    @Schema(description = "Error, only set when the phone number could not be normalized in a batch")
+    String error;
+    @Schema(description = "Correlation ID of the input, only set with ?response=id", example = "customer-1001")
+    String id;
 
-}
\ No newline at end of file
+    public Phone(InputPhone inputPhone, OutputPhone outputPhone) {
+        this(inputPhone, outputPhone, null, null);
+    }
+
+    public Phone(InputPhone inputPhone, OutputPhone outputPhone, String error) {
+        this(inputPhone, outputPhone, error, null);
+    }
+
+    /**
+     * @param responseMode envelope of the response
+     * @return this phone in the envelope, without the input for the lean and the id envelopes
+     */
+    public Phone in(ResponseMode responseMode) {
+        switch (responseMode) {
+            case LEAN:
+                return new Phone(null, outputPhone, error, null);
+            case ID:
+                return new Phone(null, outputPhone, error, inputPhone != null ? inputPhone.getId() : null);
+            default:
+                return this;
+        }
+    }
+
+}
@@ -0,0 +1,40 @@
+package be.demo.normalizephone.beans;
+
+import java.util.Locale;
+
+/**
+ * Envelope of the normalized phone numbers in a JSON or NDJSON response, chosen by the request: ?response=lean. A CSV
+ * stream has fixed columns and only accepts the full response.
+ */
+public enum ResponseMode {
+
+    // the input next to the output
+    FULL,
+    // the output without the input, about half the bytes of a batch
+    LEAN,
+    // the correlation ID of the input next to the output, without the rest of the input
+    ID;
+
+    /**
+     * @param name the name of the envelope, in any case
+     * @return the envelope
+     * @throws IllegalArgumentException when there is no envelope with this name
+     */
+    public static ResponseMode of(String name) {
+        for (ResponseMode responseMode : values()) {
+            if (responseMode.name().equalsIgnoreCase(name.trim())) {
+                return responseMode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown response mode " + name + ", expected one of full, lean or id");
+    }
+
+    /**
+     * @param responseMode requested envelope, can be null
+     * @return the envelope, the full envelope when none is requested
+     */
+    public static ResponseMode orDefault(ResponseMode responseMode) {
+        return responseMode != null ? responseMode : FULL;
+    }
+
+}
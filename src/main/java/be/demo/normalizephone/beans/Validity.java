@@ -1,15 +1,16 @@
 package be.demo.normalizephone.beans;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonView;
 import io.swagger.v3.oas.annotations.media.Schema;
-import lombok.AllArgsConstructor;
-import lombok.Data;
-import lombok.NoArgsConstructor;
+import lombok.Value;
 
-@Data
-@NoArgsConstructor
-@AllArgsConstructor
+/**
+ * Immutable, one shared instance per validity detailed flag ( see ValidityDetailedFlag )
+ */
+@Value
 @JsonView(Views.Limited.class)
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 public class Validity {
@@ -23,4 +24,13 @@ public class Validity {
     @Schema(example = "PHONE_OK")
     String detailedMessage;
 
-}
\ No newline at end of file
+    @JsonCreator
+    public Validity(@JsonProperty("flag") Short flag, @JsonProperty("message") String message,
+                    @JsonProperty("detailedFlag") String detailedFlag, @JsonProperty("detailedMessage") String detailedMessage) {
+        this.flag = flag;
+        this.message = message;
+        this.detailedFlag = detailedFlag;
+        this.detailedMessage = detailedMessage;
+    }
+
+}
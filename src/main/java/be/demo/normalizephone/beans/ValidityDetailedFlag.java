@@ -0,0 +1,76 @@
+package be.demo.normalizephone.beans;
+
+/**
+ * Validity detailed flag of a phone number ( PhoneNumberUtil.ValidationResult + extra checks ), with the validity
+ * flag it is reduced to. Every detailed flag holds one shared Validity, so classifying a phone number allocates
+ * nothing.
+ */
+public enum ValidityDetailedFlag {
+
+    PHONE_OK("00", ValidityFlag.PHONE_OK, "PHONE_OK"),
+    OUTPUT_TOO_LONG("01", ValidityFlag.INVALID_LENGTH_NATIONAL, "ERROR_OUTPUT_TOO_LONG"),
+    INVALID_LENGTH_NAT("02", ValidityFlag.INVALID_LENGTH_ZONAL, "ERROR_INVALID_LENGTH_NAT"),
+    NOT_LOCAL_IN_ASKED_COUNTRY("04", ValidityFlag.INVALID_NUMBER_ZONAL, "ERROR_NOT_LOCAL_IN_ASKED_COUNTRY"),
+    TOO_SHORT_FOR_CC_COUNTRY("05", ValidityFlag.INVALID_LENGTH_NATIONAL, "ERROR_TOO_SHORT_FOR_CC_COUNTRY"),
+    UNKNOWN_INT_PREFIX("07", ValidityFlag.INVALID_PREFIX, "ERROR_UNKNOWN_INT_PREFIX"),
+    BLANK_PHONE("08", ValidityFlag.BLANK_PHONE, "ERROR_BLANK_PHONE"),
+    COUNTRY_CC_NOT_FOUND("09", ValidityFlag.AMBIGUOUS_COUNTRY, "ERROR_COUNTRY_CC_NOT_FOUND"),
+    INVALID_CHARACTERS("10", ValidityFlag.INVALID_CHARACTERS, "ERROR_INVALID_CHARACTERS"),
+    UNKNOWN("99", ValidityFlag.UNKNOWN, "Unknown validity flag");
+
+    // detailed flags indexed by their two digit code
+    private static final ValidityDetailedFlag[] BY_CODE = new ValidityDetailedFlag[100];
+
+    static {
+        for (ValidityDetailedFlag detailedFlag : values()) {
+            BY_CODE[Integer.parseInt(detailedFlag.code)] = detailedFlag;
+        }
+    }
+
+    private final String code;
+    private final ValidityFlag validityFlag;
+    private final Validity validity;
+
+    ValidityDetailedFlag(String code, ValidityFlag validityFlag, String detailedMessage) {
+        this.code = code;
+        this.validityFlag = validityFlag;
+        this.validity = new Validity(validityFlag.getFlag(), validityFlag.getMessage(), code, detailedMessage);
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public ValidityFlag getValidityFlag() {
+        return validityFlag;
+    }
+
+    /**
+     * @return the shared validity flag + description AND validity detailed flag + description
+     */
+    public Validity getValidity() {
+        return validity;
+    }
+
+    /**
+     * Get the validity detailed flag for its code
+     *
+     * @param code two digit code of the validity detailed flag
+     * @return the validity detailed flag, UNKNOWN for an unknown code
+     */
+    public static ValidityDetailedFlag of(String code) {
+        if (code == null || code.length() != 2) {
+            return UNKNOWN;
+        }
+
+        int tens = code.charAt(0) - '0';
+        int units = code.charAt(1) - '0';
+        if (tens < 0 || tens > 9 || units < 0 || units > 9) {
+            return UNKNOWN;
+        }
+
+        ValidityDetailedFlag detailedFlag = BY_CODE[tens * 10 + units];
+        return detailedFlag != null ? detailedFlag : UNKNOWN;
+    }
+
+}
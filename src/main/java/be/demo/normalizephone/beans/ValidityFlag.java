@@ -0,0 +1,44 @@
+package be.demo.normalizephone.beans;
+
+/**
+ * Validity flag (short version) of a phone number
+ */
+public enum ValidityFlag {
+
+    PHONE_OK(0, "phone number OK", false),
+    INVALID_LENGTH_NATIONAL(1, "invalid length for National def", true),
+    INVALID_PREFIX(2, "invalid prefix", true),
+    INVALID_CHARACTERS(3, "invalid character (contains letters)", true),
+    BLANK_PHONE(4, "Blank Phone", false),
+    INVALID_LENGTH_ZONAL(5, "invalid length for Zonal def", true),
+    AMBIGUOUS_COUNTRY(6, "ambiguous country detection", false),
+    DEDUP_TOO_SHORT(7, "set to blank because specified dedup format too short", false),
+    INVALID_NUMBER_ZONAL(8, "invalid number for Zonal def", true),
+    UNKNOWN(9, "Unknown validity flag", false);
+
+    private final Short flag;
+    private final String message;
+    private final boolean limitedView;
+
+    ValidityFlag(int flag, String message, boolean limitedView) {
+        this.flag = (short) flag;
+        this.message = message;
+        this.limitedView = limitedView;
+    }
+
+    public Short getFlag() {
+        return flag;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return true if only the fields of the limited view ( Views.Limited ) are returned for this validity flag
+     */
+    public boolean isLimitedView() {
+        return limitedView;
+    }
+
+}
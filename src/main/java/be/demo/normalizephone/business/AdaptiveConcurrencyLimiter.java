@@ -0,0 +1,118 @@
+package be.demo.normalizephone.business;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Limit of the number of requests in flight, adapted to the observed latency (additive increase, multiplicative
+ * decrease): the limit goes down when a request is slower than the target latency, and up by one when a request is
+ * fast while the limit is in use. A request is admitted or rejected at once, it never waits.
+ * <p>
+ * Low priority requests may only use a share of the limit, so there is room left for the high priority requests
+ * when the low priority requests are rejected.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    public static final String METRIC_PREFIX = "normalize.admission";
+
+    public enum Priority {
+        HIGH,
+        LOW
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long targetLatency;
+    private final double backoffRatio;
+    private final double lowPriorityShare;
+    private final Map<Priority, Counter> rejections = new EnumMap<>(Priority.class);
+
+    private double limit;
+    private int inFlight;
+
+    /**
+     * @param initialLimit     limit before any latency is observed
+     * @param minLimit         lowest limit
+     * @param maxLimit         highest limit
+     * @param targetLatency    requests slower than this latency lower the limit
+     * @param backoffRatio     factor of the limit after a slow request, between 0 and 1
+     * @param lowPriorityShare share of the limit the low priority requests may use, between 0 and 1
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, Duration targetLatency, double backoffRatio, double lowPriorityShare) {
+        if (minLimit < 1 || minLimit > maxLimit || backoffRatio <= 0 || backoffRatio >= 1 || lowPriorityShare <= 0 || lowPriorityShare > 1) {
+            throw new IllegalArgumentException("Invalid admission control settings");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatency = targetLatency.toNanos();
+        this.backoffRatio = backoffRatio;
+        this.lowPriorityShare = lowPriorityShare;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Publish the limit, the requests in flight and the rejected requests per priority
+     *
+     * @param registry meter registry
+     */
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder(METRIC_PREFIX + ".limit", this, AdaptiveConcurrencyLimiter::getLimit).register(registry);
+        Gauge.builder(METRIC_PREFIX + ".inflight", this, AdaptiveConcurrencyLimiter::getInFlight).register(registry);
+        for (Priority priority : Priority.values()) {
+            rejections.put(priority, Counter.builder(METRIC_PREFIX + ".rejected").tag("priority", priority.name()).register(registry));
+        }
+    }
+
+    /**
+     * Admit a request when the requests in flight are under the limit of its priority
+     *
+     * @param priority priority of the request
+     * @return true when the request is admitted, it must then be released
+     */
+    public boolean tryAcquire(Priority priority) {
+        synchronized (this) {
+            double priorityLimit = priority == Priority.LOW ? limit * lowPriorityShare : limit;
+            if (inFlight < Math.max(1, (int) priorityLimit)) {
+                inFlight++;
+                return true;
+            }
+        }
+
+        Counter rejected = rejections.get(priority);
+        if (rejected != null) {
+            rejected.increment();
+        }
+        return false;
+    }
+
+    /**
+     * Release an admitted request
+     *
+     * @param latency latency of the request in nanoseconds, negative when the latency must not adapt the limit
+     */
+    public synchronized void release(long latency) {
+        if (latency >= 0) {
+            if (latency > targetLatency) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (inFlight * 2 >= limit) {
+                // only grow a limit that is in use
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        }
+        inFlight--;
+    }
+
+    public synchronized double getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+}
@@ -0,0 +1,213 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.OutputField;
+import be.demo.normalizephone.beans.OutputPhone;
+import be.demo.normalizephone.beans.ValidityDetailedFlag;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.Phonenumber;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fast path for the Belgian phone numbers with default country BE, without the generic libphonenumber parse.
+ * <p>
+ * The Belgian metadata only depends on the first digits and the length of the national number, so the outcome of a
+ * normalization is the same for all national numbers with the same 4 digit prefix and length. The outcome of each
+ * prefix and length is computed once with libphonenumber, by probing the national numbers with every value of the
+ * 5th digit: when the probes don't agree, the prefix is not handled by the fast path. Phone numbers in an other
+ * format than 0..., +32... or 0032... with simple punctuation are not handled either.
+ */
+class BelgianPhoneNumbers {
+
+    static final String REGION = "BE";
+
+    private static final PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
+
+    private static final int COUNTRY_CODE = 32;
+    private static final int MIN_LENGTH = 8;
+    private static final int MAX_LENGTH = 9;
+    private static final int PREFIX_LENGTH = 4;
+    private static final int PREFIXES = 10000;
+    private static final long[] POWERS = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L};
+
+    // outcome of a prefix and length for which the probes don't agree
+    private static final Outcome UNSURE = new Outcome(null, null, 0, -1);
+
+    // outcome per prefix and length, computed on first use
+    private final AtomicReferenceArray<Outcome> outcomes = new AtomicReferenceArray<>(PREFIXES * (MAX_LENGTH - MIN_LENGTH + 1));
+
+    /**
+     * Normalize a Belgian phone number
+     *
+     * @param phoneNumber trimmed phone number, without letters
+     * @param outputs     requested fields
+     * @return the normalized phone number, null when the phone number is not handled by the fast path
+     */
+    OutputPhone normalize(String phoneNumber, Set<OutputField> outputs) {
+        long nationalNumber = nationalNumber(phoneNumber);
+        if (nationalNumber < 0) {
+            return null;
+        }
+
+        int length = length(nationalNumber);
+        Outcome outcome = getOutcome(nationalNumber, length);
+        if (outcome == UNSURE) {
+            return null;
+        }
+
+        // Only the fields of the limited view are returned for the other flags of a Belgian number
+        if (outcome.validityDetailedFlag != ValidityDetailedFlag.PHONE_OK) {
+            return OutputPhone.of(outcome.validityDetailedFlag);
+        }
+        // the same fields as the generic normalization, all formats are derived from the national number
+        return OutputPhone.of(outcome.validityDetailedFlag, outputs, REGION, outcome.mobile, COUNTRY_CODE, nationalNumber, 0,
+                outcome.nationalDestinationCodeLength, outcome.e123Separators);
+    }
+
+    /**
+     * Extract the national number from a phone number in the format 0..., +32... or 0032..., with spaces, dashes,
+     * dots, slashes and brackets between the digits
+     *
+     * @param phoneNumber trimmed phone number
+     * @return the national number, -1 when the phone number is in an other format or has an invalid length
+     */
+    private static long nationalNumber(String phoneNumber) {
+        boolean plus = false;
+        long digits = 0;
+        int count = 0;
+
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                // more digits than the longest international format, 0032 and the national number
+                if (++count > MAX_LENGTH + 4) {
+                    return -1;
+                }
+                digits = digits * 10 + (c - '0');
+            } else if (c == '+' && i == 0) {
+                plus = true;
+            } else if (c != ' ' && c != '-' && c != '.' && c != '/' && c != '(' && c != ')') {
+                return -1;
+            }
+        }
+
+        int nationalLength;
+        if (plus) {
+            // +32 and the national number
+            nationalLength = count - 2;
+            if (nationalLength < MIN_LENGTH || nationalLength > MAX_LENGTH || digits / POWERS[nationalLength] != COUNTRY_CODE) {
+                return -1;
+            }
+        } else if (count > MAX_LENGTH + 1) {
+            // 0032 and the national number
+            nationalLength = count - 4;
+            if (nationalLength < MIN_LENGTH || digits / POWERS[nationalLength] != COUNTRY_CODE) {
+                return -1;
+            }
+        } else {
+            // the national prefix 0 and the national number
+            nationalLength = count - 1;
+            if (nationalLength < MIN_LENGTH || digits / POWERS[nationalLength] != 0) {
+                return -1;
+            }
+        }
+
+        long nationalNumber = digits % POWERS[nationalLength];
+        // a national number with a leading 0 is handled by the generic parse
+        return nationalNumber >= POWERS[nationalLength - 1] ? nationalNumber : -1;
+    }
+
+    private Outcome getOutcome(long nationalNumber, int length) {
+        int prefix = (int) (nationalNumber / POWERS[length - PREFIX_LENGTH]);
+        int index = (length - MIN_LENGTH) * PREFIXES + prefix;
+
+        Outcome outcome = outcomes.get(index);
+        if (outcome == null) {
+            // computing the same outcome twice in parallel is harmless
+            outcome = probe(prefix, length);
+            outcomes.set(index, outcome);
+        }
+        return outcome;
+    }
+
+    /**
+     * Compute the outcome of a prefix and length with libphonenumber
+     *
+     * @param prefix 4 digit prefix of the national number
+     * @param length length of the national number
+     * @return the outcome, UNSURE when the national numbers with the prefix and length don't have the same outcome
+     */
+    private static Outcome probe(int prefix, int length) {
+        long base = prefix * POWERS[length - PREFIX_LENGTH];
+        Outcome outcome = probe(base);
+        for (int digit = 1; digit <= 9 && outcome != UNSURE; digit++) {
+            // every value of the 5th digit, and the last digits set to the same value
+            long nationalNumber = base + digit * POWERS[length - PREFIX_LENGTH - 1] + digit * (POWERS[length - PREFIX_LENGTH - 1] - 1) / 9;
+            if (!outcome.equals(probe(nationalNumber))) {
+                outcome = UNSURE;
+            }
+        }
+        return outcome;
+    }
+
+    private static Outcome probe(long nationalNumber) {
+        Phonenumber.PhoneNumber number = new Phonenumber.PhoneNumber().setCountryCode(COUNTRY_CODE).setNationalNumber(nationalNumber);
+        PhoneAnalysis analysis = new PhoneAnalysis(number);
+
+        ValidityDetailedFlag validityDetailedFlag = analysis.getValidityDetailedFlag();
+        if (validityDetailedFlag != ValidityDetailedFlag.PHONE_OK) {
+            return new Outcome(validityDetailedFlag, null, 0, 0);
+        }
+
+        // +32 479 44 55 66 => a space after the 3rd, 5th and 7th digit of the national number
+        String[] groups = phoneUtil.format(number, PhoneNumberUtil.PhoneNumberFormat.INTERNATIONAL).split(" ");
+        long e123Separators = 0;
+        int digits = 0;
+        for (int i = 1; i < groups.length - 1; i++) {
+            digits += groups[i].length();
+            e123Separators |= 1L << (2 * (digits - 1));
+        }
+        return new Outcome(validityDetailedFlag, analysis.getMobile(), analysis.getNationalDestinationCodeLength(), e123Separators);
+    }
+
+    private static int length(long nationalNumber) {
+        return nationalNumber >= POWERS[MAX_LENGTH - 1] ? MAX_LENGTH : MIN_LENGTH;
+    }
+
+    /**
+     * Outcome of the normalization of the national numbers with the same prefix and length
+     */
+    private static final class Outcome {
+
+        private final ValidityDetailedFlag validityDetailedFlag;
+        private final Short mobile;
+        private final int nationalDestinationCodeLength;
+        // the spaces of the E.123 format, see OutputPhone
+        private final long e123Separators;
+
+        private Outcome(ValidityDetailedFlag validityDetailedFlag, Short mobile, int nationalDestinationCodeLength, long e123Separators) {
+            this.validityDetailedFlag = validityDetailedFlag;
+            this.mobile = mobile;
+            this.nationalDestinationCodeLength = nationalDestinationCodeLength;
+            this.e123Separators = e123Separators;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Outcome)) return false;
+            Outcome that = (Outcome) o;
+            return validityDetailedFlag == that.validityDetailedFlag && Objects.equals(mobile, that.mobile)
+                    && nationalDestinationCodeLength == that.nationalDestinationCodeLength && e123Separators == that.e123Separators;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(validityDetailedFlag, mobile, nationalDestinationCodeLength, e123Separators);
+        }
+
+    }
+
+}
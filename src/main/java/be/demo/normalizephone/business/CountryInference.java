@@ -0,0 +1,268 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.OutputPhone;
+import be.demo.normalizephone.beans.ValidityDetailedFlag;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.Phonemetadata;
+import com.google.i18n.phonenumbers.metadata.DefaultMetadataDependenciesProvider;
+import com.google.i18n.phonenumbers.metadata.source.MetadataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Inference of the country of a national phone number that is not valid for its default country, because the default
+ * country is missing or wrong. The candidate regions are tried in their ranked order, the first region for which the
+ * phone number is valid is the best match. When the phone number is a different valid number in an other candidate
+ * region too, the best match gets the validity "09" (ambiguous country detection) and the other regions are not tried.
+ * <p>
+ * The regions that certainly can't hold the phone number are skipped without parsing it: the length of the national
+ * significant number and its first 2 digits are looked up in tables built from the metadata of the regions of the
+ * calling code. Every national significant number the parse could take is checked: the digits with or without the
+ * calling code, each with or without the national prefix and carrier code, or transformed by the region. A phone
+ * number with other characters than digits and separators, e.g. an extension, is never skipped.
+ */
+@Slf4j
+public class CountryInference {
+
+    public static final String METRIC_PREFIX = "normalize.inference";
+
+    private static final PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
+    private static final String SEPARATORS = " -.()/";
+
+    public enum Outcome {
+        INFERRED,
+        AMBIGUOUS,
+        NOT_FOUND
+    }
+
+    private final boolean pruning;
+    private final List<Candidate> candidates = new ArrayList<>();
+    private final Map<Outcome, Counter> outcomes = new EnumMap<>(Outcome.class);
+
+    /**
+     * @param regions ranked ISO 3166 alpha-2 codes of the candidate regions
+     */
+    public CountryInference(List<String> regions) {
+        this(regions, true);
+    }
+
+    /**
+     * @param regions ranked ISO 3166 alpha-2 codes of the candidate regions
+     * @param pruning false to parse the phone number for every candidate region
+     */
+    CountryInference(List<String> regions, boolean pruning) {
+        this.pruning = pruning;
+        // the metadata source of PhoneNumberUtil, its own lookup is not public
+        MetadataSource metadataSource = DefaultMetadataDependenciesProvider.getInstance().getPhoneNumberMetadataSource();
+        for (String region : regions) {
+            String regionCode = region.trim().toUpperCase();
+            if (!phoneUtil.getSupportedRegions().contains(regionCode)) {
+                throw new IllegalArgumentException("Unsupported candidate region " + region);
+            }
+            candidates.add(new Candidate(metadataSource, regionCode));
+        }
+    }
+
+    /**
+     * Publish the number of inferences per outcome
+     *
+     * @param registry meter registry
+     */
+    public void bindTo(MeterRegistry registry) {
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, Counter.builder(METRIC_PREFIX).tag("outcome", outcome.name()).register(registry));
+        }
+    }
+
+    /**
+     * @return the ranked candidate regions
+     */
+    public List<String> getRegions() {
+        List<String> regions = new ArrayList<>(candidates.size());
+        candidates.forEach(candidate -> regions.add(candidate.region));
+        return Collections.unmodifiableList(regions);
+    }
+
+    /**
+     * Only a phone number that is not valid for its default country is inferred, except a phone number with a +: its
+     * country is in the number itself
+     *
+     * @param phoneNumber          trimmed phone number
+     * @param validityDetailedFlag validity for the default country
+     * @return true when the country of the phone number must be inferred
+     */
+    boolean appliesTo(String phoneNumber, ValidityDetailedFlag validityDetailedFlag) {
+        return validityDetailedFlag != ValidityDetailedFlag.PHONE_OK && validityDetailedFlag != ValidityDetailedFlag.BLANK_PHONE
+                && validityDetailedFlag != ValidityDetailedFlag.INVALID_CHARACTERS && !phoneNumber.startsWith("+");
+    }
+
+    /**
+     * Infer the country of a phone number
+     *
+     * @param phoneNumber trimmed phone number
+     * @param countryCode default country, it is not tried again
+     * @param normalized  the phone number normalized for its default country
+     * @param normalizer  normalization of the phone number for a candidate region
+     * @return the phone number normalized for the best candidate region, the given normalized phone number when it is
+     * not valid for any candidate region
+     */
+    OutputPhone infer(String phoneNumber, String countryCode, OutputPhone normalized, Function<String, OutputPhone> normalizer) {
+        String digits = pruning ? digits(phoneNumber) : null;
+        OutputPhone best = null;
+
+        for (Candidate candidate : candidates) {
+            if (candidate.region.equals(countryCode) || digits != null && !candidate.mayHold(digits)) {
+                continue;
+            }
+            OutputPhone outputPhone;
+            try {
+                outputPhone = normalizer.apply(candidate.region);
+            } catch (RuntimeException e) {
+                // a failure for a candidate region fails the inference of that region, not the request
+                log.debug("Could not normalize a phone number for the candidate region {}", candidate.region, e);
+                continue;
+            }
+            if (ValidityDetailedFlag.of(outputPhone.getValidity().getDetailedFlag()) != ValidityDetailedFlag.PHONE_OK) {
+                continue;
+            }
+            if (best == null) {
+                best = outputPhone;
+            } else if (!best.isSameNumber(outputPhone)) {
+                // a second valid number, the country is ambiguous whatever the remaining regions are
+                record(Outcome.AMBIGUOUS);
+                return best.withValidity(ValidityDetailedFlag.COUNTRY_CC_NOT_FOUND);
+            }
+        }
+
+        record(best != null ? Outcome.INFERRED : Outcome.NOT_FOUND);
+        return best != null ? best : normalized;
+    }
+
+    private void record(Outcome outcome) {
+        Counter counter = outcomes.get(outcome);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    /**
+     * @param phoneNumber trimmed phone number
+     * @return the ASCII digits of the phone number, null when it has other characters than separators: its candidates
+     * are not pruned, the parse could read an extension, letters or other digits
+     */
+    private static String digits(String phoneNumber) {
+        StringBuilder digits = new StringBuilder(phoneNumber.length());
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (SEPARATORS.indexOf(c) < 0) {
+                return null;
+            }
+        }
+        return digits.toString();
+    }
+
+    /**
+     * Lookups of a candidate region, built once from its metadata
+     */
+    private static final class Candidate {
+
+        private final String region;
+        private final String countryCode;
+        private final Pattern internationalPrefix;
+        // national prefix and carrier code, null when the region has none
+        private final Pattern nationalPrefixForParsing;
+        private final String nationalPrefixTransformRule;
+        // bit per possible length of a national significant number of a region of the calling code, all lengths when
+        // the metadata has none
+        private final long lengths;
+        // the 2 digit starts of a national significant number that can match the pattern of a region of the calling code
+        private final BitSet leadingDigits = new BitSet(100);
+
+        private Candidate(MetadataSource metadataSource, String regionCode) {
+            Phonemetadata.PhoneMetadata metadata = metadataSource.getMetadataForRegion(regionCode);
+            this.region = metadata.getId();
+            this.countryCode = Integer.toString(metadata.getCountryCode());
+            this.internationalPrefix = Pattern.compile(metadata.getInternationalPrefix());
+            String prefixForParsing = metadata.hasNationalPrefixForParsing() ? metadata.getNationalPrefixForParsing() : metadata.getNationalPrefix();
+            this.nationalPrefixForParsing = prefixForParsing.isEmpty() ? null : Pattern.compile(prefixForParsing);
+            this.nationalPrefixTransformRule = metadata.hasNationalPrefixTransformRule() && !metadata.getNationalPrefixTransformRule().isEmpty()
+                    ? metadata.getNationalPrefixTransformRule() : null;
+
+            // the parse gives the calling code of the region, the number is valid when it is valid in any region of
+            // the calling code
+            long possibleLengths = 0;
+            for (String callingCodeRegion : phoneUtil.getRegionCodesForCountryCode(metadata.getCountryCode())) {
+                Phonemetadata.PhoneNumberDesc generalDesc = metadataSource.getMetadataForRegion(callingCodeRegion).getGeneralDesc();
+                if (generalDesc.getPossibleLengthCount() == 0) {
+                    possibleLengths = -1L;
+                }
+                for (int length : generalDesc.getPossibleLengthList()) {
+                    possibleLengths |= 1L << length;
+                }
+
+                // a start can match when the pattern matches it, or when it needs more input to match it (hitEnd)
+                Pattern pattern = Pattern.compile(generalDesc.getNationalNumberPattern());
+                for (int start = 0; start < 100; start++) {
+                    Matcher matcher = pattern.matcher(String.format("%02d", start));
+                    if (matcher.matches() || matcher.hitEnd()) {
+                        leadingDigits.set(start);
+                    }
+                }
+            }
+            this.lengths = possibleLengths != 0 ? possibleLengths : -1L;
+        }
+
+        /**
+         * @param digits digits of a phone number, with or without the international prefix, the calling code or the
+         *               national prefix
+         * @return false when the phone number can't be a valid number of the region
+         */
+        private boolean mayHold(String digits) {
+            // the number after the international prefix is a number of an other country, which the parse checks
+            return internationalPrefix.matcher(digits).lookingAt() || mayHoldNational(digits)
+                    || digits.startsWith(countryCode) && mayHoldNational(digits.substring(countryCode.length()));
+        }
+
+        /**
+         * @param number digits of a phone number, with or without the national prefix and carrier code
+         * @return false when no national significant number the parse could take from it can be valid
+         */
+        private boolean mayHoldNational(String number) {
+            if (mayBeNationalSignificantNumber(number)) {
+                return true;
+            }
+            if (nationalPrefixForParsing == null) {
+                return false;
+            }
+            Matcher matcher = nationalPrefixForParsing.matcher(number);
+            if (!matcher.lookingAt()) {
+                return false;
+            }
+            return mayBeNationalSignificantNumber(number.substring(matcher.end()))
+                    || nationalPrefixTransformRule != null && mayBeNationalSignificantNumber(matcher.replaceFirst(nationalPrefixTransformRule));
+        }
+
+        private boolean mayBeNationalSignificantNumber(String number) {
+            int length = number.length();
+            if (length >= Long.SIZE || (lengths & 1L << length) == 0) {
+                return false;
+            }
+            return length < 2 || leadingDigits.get((number.charAt(0) - '0') * 10 + number.charAt(1) - '0');
+        }
+
+    }
+
+}
@@ -0,0 +1,216 @@
+package be.demo.normalizephone.business;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Growable array of longs, split in pages of 1M longs so it can hold more than 2^31 longs. The pages are long arrays
+ * on the heap, direct buffers outside the heap, or regions of a memory-mapped file. New longs are 0.
+ */
+abstract class LongPages implements Closeable {
+
+    static final int PAGE_SHIFT = 20;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    static final int PAGE_MASK = PAGE_SIZE - 1;
+    static final long PAGE_BYTES = (long) PAGE_SIZE * Long.BYTES;
+
+    abstract long get(long index);
+
+    abstract void set(long index, long value);
+
+    /**
+     * @param capacity number of longs that must be addressable
+     */
+    abstract void ensureCapacity(long capacity) throws IOException;
+
+    /**
+     * Write the longs to disk, only for the memory-mapped pages
+     */
+    void force() {
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    /**
+     * Write the first longs to a file, through a temporary file so the file is never half written
+     *
+     * @param file   file to write
+     * @param length number of longs to write
+     */
+    void save(Path file, long length) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (long index = 0; index < length; index++) {
+                if (!buffer.hasRemaining()) {
+                    write(channel, buffer);
+                }
+                buffer.putLong(get(index));
+            }
+            write(channel, buffer);
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the longs of a file written by save
+     *
+     * @param file file to read
+     */
+    void load(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size() / Long.BYTES;
+            ensureCapacity(length);
+            long index = 0;
+            while (index < length && channel.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.remaining() >= Long.BYTES) {
+                    set(index++, buffer.getLong());
+                }
+                buffer.compact();
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    static LongPages heap() {
+        return new HeapLongPages();
+    }
+
+    static LongPages direct() {
+        return new BufferLongPages(null);
+    }
+
+    /**
+     * @param file file of the pages, created when it doesn't exist. Its longs are the initial content of the pages
+     */
+    static LongPages mapped(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        LongPages pages = new BufferLongPages(channel);
+        try {
+            pages.ensureCapacity(channel.size() / Long.BYTES);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return pages;
+    }
+
+    private static final class HeapLongPages extends LongPages {
+
+        private long[][] pages = new long[0][];
+
+        @Override
+        long get(long index) {
+            return pages[(int) (index >>> PAGE_SHIFT)][(int) index & PAGE_MASK];
+        }
+
+        @Override
+        void set(long index, long value) {
+            pages[(int) (index >>> PAGE_SHIFT)][(int) index & PAGE_MASK] = value;
+        }
+
+        @Override
+        void ensureCapacity(long capacity) {
+            int count = (int) ((capacity + PAGE_MASK) >>> PAGE_SHIFT);
+            if (count > pages.length) {
+                long[][] grown = Arrays.copyOf(pages, count);
+                for (int page = pages.length; page < count; page++) {
+                    grown[page] = new long[PAGE_SIZE];
+                }
+                pages = grown;
+            }
+        }
+
+    }
+
+    private static final class BufferLongPages extends LongPages {
+
+        // null for direct buffers
+        private final FileChannel channel;
+        private LongBuffer[] pages = new LongBuffer[0];
+        private MappedByteBuffer[] mapped = new MappedByteBuffer[0];
+
+        private BufferLongPages(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        long get(long index) {
+            return pages[(int) (index >>> PAGE_SHIFT)].get((int) index & PAGE_MASK);
+        }
+
+        @Override
+        void set(long index, long value) {
+            pages[(int) (index >>> PAGE_SHIFT)].put((int) index & PAGE_MASK, value);
+        }
+
+        @Override
+        void ensureCapacity(long capacity) throws IOException {
+            int count = (int) ((capacity + PAGE_MASK) >>> PAGE_SHIFT);
+            if (count <= pages.length) {
+                return;
+            }
+
+            LongBuffer[] grown = Arrays.copyOf(pages, count);
+            MappedByteBuffer[] grownMapped = Arrays.copyOf(mapped, count);
+            for (int page = pages.length; page < count; page++) {
+                ByteBuffer buffer;
+                if (channel != null) {
+                    // mapping beyond the end of the file extends the file
+                    grownMapped[page] = channel.map(FileChannel.MapMode.READ_WRITE, page * PAGE_BYTES, PAGE_BYTES);
+                    buffer = grownMapped[page];
+                } else {
+                    buffer = ByteBuffer.allocateDirect((int) PAGE_BYTES);
+                }
+                grown[page] = buffer.order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            }
+            pages = grown;
+            mapped = grownMapped;
+        }
+
+        @Override
+        void force() {
+            for (MappedByteBuffer buffer : mapped) {
+                if (buffer != null) {
+                    buffer.force();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the memory of the buffers is released when they are garbage collected
+            pages = new LongBuffer[0];
+            mapped = new MappedByteBuffer[0];
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+    }
+
+}
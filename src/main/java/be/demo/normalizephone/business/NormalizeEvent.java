@@ -0,0 +1,110 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.ValidityDetailedFlag;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event of the normalization of one phone number, with the durations of its stages. No event is
+ * created while no recording enables it: the check is one read of the state of the event type.
+ */
+@Name(NormalizeEvent.NAME)
+@Label("Phone Normalization")
+@Category({"Phone SVC", "Normalization"})
+@Description("Normalization of one phone number, with the durations of its stages")
+@StackTrace(false)
+public final class NormalizeEvent extends Event {
+
+    public static final String NAME = "be.demo.normalizephone.Normalize";
+
+    @Label("Default Country")
+    String defaultCountry;
+
+    @Label("Region")
+    @Description("Region of the parsed phone number, not set when it could not be parsed")
+    String region;
+
+    @Label("Validity Detailed Flag")
+    String detailedFlag;
+
+    @Label("Inference")
+    @Description("Normalization for a candidate region of the country inference")
+    boolean inference;
+
+    @Label("Scan")
+    @Timespan(Timespan.NANOSECONDS)
+    long scan;
+
+    @Label("Belgian Fast Path")
+    @Timespan(Timespan.NANOSECONDS)
+    long belgium;
+
+    @Label("Parse")
+    @Timespan(Timespan.NANOSECONDS)
+    long parse;
+
+    @Label("Validate")
+    @Timespan(Timespan.NANOSECONDS)
+    long validate;
+
+    @Label("Type")
+    @Timespan(Timespan.NANOSECONDS)
+    long type;
+
+    @Label("Format")
+    @Timespan(Timespan.NANOSECONDS)
+    long format;
+
+    @Label("View")
+    @Timespan(Timespan.NANOSECONDS)
+    long view;
+
+    /**
+     * Begin an event when a recording enables it
+     *
+     * @return the begun event, null when no recording enables it
+     */
+    static NormalizeEvent start() {
+        // the instrumented isEnabled() reads a static field, the unused event is not allocated by the JIT
+        NormalizeEvent event = new NormalizeEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * End the event and commit it, unless it is below the threshold of the recordings
+     *
+     * @param timings        durations of the stages
+     * @param defaultCountry default country
+     * @param region         region of the parsed phone number, null when it could not be parsed
+     * @param detailedFlag   validity detailed flag of the phone number
+     * @param inference      true for a candidate region of the country inference
+     */
+    void commit(StageTimings timings, String defaultCountry, String region, ValidityDetailedFlag detailedFlag, boolean inference) {
+        end();
+        if (!shouldCommit()) {
+            return;
+        }
+        this.defaultCountry = defaultCountry;
+        this.region = region;
+        this.detailedFlag = detailedFlag.getCode();
+        this.inference = inference;
+        this.scan = timings.getDuration(NormalizeStage.SCAN);
+        this.belgium = timings.getDuration(NormalizeStage.BELGIUM);
+        this.parse = timings.getDuration(NormalizeStage.PARSE);
+        this.validate = timings.getDuration(NormalizeStage.VALIDATE);
+        this.type = timings.getDuration(NormalizeStage.TYPE);
+        this.format = timings.getDuration(NormalizeStage.FORMAT);
+        this.view = timings.getDuration(NormalizeStage.VIEW);
+        commit();
+    }
+
+}
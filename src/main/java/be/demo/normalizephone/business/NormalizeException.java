@@ -0,0 +1,37 @@
+package be.demo.normalizephone.business;
+
+/**
+ * A normalization request that the service refuses or can't complete, independent of the protocol: the web layer maps
+ * the reason to an HTTP status (NormalizeExceptionHandler), the command line reports the message.
+ */
+public class NormalizeException extends RuntimeException {
+
+    public enum Reason {
+        // the input exceeds a size limit
+        TOO_LARGE,
+        // the normalization was interrupted, the service is stopping
+        INTERRUPTED,
+        // too many jobs wait in the queue
+        TOO_MANY_QUEUED,
+        // the job doesn't exist
+        NOT_FOUND,
+        // the job has no result yet, or it failed
+        NOT_FINISHED
+    }
+
+    private final Reason reason;
+
+    public NormalizeException(Reason reason, String message) {
+        this(reason, message, null);
+    }
+
+    public NormalizeException(Reason reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+}
@@ -0,0 +1,156 @@
+package be.demo.normalizephone.business;
+
+import com.google.i18n.phonenumbers.NumberParseException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Phone numbers that could not be parsed, counted per reason. Reporting a failure only increments counters, the log
+ * gets one summary per reason per interval, written by a background thread, with at most one sample phone number of
+ * which the digits are masked but the last 2.
+ */
+@Slf4j
+public class NormalizeFailureReporter implements AutoCloseable {
+
+    public static final String FAILURE_COUNTER = "normalize.phone.failures";
+
+    private static final NumberParseException.ErrorType[] REASONS = NumberParseException.ErrorType.values();
+    private static final int MAX_SAMPLE_LENGTH = 32;
+
+    /**
+     * How the failure was detected: before the parse, or by the exception of the parse
+     */
+    public enum Detection {
+        PREVALIDATION,
+        PARSE
+    }
+
+    private final Duration interval;
+    private final boolean samples;
+    // counters indexed by reason and detection
+    private final Counter[][] counters = new Counter[REASONS.length][Detection.values().length];
+    // failures since the last summary, per reason
+    private final LongAdder[] pending = new LongAdder[REASONS.length];
+    private final AtomicReferenceArray<Sample> pendingSamples = new AtomicReferenceArray<>(REASONS.length);
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param registry meter registry
+     * @param interval interval of the summaries in the log, null or zero to only count the failures
+     * @param samples  true to log a masked sample phone number per reason
+     */
+    public NormalizeFailureReporter(MeterRegistry registry, Duration interval, boolean samples) {
+        this.interval = interval != null && !interval.isZero() ? interval : null;
+        this.samples = samples;
+        for (NumberParseException.ErrorType reason : REASONS) {
+            pending[reason.ordinal()] = new LongAdder();
+            for (Detection detection : Detection.values()) {
+                counters[reason.ordinal()][detection.ordinal()] = Counter.builder(FAILURE_COUNTER)
+                        .description("Number of phone numbers that could not be parsed")
+                        .tag("reason", reason.name())
+                        .tag("detection", detection.name().toLowerCase(Locale.ROOT))
+                        .register(registry);
+            }
+        }
+
+        if (this.interval != null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "normalize-failure-summary");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::summarize, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Count a phone number that could not be parsed
+     *
+     * @param reason      error type of the parse
+     * @param detection   how the failure was detected
+     * @param phoneNumber trimmed phone number
+     * @param countryCode default country
+     */
+    void report(NumberParseException.ErrorType reason, Detection detection, String phoneNumber, String countryCode) {
+        counters[reason.ordinal()][detection.ordinal()].increment();
+        if (interval == null) {
+            return;
+        }
+        pending[reason.ordinal()].increment();
+        if (samples && pendingSamples.get(reason.ordinal()) == null) {
+            pendingSamples.compareAndSet(reason.ordinal(), null, new Sample(phoneNumber, countryCode));
+        }
+    }
+
+    /**
+     * Log the failures since the last summary, one line per reason
+     *
+     * @return the number of failures in the summary
+     */
+    long summarize() {
+        long total = 0;
+        for (NumberParseException.ErrorType reason : REASONS) {
+            long count = pending[reason.ordinal()].sumThenReset();
+            Sample sample = pendingSamples.getAndSet(reason.ordinal(), null);
+            if (count == 0) {
+                continue;
+            }
+            total += count;
+            if (sample != null) {
+                log.warn("Could not parse {} phone numbers in the last {}: {}, for example {} with default country code {}", count, interval, reason,
+                        mask(sample.getPhoneNumber()), sample.getCountryCode());
+            } else {
+                log.warn("Could not parse {} phone numbers in the last {}: {}", count, interval, reason);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @param phoneNumber phone number
+     * @return the phone number cut to 32 characters, with all digits masked but the last 2
+     */
+    static String mask(String phoneNumber) {
+        int length = Math.min(phoneNumber.length(), MAX_SAMPLE_LENGTH);
+        int kept = 2;
+        char[] masked = new char[length];
+        for (int i = phoneNumber.length() - 1; i >= 0; i--) {
+            char c = phoneNumber.charAt(i);
+            boolean digit = Character.isDigit(c);
+            if (i < length) {
+                masked[i] = digit && kept <= 0 ? 'x' : c;
+            }
+            if (digit) {
+                kept--;
+            }
+        }
+        return phoneNumber.length() > length ? new String(masked) + "..." : new String(masked);
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            summarize();
+        }
+    }
+
+    @Value
+    private static class Sample {
+        String phoneNumber;
+        String countryCode;
+    }
+
+}
@@ -0,0 +1,475 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.NormalizeJob;
+import be.demo.normalizephone.config.NormalizeProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous normalization jobs: the input of a job is saved to disk, the job is queued by priority and normalized
+ * by NormalizePhoneFile, the result is downloaded when it is done. The jobs have their own low priority workers, a
+ * bounded number of threads next to the batch workers, so they don't take the CPU of the interactive requests.
+ * <p>
+ * Each job has a directory with its input, its result, the checkpoint of the result and its state. The jobs are
+ * loaded again at startup: the queued jobs are queued again, a job that was running continues from its checkpoint.
+ * Finished jobs are removed after the retention.
+ */
+@Slf4j
+public class NormalizeJobs implements AutoCloseable {
+
+    public static final String METRIC_PREFIX = "normalize.jobs";
+
+    private static final String STATE_FILE = "job.properties";
+    private static final String INPUT_FILE = "input";
+    private static final String RESULT_FILE = "result";
+    private static final int CHUNK_SIZE = 4096;
+    private static final Duration CHECKPOINT_INTERVAL = Duration.ofSeconds(5);
+    private static final Duration PROGRESS_INTERVAL = Duration.ofSeconds(1);
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Path directory;
+    private final int maxQueued;
+    private final long maxInputSize;
+    private final Duration retention;
+    private final Clock clock;
+
+    private final NormalizePhoneBatch batchService;
+    private final NormalizePhoneFile fileService;
+    private final ThreadPoolExecutor runners;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    // order of the jobs with the same priority
+    private final AtomicLong sequence = new AtomicLong();
+    // submitted jobs whose input is being saved, they count as queued
+    private int uploading;
+    private volatile boolean closing;
+
+    /**
+     * Open the jobs directory, remove the expired jobs and queue the unfinished jobs again
+     *
+     * @param phoneService normalization of one phone number
+     * @param objectMapper mapper of the NDJSON records
+     * @param properties   jobs properties
+     * @param clock        clock of the job times
+     * @throws IOException when the jobs directory can't be read
+     */
+    public NormalizeJobs(NormalizePhone phoneService, ObjectMapper objectMapper, NormalizeProperties.Jobs properties, Clock clock) throws IOException {
+        this.directory = Paths.get(properties.getPath());
+        this.maxQueued = properties.getMaxQueued();
+        this.maxInputSize = properties.getMaxInputSize().toBytes();
+        this.retention = properties.getRetention();
+        this.clock = clock;
+        Files.createDirectories(directory);
+
+        this.batchService = new NormalizePhoneBatch(phoneService, properties.getParallelism(), Integer.MAX_VALUE, "normalize-job-", Thread.MIN_PRIORITY);
+        this.fileService = new NormalizePhoneFile(batchService, new NormalizePhoneStream(batchService, objectMapper), CHUNK_SIZE, CHECKPOINT_INTERVAL);
+        AtomicInteger count = new AtomicInteger();
+        int concurrency = Math.max(1, properties.getConcurrency());
+        // the tasks are executed, not submitted: the queue compares the tasks, not their futures
+        this.runners = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "normalize-job-runner-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        load();
+    }
+
+    /**
+     * Publish the number of queued and running jobs
+     *
+     * @param registry meter registry
+     */
+    public void bindTo(MeterRegistry registry) {
+        for (NormalizeJob.Status status : List.of(NormalizeJob.Status.QUEUED, NormalizeJob.Status.RUNNING)) {
+            Gauge.builder(METRIC_PREFIX, this, jobs -> jobs.count(status))
+                    .description("Number of normalization jobs")
+                    .tag("status", status.name())
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Save the input of a job and queue it
+     *
+     * @param input    records to normalize, one per line
+     * @param format   record format of the input and the result
+     * @param priority queued jobs with a higher priority run first
+     * @return the queued job
+     * @throws IOException        when the input can't be saved
+     * @throws NormalizeException when there are too many queued jobs or the input is too large
+     */
+    public NormalizeJob submit(InputStream input, PhoneRecordFormat format, int priority) throws IOException {
+        removeExpired();
+        // reserve a place in the queue before saving the input, so concurrent submits don't exceed the maximum
+        synchronized (this) {
+            if (count(NormalizeJob.Status.QUEUED) + uploading >= maxQueued) {
+                throw new NormalizeException(NormalizeException.Reason.TOO_MANY_QUEUED, "Too many queued jobs, retry later");
+            }
+            uploading++;
+        }
+
+        try {
+            String id = UUID.randomUUID().toString();
+            Path jobDirectory = directory.resolve(id);
+            Files.createDirectories(jobDirectory);
+            long inputSize;
+            try {
+                inputSize = copy(input, jobDirectory.resolve(INPUT_FILE));
+            } catch (IOException | RuntimeException e) {
+                FileSystemUtils.deleteRecursively(jobDirectory);
+                throw e;
+            }
+
+            Job job = new Job(id, jobDirectory, format, priority, clock.instant(), inputSize);
+            job.save();
+            NormalizeJob queued = job.toJob();
+            jobs.put(id, job);
+            enqueue(job);
+            return queued;
+        } finally {
+            synchronized (this) {
+                uploading--;
+            }
+        }
+    }
+
+    /**
+     * @param id ID of the job
+     * @return the status and the progress of the job
+     */
+    public NormalizeJob get(String id) {
+        return find(id).toJob();
+    }
+
+    /**
+     * @param id ID of the job
+     * @return the result of the job
+     * @throws NormalizeException when the job is unknown or not done
+     */
+    public Path getResult(String id) {
+        Job job = find(id);
+        synchronized (job) {
+            if (job.status != NormalizeJob.Status.DONE) {
+                throw new NormalizeException(NormalizeException.Reason.NOT_FINISHED, "Job " + id + " is " + job.status.name().toLowerCase(Locale.ROOT) + ", it has no result");
+            }
+        }
+        return job.result();
+    }
+
+    /**
+     * @param id ID of the job
+     * @return the record format of the result of the job
+     */
+    public PhoneRecordFormat getFormat(String id) {
+        return find(id).format;
+    }
+
+    /**
+     * Remove a job with its input and its result, a running job is stopped
+     *
+     * @param id ID of the job
+     * @throws IOException when the files of the job can't be removed
+     */
+    public void delete(String id) throws IOException {
+        Job job = find(id);
+        jobs.remove(id);
+        synchronized (job) {
+            job.deleted = true;
+            runners.remove(job);
+            if (job.runner != null) {
+                // the runner removes the files when it stops
+                job.runner.interrupt();
+                return;
+            }
+        }
+        FileSystemUtils.deleteRecursively(job.directory);
+    }
+
+    /**
+     * Stop the jobs, the running jobs continue from their checkpoint after a restart
+     */
+    @Override
+    public void close() {
+        closing = true;
+        runners.shutdownNow();
+        batchService.shutdown();
+        try {
+            runners.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    long count(NormalizeJob.Status status) {
+        return jobs.values().stream().filter(job -> job.status == status).count();
+    }
+
+    private Job find(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            throw new NormalizeException(NormalizeException.Reason.NOT_FOUND, "Unknown job " + id);
+        }
+        return job;
+    }
+
+    private void enqueue(Job job) {
+        job.sequence = sequence.incrementAndGet();
+        runners.execute(job);
+    }
+
+    private long copy(InputStream input, Path file) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long size = 0;
+        try (OutputStream output = Files.newOutputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                size += read;
+                if (size > maxInputSize) {
+                    throw new NormalizeException(NormalizeException.Reason.TOO_LARGE, "The input exceeds the maximum of " + maxInputSize + " bytes");
+                }
+                output.write(buffer, 0, read);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Load the jobs of the directory, in the order they were submitted
+     */
+    private void load() throws IOException {
+        List<Job> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> jobDirectories = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for (Path jobDirectory : jobDirectories) {
+                try {
+                    loaded.add(read(jobDirectory));
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Skipping the job directory {}, its state can't be read", jobDirectory, e);
+                }
+            }
+        }
+        loaded.sort(Comparator.comparing((Job job) -> job.submitted));
+
+        int resumed = 0;
+        for (Job job : loaded) {
+            jobs.put(job.id, job);
+            if (!job.status.isFinished()) {
+                job.status = NormalizeJob.Status.QUEUED;
+                enqueue(job);
+                resumed++;
+            }
+        }
+        removeExpired();
+        log.info("Loaded {} normalization jobs from {}, {} of them are queued again", jobs.size(), directory, resumed);
+    }
+
+    private Job read(Path directory) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(directory.resolve(STATE_FILE), StandardCharsets.ISO_8859_1)) {
+            properties.load(reader);
+        }
+
+        Job job = new Job(properties.getProperty("id"), directory, PhoneRecordFormat.valueOf(properties.getProperty("format")),
+                Integer.parseInt(properties.getProperty("priority")), Instant.parse(properties.getProperty("submitted")),
+                Long.parseLong(properties.getProperty("inputSize")));
+        job.status = NormalizeJob.Status.valueOf(properties.getProperty("status"));
+        job.records = Long.parseLong(properties.getProperty("records"));
+        job.inputOffset = Long.parseLong(properties.getProperty("inputOffset"));
+        job.started = properties.containsKey("started") ? Instant.parse(properties.getProperty("started")) : null;
+        job.finished = properties.containsKey("finished") ? Instant.parse(properties.getProperty("finished")) : null;
+        job.error = properties.getProperty("error");
+        return job;
+    }
+
+    private void removeExpired() {
+        if (retention == null) {
+            return;
+        }
+        Instant expiry = clock.instant().minus(retention);
+        for (Job job : jobs.values()) {
+            if (job.status.isFinished() && job.finished.isBefore(expiry)) {
+                try {
+                    delete(job.id);
+                } catch (IOException e) {
+                    log.warn("Could not remove the expired job {}", job.id, e);
+                }
+            }
+        }
+    }
+
+    private void run(Job job) {
+        synchronized (job) {
+            if (job.deleted) {
+                return;
+            }
+            job.runner = Thread.currentThread();
+            job.status = NormalizeJob.Status.RUNNING;
+            job.started = clock.instant();
+        }
+
+        try {
+            job.save();
+            // continues from the checkpoint of a job that was running before a restart
+            fileService.normalize(job.input(), job.result(), job.format, true, PROGRESS_INTERVAL, job::progress);
+            job.finish(NormalizeJob.Status.DONE, null, clock.instant());
+        } catch (Exception e) {
+            if (!job.deleted && !closing) {
+                log.warn("Normalization job {} failed", job.id, e);
+                job.finish(NormalizeJob.Status.FAILED, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName(), clock.instant());
+            }
+        } finally {
+            // a stopped job was interrupted, the files are written without the interrupt
+            Thread.interrupted();
+            stopped(job);
+        }
+    }
+
+    private void stopped(Job job) {
+        synchronized (job) {
+            job.runner = null;
+        }
+        try {
+            if (job.deleted) {
+                FileSystemUtils.deleteRecursively(job.directory);
+            } else if (!closing) {
+                job.save();
+            }
+        } catch (IOException e) {
+            log.warn("Could not save the state of the job {}", job.id, e);
+        }
+    }
+
+    /**
+     * A job, queued by priority and then in the order it was submitted
+     */
+    private final class Job implements Runnable, Comparable<Job> {
+
+        private final String id;
+        private final Path directory;
+        private final PhoneRecordFormat format;
+        private final int priority;
+        private final Instant submitted;
+        private final long inputSize;
+
+        private long sequence;
+        private volatile NormalizeJob.Status status = NormalizeJob.Status.QUEUED;
+        private Instant started;
+        private Instant finished;
+        private long records;
+        private long inputOffset;
+        private String error;
+        private Thread runner;
+        private volatile boolean deleted;
+
+        private Job(String id, Path directory, PhoneRecordFormat format, int priority, Instant submitted, long inputSize) {
+            this.id = id;
+            this.directory = directory;
+            this.format = format;
+            this.priority = priority;
+            this.submitted = submitted;
+            this.inputSize = inputSize;
+        }
+
+        @Override
+        public void run() {
+            NormalizeJobs.this.run(this);
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            return priority != other.priority ? Integer.compare(other.priority, priority) : Long.compare(sequence, other.sequence);
+        }
+
+        private Path input() {
+            return directory.resolve(INPUT_FILE);
+        }
+
+        private Path result() {
+            return directory.resolve(RESULT_FILE);
+        }
+
+        private synchronized void progress(NormalizePhoneFile.Progress progress) {
+            records = progress.getRecords();
+            inputOffset = progress.getInputOffset();
+        }
+
+        private synchronized void finish(NormalizeJob.Status status, String error, Instant finished) {
+            this.status = status;
+            this.error = error;
+            this.finished = finished;
+            if (status == NormalizeJob.Status.DONE) {
+                inputOffset = inputSize;
+            }
+        }
+
+        private synchronized NormalizeJob toJob() {
+            return new NormalizeJob(id, status, format.name().toLowerCase(Locale.ROOT), priority, submitted, started, finished, records, inputSize,
+                    inputOffset, error);
+        }
+
+        /**
+         * Replace the state file at once, a crash leaves the previous state
+         */
+        private void save() throws IOException {
+            Properties properties = new Properties();
+            synchronized (this) {
+                properties.setProperty("id", id);
+                properties.setProperty("format", format.name());
+                properties.setProperty("priority", Integer.toString(priority));
+                properties.setProperty("submitted", submitted.toString());
+                properties.setProperty("inputSize", Long.toString(inputSize));
+                properties.setProperty("status", status.name());
+                properties.setProperty("records", Long.toString(records));
+                properties.setProperty("inputOffset", Long.toString(inputOffset));
+                if (started != null) {
+                    properties.setProperty("started", started.toString());
+                }
+                if (finished != null) {
+                    properties.setProperty("finished", finished.toString());
+                }
+                if (error != null) {
+                    properties.setProperty("error", error);
+                }
+            }
+
+            Path file = directory.resolve(STATE_FILE);
+            Path temporary = directory.resolve(STATE_FILE + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.ISO_8859_1)) {
+                properties.store(writer, "Normalization job");
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+    }
+
+}
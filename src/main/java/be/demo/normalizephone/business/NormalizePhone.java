@@ -1,370 +1,327 @@
 package be.demo.normalizephone.business;
 
 import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.beans.OutputField;
 import be.demo.normalizephone.beans.OutputPhone;
-import be.demo.normalizephone.beans.Validity;
-import be.demo.normalizephone.beans.Views;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import be.demo.normalizephone.beans.ValidityDetailedFlag;
+import be.demo.normalizephone.beans.ValidityFlag;
 import com.google.i18n.phonenumbers.NumberParseException;
 import com.google.i18n.phonenumbers.PhoneNumberUtil;
 import com.google.i18n.phonenumbers.Phonenumber;
-import lombok.extern.slf4j.Slf4j;
+import lombok.Builder;
+import lombok.Value;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
+import java.util.Set;
 
-import static com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberType.MOBILE;
-
-@Slf4j
 @Service
 public class NormalizePhone {
 
     private static final PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
+    private static final Set<String> supportedRegions = phoneUtil.getSupportedRegions();
+    private static final Set<Integer> supportedCallingCodes = phoneUtil.getSupportedCallingCodes();
+    // libphonenumber refuses a national significant number that is shorter
+    private static final int MIN_NATIONAL_NUMBER_DIGITS = 2;
+    private static final int MAX_CALLING_CODE_DIGITS = 3;
+
+    // The outcomes of the Belgian prefixes are shared by all instances
+    private static final BelgianPhoneNumbers belgianPhoneNumbers = new BelgianPhoneNumbers();
+
+    private final NormalizePhoneCache cache;
+    private final NormalizeResultStore store;
+    private final CountryInference inference;
+    private final NormalizeFailureReporter failures;
+    private final NormalizePhoneMetrics metrics;
+
+    public NormalizePhone() {
+        this(Options.builder().build());
+    }
+
+    @Autowired
+    public NormalizePhone(Options options) {
+        this.cache = options.getCache();
+        this.store = options.getStore();
+        this.inference = options.getInference();
+        this.failures = options.getFailures();
+        this.metrics = options.getMetrics();
+    }
+
+    /**
+     * Optional parts of the normalization, each one is left out when it is not set
+     */
+    @Value
+    @Builder
+    public static class Options {
+
+        NormalizePhoneCache cache;
+        NormalizeResultStore store;
+        CountryInference inference;
+        NormalizeFailureReporter failures;
+        NormalizePhoneMetrics metrics;
+
+    }
 
     /**
-     * Normalize a phone number
+     * Normalize a phone number, only the fields requested by the input phone are computed
      *
-     * @param phone phone number and default country
+     * @param phone phone number, default country and requested fields
      * @return a parsed phone number with some normalizations and information of the phone number
-     * @throws IOException exception
      */
-    public OutputPhone normalize(InputPhone phone) throws IOException {
+    public OutputPhone normalize(InputPhone phone) {
+        return normalize(phone, OutputField.ALL);
+    }
+
+    /**
+     * Normalize a phone number, only the requested fields are computed
+     *
+     * @param phone          phone number, default country and requested fields
+     * @param defaultOutputs requested fields when the input phone doesn't request fields, the validity is always
+     *                       returned
+     * @return a parsed phone number with the requested normalizations and information of the phone number
+     */
+    public OutputPhone normalize(InputPhone phone, Set<OutputField> defaultOutputs) {
+        Set<OutputField> outputs = OutputField.orDefault(phone.getOutputs(), defaultOutputs);
         // use a local variable for the input fields and do a trim on the input
         String phoneNumber = phone.getPhone().trim();
         // use a local variable for the input fields and do a trim on the input + convert to uppercase - expecting a
         // ISO 3166 alpha-2 value in fact
-        String countryCode = phone.getDefaultCountryCode().trim().toUpperCase();
-
-        Phonenumber.PhoneNumber parsedNumber;
-        OutputPhone outputPhone = new OutputPhone();
-
-        // Try to parse the given phone number
-        try {
-            parsedNumber = phoneUtil.parse(phoneNumber, countryCode);
-        } catch (NumberParseException e) {
-            parsedNumber = null;
-
-            log.warn("Could not parse the given number {} with default country code {}", phoneNumber, countryCode);
-        }
-
-        // Give the detailed validity flag
-        String validityDetailedFlag = getValidityDetailedFlag(parsedNumber, phoneNumber);
-        // Give the validity flag based on conditions
-        Short validityFlag = getValidityFlag(validityDetailedFlag);
-        // Set the validity flag + description AND set the validity detailed flag + description
-        outputPhone.setValidity(new Validity(validityFlag, getValidityFlagDescription(validityFlag), validityDetailedFlag, getValidityDetailedFlagDescription(validityDetailedFlag)));
-
-        if (parsedNumber != null) {
-            // Give international prefix
-            int interNationalPrefix = parsedNumber.getCountryCode();
-            outputPhone.setInternationalPrefix(interNationalPrefix);
-
-            // Give national prefix
-            String zonalPrefix = String.valueOf(parsedNumber.getNationalNumber()).substring(0, phoneUtil.getLengthOfNationalDestinationCode(parsedNumber));
-            outputPhone.setZonalPrefix(zonalPrefix);
-
-            // Give phone number without international and national prefix
-            String numberWithoutIntNatPrefix = String.valueOf(parsedNumber.getNationalNumber()).substring(phoneUtil.getLengthOfNationalDestinationCode(parsedNumber));
-            outputPhone.setNumber(numberWithoutIntNatPrefix);
-
-            // Give a dedupkey on phone number
-            outputPhone.setPhoneDedupKey(parsedNumber.getNationalNumber());
-
-            // Phone normalized
-            outputPhone.setPhoneNormalized("0" + zonalPrefix + "/" + numberWithoutIntNatPrefix);
-
-            // Give zoneID - combination of country code and national prefix, f.e. 32479112233 => zoneID : 320479
-            if (!zonalPrefix.isBlank()) {
-                int zoneID = interNationalPrefix * 10000;
-                zoneID = zoneID + Integer.parseInt(zonalPrefix);
-                outputPhone.setZoneId(zoneID);
-            }
+        String countryCode = normalizeCountryCode(phone.getDefaultCountryCode());
 
-            // Give the country code
-            outputPhone.setCountryCode(phoneUtil.getRegionCodeForCountryCode(interNationalPrefix));
-
-            // Is the phone number a mobile number ? Yes => 1 , No => 0, if validity flag 0 or 6
-            if (validityFlag == 0 || validityFlag == 6) {
-                outputPhone.setPhoneType(isMobileNumber(parsedNumber));
-            }
-
-            // International normalized phone number - E.164 - standard
-            outputPhone.setPhoneIntNormalized(phoneUtil.format(parsedNumber, PhoneNumberUtil.PhoneNumberFormat.E164));
-
-            // International normalized phone number - E.123
-            outputPhone.setPhoneIntNormalizedE123(phoneUtil.format(parsedNumber, PhoneNumberUtil.PhoneNumberFormat.INTERNATIONAL));
-
-            // Sopres formatting of telephone number
-            outputPhone.setPhoneIntNormalizedSopres("+" + interNationalPrefix + " (0" + zonalPrefix + ") " + numberWithoutIntNatPrefix);
+        if (cache != null || store != null) {
+            // the cache and the store hold all fields, the phone numbers are immutable and shared
+            OutputPhone outputPhone = cache != null ? cache.get(phoneNumber, countryCode, this::normalizeStored) : normalizeStored(phoneNumber, countryCode);
+            return outputPhone.retain(outputs);
         }
+        return normalize(phoneNumber, countryCode, outputs);
+    }
 
-        boolean showLimited;
-        switch (validityFlag) {
-            case 1:
-            case 2:
-            case 3:
-            case 5:
-            case 8:
-                showLimited = true;
-                break;
-            default:
-                showLimited = false;
+    /**
+     * Normalize all fields of a trimmed phone number, from the result store when it is enabled
+     *
+     * @param phoneNumber trimmed phone number
+     * @param countryCode trimmed and uppercase default country
+     * @return a new normalized phone number
+     */
+    private OutputPhone normalizeStored(String phoneNumber, String countryCode) {
+        if (store != null) {
+            return store.get(phoneNumber, countryCode, (storedPhoneNumber, storedCountryCode) -> normalize(storedPhoneNumber, storedCountryCode, OutputField.ALL));
         }
+        return normalize(phoneNumber, countryCode, OutputField.ALL);
+    }
 
-        if (showLimited) {
-            ObjectMapper mapper = new ObjectMapper();
-            String output = mapper.writeValueAsString(outputPhone);
-
-            return mapper
-                    .readerWithView(Views.Limited.class)
-                    .forType(OutputPhone.class)
-                    .readValue(output);
+    /**
+     * Trim and uppercase the default country, without copying it when it is already trimmed and uppercase
+     *
+     * @param countryCode default country
+     * @return trimmed and uppercase default country
+     */
+    private static String normalizeCountryCode(String countryCode) {
+        for (int i = 0; i < countryCode.length(); i++) {
+            char c = countryCode.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return countryCode.trim().toUpperCase();
+            }
         }
-
-        return outputPhone;
+        return countryCode;
     }
 
     /**
-     * Get validity flag of phone number ( PhoneNumberUtil.ValidationResult + extra checks )
+     * Normalize a trimmed phone number, for the inferred country when the inference is enabled and the phone number is
+     * not valid for its default country
      *
-     * @param validityDetailedFl PhoneNumberUtil.ValidationResult
-     * @return the converted validity DetailedFlag to a reduced validity flag
+     * @param phoneNumber trimmed phone number
+     * @param countryCode trimmed and uppercase default country
+     * @param outputs     requested fields
+     * @return a parsed phone number with some normalizations and information of the phone number
      */
-    private Short getValidityFlag(String validityDetailedFl) {
-        short validityFlag;
-
-        // Convert the validity DetailedFlag to reduced validity flag
-        switch (validityDetailedFl) {
-            case "00":
-                validityFlag = 0;
-                break;
-            case "01":
-            case "05":
-                validityFlag = 1;
-                break;
-            case "02":
-                validityFlag = 5;
-                break;
-            case "04":
-                validityFlag = 8;
-                break;
-            case "07":
-                validityFlag = 2;
-                break;
-            case "08":
-                validityFlag = 4;
-                break;
-            case "09":
-                validityFlag = 6;
-                break;
-            case "10":
-                validityFlag = 3;
-                break;
-            default:
-                validityFlag = 9;
+    private OutputPhone normalize(String phoneNumber, String countryCode, Set<OutputField> outputs) {
+        OutputPhone outputPhone = normalize(phoneNumber, countryCode, outputs, true);
+        if (inference != null && inference.appliesTo(phoneNumber, ValidityDetailedFlag.of(outputPhone.getValidity().getDetailedFlag()))) {
+            // the metrics only record the normalization for the default country
+            return inference.infer(phoneNumber, countryCode, outputPhone, region -> normalize(phoneNumber, region, outputs, false));
         }
-
-        return validityFlag;
+        return outputPhone;
     }
 
     /**
-     * Get validity flag of phone number ( PhoneNumberUtil.ValidationResult + extra checks )
+     * Normalize a trimmed phone number for a country
      *
-     * @param parsedNumber the parsed number by the phone library
-     * @param phoneNumber  input phone number
-     * @return validity flag
+     * @param phoneNumber trimmed phone number
+     * @param countryCode trimmed and uppercase default country
+     * @param outputs     requested fields
+     * @param recorded    false to leave the normalization out of the metrics and the failures, the JFR event marks it
+     *                    as an inference
+     * @return a parsed phone number with some normalizations and information of the phone number
      */
-    private String getValidityDetailedFlag(Phonenumber.PhoneNumber parsedNumber, String phoneNumber) {
-        // set a default validity detailed flag value
-        String validityDetailedFlag = "99";
+    private OutputPhone normalize(String phoneNumber, String countryCode, Set<OutputField> outputs, boolean recorded) {
+        NormalizePhoneMetrics metrics = recorded ? this.metrics : null;
+        NormalizeFailureReporter failures = recorded ? this.failures : null;
+        NormalizeEvent event = NormalizeEvent.start();
+        StageTimings timings = metrics != null || event != null ? StageTimings.start() : StageTimings.DISABLED;
+        PhoneAnalysis analysis = null;
+
+        // Scan the input once: blank input, letters and input with too few digits can't be parsed to a valid phone
+        // number, so they are not parsed
+        int scan = PhoneScan.scan(phoneNumber);
+        timings.end(NormalizeStage.SCAN);
+
+        // Most phone numbers are Belgian, they don't need the generic parse
+        if (!PhoneScan.hasLetters(scan) && !PhoneScan.isUnparseable(scan) && BelgianPhoneNumbers.REGION.equals(countryCode)) {
+            OutputPhone belgianPhone = belgianPhoneNumbers.normalize(phoneNumber, outputs);
+            timings.end(NormalizeStage.BELGIUM);
+            if (belgianPhone != null) {
+                if (metrics != null) {
+                    metrics.record(timings, ValidityDetailedFlag.of(belgianPhone.getValidity().getDetailedFlag()), BelgianPhoneNumbers.REGION);
+                }
+                if (event != null) {
+                    event.commit(timings, countryCode, BelgianPhoneNumbers.REGION, ValidityDetailedFlag.of(belgianPhone.getValidity().getDetailedFlag()),
+                            !recorded);
+                }
+                return belgianPhone;
+            }
+        }
 
-        // execute first checks related to the parsed number - if it was able to parse
-        if (parsedNumber != null) {
-            // Check phone number with Google libphonenumber
-            PhoneNumberUtil.ValidationResult result = phoneUtil.isPossibleNumberWithReason(parsedNumber);
-
-            // Check if phone number is valid
-            boolean isValid = phoneUtil.isValidNumber(parsedNumber);
-
-            switch (result) {
-                case IS_POSSIBLE:
-                case IS_POSSIBLE_LOCAL_ONLY:
-                    // This patch is needed, because the function isPossibleNumberWithReason is not so strict as isValidNumber for length of type phone number
-                    // Extra check, isValid = false and validityDetailedFlag = 0 ( IS_POSSIBLE ) AND length for fix or mobile number is too long => validityDetailedFlag = 01 !
-                    // Extra check, isValid = false and validityDetailedFlag = 0 ( IS_POSSIBLE ) AND length for mobile number is too short => validityDetailedFlag = 05 !
-                    // If not, it would give : isValid = false and validityDetailedFlag = 0 ( IS_POSSIBLE ), not correct ! => validityFlag = 04 ! ( correct length but not valid number )
-                    // Note : when fix number is too short => result = TOO_SHORT !
-                    if (isValid) {
-                        validityDetailedFlag = "00";
-                        break;
-                    } else if (isMobileNumber(parsedNumber) == 0 && parsedNumber.getNationalNumber() > 99999999) {
-                        validityDetailedFlag = "01";
-                        break;
-                    } else if (isMobileNumber(parsedNumber) == 1 && parsedNumber.getNationalNumber() < 100000000) {
-                        validityDetailedFlag = "05";
-                        break;
-                    } else {
-                        validityDetailedFlag = "04";
-                        break;
+        // Try to parse the given phone number, unless the parse would certainly throw: an exception fills in its stack
+        // trace, a flood of bad input would pay for it
+        if (!PhoneScan.hasLetters(scan) && !PhoneScan.isUnparseable(scan)) {
+            NumberParseException.ErrorType failure = prevalidate(phoneNumber, countryCode, scan);
+            if (failure == null) {
+                try {
+                    analysis = new PhoneAnalysis(phoneUtil.parse(phoneNumber, countryCode));
+                } catch (NumberParseException e) {
+                    if (failures != null) {
+                        failures.report(e.getErrorType(), NormalizeFailureReporter.Detection.PARSE, phoneNumber, countryCode);
                     }
-                case TOO_LONG:
-                    validityDetailedFlag = "01";
-                    break;
-                case TOO_SHORT:
-                    validityDetailedFlag = "05";
-                    break;
-                case INVALID_LENGTH:
-                    validityDetailedFlag = "02";
-                    break;
-                case INVALID_COUNTRY_CODE:
-                    validityDetailedFlag = "07"; // "03" "04" "06"
-                    break;
+                }
+            } else if (failures != null) {
+                failures.report(failure, NormalizeFailureReporter.Detection.PREVALIDATION, phoneNumber, countryCode);
             }
+            timings.end(NormalizeStage.PARSE);
         }
 
-        // Extra checks which the google libphonenumber doesn't check !
-        // Check if phone number is empty
-        if (phoneNumber.isBlank()) {
-            validityDetailedFlag = "08";
-        }
+        // Give the detailed validity flag
+        ValidityDetailedFlag validityDetailedFlag = getValidityDetailedFlag(analysis, scan);
+        // Give the validity flag based on conditions
+        ValidityFlag validityFlag = validityDetailedFlag.getValidityFlag();
+        timings.end(NormalizeStage.VALIDATE);
+
+        OutputPhone outputPhone;
+        // Only the fields of the limited view are returned for these validity flags, so don't compute the other
+        // fields. The phone type, the only other field of the limited view, is never set for these flags.
+        if (validityFlag.isLimitedView()) {
+            // Set the validity flag + description AND set the validity detailed flag + description
+            outputPhone = OutputPhone.of(validityDetailedFlag);
+            timings.end(NormalizeStage.VIEW);
+        } else if (analysis == null) {
+            outputPhone = OutputPhone.of(validityDetailedFlag);
+        } else {
+            Phonenumber.PhoneNumber parsedNumber = analysis.getParsedNumber();
 
-        // Check if phone number contains one or more letters
-        if (phoneNumber.chars().anyMatch(Character::isLetter)) {
-            validityDetailedFlag = "10";
-        }
+            // Is the phone number a mobile number ? Yes => 1 , No => 0, if validity flag 0 or 6
+            Short phoneType = null;
+            if (outputs.contains(OutputField.PHONE_TYPE) && (validityFlag == ValidityFlag.PHONE_OK || validityFlag == ValidityFlag.AMBIGUOUS_COUNTRY)) {
+                phoneType = analysis.getMobile();
+            }
+            timings.end(NormalizeStage.TYPE);
+
+            // The national destination code is only computed for the fields that need it, the zonal prefix is the
+            // start of the national number and the number without international and national prefix the rest
+            int nationalDestinationCodeLength = 0;
+            if (outputs.contains(OutputField.ZONAL_PREFIX) || outputs.contains(OutputField.NUMBER) || outputs.contains(OutputField.PHONE_NORMALIZED)
+                    || outputs.contains(OutputField.ZONE_ID) || outputs.contains(OutputField.PHONE_INT_NORMALIZED_SOPRES)) {
+                nationalDestinationCodeLength = analysis.getNationalDestinationCodeLength();
+            }
 
-        return validityDetailedFlag;
-    }
+            // International normalized phone number - E.123 - the other formats are derived from the parts
+            String phoneIntNormalizedE123 = outputs.contains(OutputField.PHONE_INT_NORMALIZED_E123)
+                    ? phoneUtil.format(parsedNumber, PhoneNumberUtil.PhoneNumberFormat.INTERNATIONAL)
+                    : null;
+            int leadingZeros = parsedNumber.isItalianLeadingZero() ? parsedNumber.getNumberOfLeadingZeros() : 0;
+
+            // Give the country code, the international prefix, a dedupkey on phone number and the formats
+            String regionCode = outputs.contains(OutputField.COUNTRY_CODE) ? analysis.getRegionCode() : null;
+            outputPhone = OutputPhone.of(validityDetailedFlag, outputs, regionCode, phoneType, parsedNumber.getCountryCode(),
+                    parsedNumber.getNationalNumber(), leadingZeros, nationalDestinationCodeLength, phoneIntNormalizedE123);
+            timings.end(NormalizeStage.FORMAT);
+        }
 
-    /**
-     * Check if phone number is a mobile number
-     *
-     * @param parsedNumber the parsed number by the phone library
-     * @return true if the phone number is a mobile number else false
-     */
-    private Short isMobileNumber(Phonenumber.PhoneNumber parsedNumber) {
-        PhoneNumberUtil.PhoneNumberType phoneType;
-        // Try to get phone type for the given phone number
-        try {
-            phoneType = phoneUtil.getNumberType(parsedNumber);
-        } catch (NullPointerException e) {
-            return null;
+        if (metrics != null) {
+            metrics.record(timings, validityDetailedFlag, analysis != null ? analysis.getRegionCode() : null);
         }
-        String countryCode = phoneUtil.getRegionCodeForCountryCode(parsedNumber.getCountryCode());
-        String zone = Long.toString(parsedNumber.getNationalNumber()).substring(0, 3);
-
-        if (phoneType == MOBILE) {
-            return 1;
-        } else if ("BE".equals(countryCode) && isBetweenBelgiumMobileZones(zone)) {
-            // Google libphonenumber doesn't recognize if mobile number when too short/long
-            // so methode isBetweenMobileZones verifies Belgium ranges for mobiles
-            return 1;
-        } else {
-            return 0;
+        if (event != null) {
+            event.commit(timings, countryCode, analysis != null ? analysis.getRegionCode() : null, validityDetailedFlag, !recorded);
         }
+        return outputPhone;
     }
 
     /**
-     * Check if the parsed number is in the belgium mobile zone
-     * By taking the first 3 digits of the national number
+     * Detect the common inputs for which the parse throws, without parsing them: a phone number without a supported
+     * default country and without a known country calling code, and an international phone number with too few
+     * digits
      *
-     * @param zone the phone zone (3 digits)
-     * @return true if the phone number is in the belgium mobile zone else false
+     * @param phoneNumber trimmed phone number
+     * @param countryCode trimmed and uppercase default country
+     * @param scan        the scan of the phone number
+     * @return the error type the parse would throw, null when the phone number must be parsed
      */
-    private boolean isBetweenBelgiumMobileZones(String zone) {
-        int minValueInclusive = 456;
-        int maxValueInclusive = 499;
-        int str2int = Integer.parseInt("0" + zone);
+    private static NumberParseException.ErrorType prevalidate(String phoneNumber, String countryCode, int scan) {
+        boolean supportedRegion = supportedRegions.contains(countryCode);
+        if (!PhoneScan.startsWithPlus(scan)) {
+            return supportedRegion ? null : NumberParseException.ErrorType.INVALID_COUNTRY_CODE;
+        }
 
-        return (str2int >= minValueInclusive && str2int <= maxValueInclusive);
+        // libphonenumber reads the country calling code from the first 3 digits after the plus
+        int digits = PhoneScan.getDigits(scan);
+        if (digits <= MIN_NATIONAL_NUMBER_DIGITS) {
+            return NumberParseException.ErrorType.TOO_SHORT_AFTER_IDD;
+        }
+        int callingCode = 0;
+        for (int i = 0, callingCodeDigits = 0; i < phoneNumber.length() && callingCodeDigits < MAX_CALLING_CODE_DIGITS; i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (callingCodeDigits == 0 && c == '0') {
+                    // no country calling code starts with 0
+                    break;
+                }
+                callingCode = callingCode * 10 + c - '0';
+                callingCodeDigits++;
+                if (supportedCallingCodes.contains(callingCode)) {
+                    return digits - callingCodeDigits < MIN_NATIONAL_NUMBER_DIGITS ? NumberParseException.ErrorType.TOO_SHORT_NSN : null;
+                }
+            } else if (Character.isDigit(c) || Character.isSurrogate(c)) {
+                // an other digit, left to the parse
+                return null;
+            }
+        }
+        // without a known country calling code, libphonenumber tries again without the plus, for the international
+        // call prefix of the default country (+00 32 ...)
+        return supportedRegion ? null : NumberParseException.ErrorType.INVALID_COUNTRY_CODE;
     }
 
     /**
-     * Get description for the field validityFlag
+     * Get validity flag of phone number ( PhoneNumberUtil.ValidationResult + extra checks )
      *
-     * @param validityFl validity flag (short version)
-     * @return the description for the validity flag
+     * @param analysis the analysis of the number parsed by the phone library
+     * @param scan     the scan of the input phone number
+     * @return validity flag
      */
-    private String getValidityFlagDescription(Short validityFl) {
-        String validityFlagDescription;
-
-        switch (validityFl) {
-            case 0:
-                validityFlagDescription = "phone number OK";
-                break;
-            case 1:
-                validityFlagDescription = "invalid length for National def";
-                break;
-            case 2:
-                validityFlagDescription = "invalid prefix";
-                break;
-            case 3:
-                validityFlagDescription = "invalid character (contains letters)";
-                break;
-            case 4:
-                validityFlagDescription = "Blank Phone";
-                break;
-            case 5:
-                validityFlagDescription = "invalid length for Zonal def";
-                break;
-            case 6:
-                validityFlagDescription = "ambiguous country detection";
-                break;
-            case 7:
-                validityFlagDescription = "set to blank because specified dedup format too short";
-                break;
-            case 8:
-                validityFlagDescription = "invalid number for Zonal def";
-                break;
-            default:
-                validityFlagDescription = "Unknown validity flag";
-        }
+    private ValidityDetailedFlag getValidityDetailedFlag(PhoneAnalysis analysis, int scan) {
+        // execute first checks related to the parsed number - if it was able to parse
+        ValidityDetailedFlag validityDetailedFlag = analysis != null ? analysis.getValidityDetailedFlag() : ValidityDetailedFlag.UNKNOWN;
 
-        return validityFlagDescription;
-    }
+        // Extra checks which the google libphonenumber doesn't check !
+        // Check if phone number is empty
+        if (PhoneScan.isBlank(scan)) {
+            validityDetailedFlag = ValidityDetailedFlag.BLANK_PHONE;
+        }
 
-    /**
-     * Get description for the field validityDetailedFlag
-     *
-     * @param validityDetailedFl validity flag (detailed version)
-     * @return the description for the validity flag
-     */
-    private String getValidityDetailedFlagDescription(String validityDetailedFl) {
-        String validityDetailedFlagDescription;
-
-        switch (validityDetailedFl) {
-            case "00":
-                validityDetailedFlagDescription = "PHONE_OK";
-                break;
-            case "01":
-                validityDetailedFlagDescription = "ERROR_OUTPUT_TOO_LONG";
-                break;
-            case "02":
-                validityDetailedFlagDescription = "ERROR_INVALID_LENGTH_NAT";
-                break;
-            case "04":
-                validityDetailedFlagDescription = "ERROR_NOT_LOCAL_IN_ASKED_COUNTRY";
-                break;
-            case "05":
-                validityDetailedFlagDescription = "ERROR_TOO_SHORT_FOR_CC_COUNTRY";
-                break;
-            case "07":
-                validityDetailedFlagDescription = "ERROR_UNKNOWN_INT_PREFIX";
-                break;
-            case "08":
-                validityDetailedFlagDescription = "ERROR_BLANK_PHONE";
-                break;
-            case "09":
-                validityDetailedFlagDescription = "ERROR_COUNTRY_CC_NOT_FOUND";
-                break;
-            case "10":
-                validityDetailedFlagDescription = "ERROR_INVALID_CHARACTERS";
-                break;
-            default:
-                validityDetailedFlagDescription = "Unknown validity flag";
+        // Check if phone number contains one or more letters
+        if (PhoneScan.hasLetters(scan)) {
+            validityDetailedFlag = ValidityDetailedFlag.INVALID_CHARACTERS;
         }
 
-        return validityDetailedFlagDescription;
+        return validityDetailedFlag;
     }
 
 }
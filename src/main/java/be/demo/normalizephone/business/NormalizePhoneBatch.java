@@ -0,0 +1,168 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.beans.OutputField;
+import be.demo.normalizephone.beans.Phone;
+import be.demo.normalizephone.config.NormalizeProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Slf4j
+@Service
+public class NormalizePhoneBatch {
+
+    // Split a batch in a few chunks per worker, so one slow chunk doesn't keep the other workers idle
+    private static final int CHUNKS_PER_WORKER = 4;
+    private static final int MIN_CHUNK_SIZE = 64;
+
+    private final NormalizePhone phoneService;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int maxSize;
+
+    @Autowired
+    public NormalizePhoneBatch(NormalizePhone phoneService, NormalizeProperties properties) {
+        this(phoneService, properties.getBatch().getParallelism(), properties.getBatch().getMaxSize(), "normalize-batch-", Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * @param phoneService   normalization of one phone number
+     * @param parallelism    number of workers
+     * @param maxSize        maximum number of phone numbers in one batch
+     * @param threadName     prefix of the names of the workers
+     * @param threadPriority priority of the workers
+     */
+    NormalizePhoneBatch(NormalizePhone phoneService, int parallelism, int maxSize, String threadName, int threadPriority) {
+        this.phoneService = phoneService;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxSize = maxSize;
+        this.executor = Executors.newFixedThreadPool(this.parallelism, new BatchThreadFactory(threadName, threadPriority));
+    }
+
+    /**
+     * Normalize a batch of phone numbers in parallel on the dedicated batch workers
+     *
+     * @param inputPhones phone numbers and default countries
+     * @return the normalized phone numbers, in the same order as the input. A phone number that could not be
+     * normalized gets an error instead of an output, without failing the other phone numbers
+     */
+    public List<Phone> normalize(List<InputPhone> inputPhones) {
+        return normalize(inputPhones, OutputField.ALL);
+    }
+
+    /**
+     * Normalize a batch of phone numbers in parallel on the dedicated batch workers
+     *
+     * @param inputPhones    phone numbers and default countries
+     * @param defaultOutputs requested fields for the phone numbers that don't request fields
+     * @return the normalized phone numbers, in the same order as the input. A phone number that could not be
+     * normalized gets an error instead of an output, without failing the other phone numbers
+     * @throws NormalizeException when the batch exceeds the maximum size or the normalization is interrupted
+     */
+    public List<Phone> normalize(List<InputPhone> inputPhones, Set<OutputField> defaultOutputs) {
+        if (inputPhones.size() > maxSize) {
+            throw new NormalizeException(NormalizeException.Reason.TOO_LARGE, "Batch size " + inputPhones.size() + " exceeds the maximum of " + maxSize);
+        }
+
+        Phone[] results = new Phone[inputPhones.size()];
+        int chunks = parallelism * CHUNKS_PER_WORKER;
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (inputPhones.size() + chunks - 1) / chunks);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int start = 0; start < inputPhones.size(); start += chunkSize) {
+            int from = start;
+            int to = Math.min(start + chunkSize, inputPhones.size());
+            futures.add(executor.submit(() -> normalizeChunk(inputPhones, defaultOutputs, results, from, to)));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new NormalizeException(NormalizeException.Reason.INTERRUPTED, "Batch normalization was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch normalization failed", e.getCause());
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Normalize one phone number, turning a failure into an error on the result
+     *
+     * @param inputPhone     phone number and default country
+     * @param defaultOutputs requested fields when the phone number doesn't request fields
+     * @return the normalized phone number, or the input phone number with an error
+     */
+    Phone normalizeOne(InputPhone inputPhone, Set<OutputField> defaultOutputs) {
+        try {
+            return new Phone(inputPhone, phoneService.normalize(inputPhone, defaultOutputs));
+        } catch (Exception e) {
+            log.debug("Could not normalize a phone number of the batch", e);
+
+            return new Phone(inputPhone, null, e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Run a task on the batch workers
+     *
+     * @param task the task
+     * @return the future result of the task
+     */
+    <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    private void normalizeChunk(List<InputPhone> inputPhones, Set<OutputField> defaultOutputs, Phone[] results, int from, int to) {
+        for (int i = from; i < to; i++) {
+            results[i] = normalizeOne(inputPhones.get(i), defaultOutputs);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class BatchThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+        private final String name;
+        private final int priority;
+
+        private BatchThreadFactory(String name, int priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, name + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        }
+    }
+
+}
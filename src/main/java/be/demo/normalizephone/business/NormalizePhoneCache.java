@@ -0,0 +1,64 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.OutputPhone;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.function.BiFunction;
+
+/**
+ * Bounded cache of normalized phone numbers, keyed on the trimmed phone number and the trimmed, uppercase default
+ * country. The normalized phone numbers are immutable, so the cached instances are handed out.
+ */
+public class NormalizePhoneCache {
+
+    public static final String CACHE_NAME = "normalize.phone";
+
+    private final Cache<Key, OutputPhone> cache;
+
+    /**
+     * @param maxSize maximum number of cached phone numbers
+     * @param ttl     time to live of a cached phone number, null to keep it until it is evicted
+     */
+    public NormalizePhoneCache(long maxSize, Duration ttl) {
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats();
+        if (ttl != null) {
+            builder.expireAfterWrite(ttl);
+        }
+        this.cache = builder.build();
+    }
+
+    /**
+     * Publish the hit, miss and eviction counters of the cache
+     *
+     * @param registry meter registry
+     */
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Get a normalized phone number from the cache, normalize it when it is not cached yet
+     *
+     * @param phoneNumber trimmed phone number
+     * @param countryCode trimmed and uppercase default country
+     * @param normalizer  normalization of a phone number that is not cached yet
+     * @return the cached normalized phone number
+     */
+    OutputPhone get(String phoneNumber, String countryCode, BiFunction<String, String, OutputPhone> normalizer) {
+        return cache.get(new Key(phoneNumber, countryCode), key -> normalizer.apply(key.getPhoneNumber(), key.getCountryCode()));
+    }
+
+    @Value
+    private static class Key {
+        String phoneNumber;
+        String countryCode;
+    }
+
+}
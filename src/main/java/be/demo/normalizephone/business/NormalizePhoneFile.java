@@ -0,0 +1,389 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.OutputField;
+import be.demo.normalizephone.beans.ResponseMode;
+import lombok.Value;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Offline normalization of a file of records, one record per line as in the streaming normalization, without HTTP.
+ * The input is read in blocks, cut in chunks of records that are normalized on the batch workers, and the chunks are
+ * written in the same order as the input. Only a bounded number of chunks is in flight: the reader waits for the
+ * writer, so the memory doesn't depend on the size of the file.
+ * <p>
+ * A checkpoint next to the output holds the input offset, the output length and the number of records after the last
+ * written chunks. A resumed run truncates the output to the checkpoint and continues the input from its offset. The
+ * checkpoint is removed when the whole input is normalized.
+ */
+public class NormalizePhoneFile {
+
+    public static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+    // Input read at once, a longer line grows the block
+    private static final int BLOCK_SIZE = 1 << 20;
+    // Number of chunks in flight per worker, before the reader waits for the writer
+    private static final int CHUNKS_PER_WORKER = 2;
+
+    private final NormalizePhoneBatch batchService;
+    private final NormalizePhoneStream streamService;
+    private final int chunkSize;
+    private final Duration checkpointInterval;
+
+    /**
+     * @param batchService       workers of the normalization
+     * @param streamService      normalization of a chunk of records
+     * @param chunkSize          number of records normalized together by one worker
+     * @param checkpointInterval interval of the checkpoints, a checkpoint flushes the output to the disk
+     */
+    public NormalizePhoneFile(NormalizePhoneBatch batchService, NormalizePhoneStream streamService, int chunkSize, Duration checkpointInterval) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size " + chunkSize);
+        }
+        this.batchService = batchService;
+        this.streamService = streamService;
+        this.chunkSize = chunkSize;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Progress of the normalization of a file, the records and offsets include those of the resumed runs
+     */
+    @Value
+    public static class Progress {
+        long records;
+        long inputOffset;
+        long inputSize;
+        // records and input offset at the start of this run
+        long resumedRecords;
+        long resumedOffset;
+        // duration of this run
+        long elapsedNanos;
+
+        public double getPercent() {
+            return inputSize > 0 ? 100.0 * inputOffset / inputSize : 100;
+        }
+
+        public double getRecordsPerSecond() {
+            return elapsedNanos > 0 ? (records - resumedRecords) * 1e9 / elapsedNanos : 0;
+        }
+
+        public double getBytesPerSecond() {
+            return elapsedNanos > 0 ? (inputOffset - resumedOffset) * 1e9 / elapsedNanos : 0;
+        }
+    }
+
+    /**
+     * Normalize a file of records
+     *
+     * @param input            records to normalize
+     * @param output           normalized records, in the order of the input
+     * @param format           record format of the input and the output
+     * @param resume           true to continue from the checkpoint of the output, when there is one
+     * @param progressInterval interval of the progress reports
+     * @param progress         receives the progress reports, and the final report
+     * @return the final progress report
+     * @throws IOException when reading the input or writing the output fails
+     */
+    public Progress normalize(Path input, Path output, PhoneRecordFormat format, boolean resume, Duration progressInterval,
+                              Consumer<Progress> progress) throws IOException {
+        Path checkpointFile = output.resolveSibling(output.getFileName() + CHECKPOINT_SUFFIX);
+        long inputSize = Files.size(input);
+        long inputModified = Files.getLastModifiedTime(input).toMillis();
+        Checkpoint checkpoint = resume && Files.exists(checkpointFile) ? Checkpoint.read(checkpointFile) : null;
+        if (checkpoint != null && (checkpoint.inputSize != inputSize || checkpoint.inputModified != inputModified)) {
+            throw new IllegalStateException("The checkpoint " + checkpointFile + " belongs to an other version of the input " + input);
+        }
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = checkpoint != null
+                     ? FileChannel.open(output, StandardOpenOption.WRITE)
+                     : FileChannel.open(output, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Run run;
+            if (checkpoint != null) {
+                // the chunks written after the checkpoint are normalized again
+                out.truncate(checkpoint.outputOffset);
+                out.position(checkpoint.outputOffset);
+                run = new Run(out, checkpointFile, checkpoint, checkpointInterval, progressInterval, progress);
+            } else {
+                Files.deleteIfExists(checkpointFile);
+                if (format == PhoneRecordFormat.CSV) {
+                    out.write(ByteBuffer.wrap((NormalizePhoneStream.CSV_HEADER + '\n').getBytes(StandardCharsets.UTF_8)));
+                }
+                run = new Run(out, checkpointFile, new Checkpoint(inputSize, inputModified, 0, out.position(), 0), checkpointInterval,
+                        progressInterval, progress);
+            }
+
+            normalize(new LineReader(in, run.checkpoint.inputOffset), format, run);
+            out.force(false);
+            Files.deleteIfExists(checkpointFile);
+            Progress done = run.progress();
+            progress.accept(done);
+            return done;
+        }
+    }
+
+    private void normalize(LineReader reader, PhoneRecordFormat format, Run run) throws IOException {
+        int window = batchService.getParallelism() * CHUNKS_PER_WORKER;
+        Deque<Chunk> inFlight = new ArrayDeque<>(window + 1);
+        // a CSV input may start with a header line
+        boolean firstLine = reader.getOffset() == 0;
+
+        try {
+            List<String> lines = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                boolean header = firstLine && NormalizePhoneStream.isHeader(line, format);
+                firstLine = false;
+                if (header) {
+                    continue;
+                }
+
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    inFlight.add(submitChunk(lines, format, reader.getOffset()));
+                    lines = new ArrayList<>(chunkSize);
+
+                    if (inFlight.size() >= window) {
+                        run.write(inFlight.poll());
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                inFlight.add(submitChunk(lines, format, reader.getOffset()));
+            }
+            while (!inFlight.isEmpty()) {
+                run.write(inFlight.poll());
+            }
+        } finally {
+            // the input or the output failed, don't normalize records that will never be written
+            inFlight.forEach(chunk -> chunk.future.cancel(true));
+        }
+    }
+
+    private Chunk submitChunk(List<String> lines, PhoneRecordFormat format, long endOffset) {
+        Future<byte[]> future = batchService.submit(() -> streamService.normalizeChunk(lines, format, OutputField.ALL, ResponseMode.FULL).getBytes(StandardCharsets.UTF_8));
+        return new Chunk(future, lines.size(), endOffset);
+    }
+
+    /**
+     * Normalized records of a chunk, with the input offset after its last record
+     */
+    private static final class Chunk {
+
+        private final Future<byte[]> future;
+        private final int records;
+        private final long endOffset;
+
+        private Chunk(Future<byte[]> future, int records, long endOffset) {
+            this.future = future;
+            this.records = records;
+            this.endOffset = endOffset;
+        }
+
+    }
+
+    /**
+     * The writer of a run: the output, the checkpoints and the progress reports
+     */
+    private static final class Run {
+
+        private final FileChannel out;
+        private final Path checkpointFile;
+        private final Checkpoint resumed;
+        private final long checkpointInterval;
+        private final long progressInterval;
+        private final Consumer<Progress> progress;
+        private final long start = System.nanoTime();
+
+        private Checkpoint checkpoint;
+        private long lastCheckpoint = start;
+        private long lastProgress = start;
+
+        private Run(FileChannel out, Path checkpointFile, Checkpoint checkpoint, Duration checkpointInterval, Duration progressInterval,
+                    Consumer<Progress> progress) {
+            this.out = out;
+            this.checkpointFile = checkpointFile;
+            this.resumed = checkpoint;
+            this.checkpoint = checkpoint;
+            this.checkpointInterval = checkpointInterval.toNanos();
+            this.progressInterval = progressInterval.toNanos();
+            this.progress = progress;
+        }
+
+        private void write(Chunk chunk) throws IOException {
+            byte[] normalized;
+            try {
+                normalized = chunk.future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("File normalization was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("File normalization failed", e.getCause());
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(normalized);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            checkpoint = new Checkpoint(checkpoint.inputSize, checkpoint.inputModified, chunk.endOffset, checkpoint.outputOffset + normalized.length,
+                    checkpoint.records + chunk.records);
+
+            long now = System.nanoTime();
+            if (now - lastCheckpoint >= checkpointInterval) {
+                // the output must be on disk before the checkpoint says so
+                out.force(false);
+                checkpoint.write(checkpointFile);
+                lastCheckpoint = now;
+            }
+            if (now - lastProgress >= progressInterval) {
+                progress.accept(progress());
+                lastProgress = now;
+            }
+        }
+
+        private Progress progress() {
+            return new Progress(checkpoint.records, checkpoint.inputOffset, checkpoint.inputSize, resumed.records, resumed.inputOffset,
+                    System.nanoTime() - start);
+        }
+
+    }
+
+    /**
+     * Position of a run in the input and the output, identifying the input by its size and its modification time
+     */
+    private static final class Checkpoint {
+
+        private final long inputSize;
+        private final long inputModified;
+        private final long inputOffset;
+        private final long outputOffset;
+        private final long records;
+
+        private Checkpoint(long inputSize, long inputModified, long inputOffset, long outputOffset, long records) {
+            this.inputSize = inputSize;
+            this.inputModified = inputModified;
+            this.inputOffset = inputOffset;
+            this.outputOffset = outputOffset;
+            this.records = records;
+        }
+
+        private static Checkpoint read(Path file) throws IOException {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+                properties.load(reader);
+            }
+            return new Checkpoint(Long.parseLong(properties.getProperty("inputSize")), Long.parseLong(properties.getProperty("inputModified")),
+                    Long.parseLong(properties.getProperty("inputOffset")), Long.parseLong(properties.getProperty("outputOffset")),
+                    Long.parseLong(properties.getProperty("records")));
+        }
+
+        /**
+         * Replace the checkpoint file at once, a crash leaves the previous checkpoint
+         */
+        private void write(Path file) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("inputSize", Long.toString(inputSize));
+            properties.setProperty("inputModified", Long.toString(inputModified));
+            properties.setProperty("inputOffset", Long.toString(inputOffset));
+            properties.setProperty("outputOffset", Long.toString(outputOffset));
+            properties.setProperty("records", Long.toString(records));
+
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.ISO_8859_1)) {
+                properties.store(writer, "Normalization checkpoint");
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+    }
+
+    /**
+     * UTF-8 lines of a file channel, read per block, with the offset of the next line. A line ends with \n or \r\n,
+     * which is not part of the line.
+     */
+    private static final class LineReader {
+
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        private long offset;
+        private boolean endOfInput;
+
+        private LineReader(FileChannel channel, long offset) throws IOException {
+            this.channel = channel;
+            this.offset = offset;
+            channel.position(offset);
+            // nothing read yet
+            buffer.flip();
+        }
+
+        private long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return the next line, null at the end of the input
+         */
+        private String readLine() throws IOException {
+            while (true) {
+                int start = buffer.position();
+                for (int i = start; i < buffer.limit(); i++) {
+                    if (buffer.get(i) == '\n') {
+                        return line(start, i, i + 1);
+                    }
+                }
+                if (endOfInput) {
+                    // the last line doesn't have to end with a line end
+                    return start < buffer.limit() ? line(start, buffer.limit(), buffer.limit()) : null;
+                }
+
+                if (start == 0 && buffer.limit() == buffer.capacity()) {
+                    // a line longer than the block
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    larger.put(buffer);
+                    buffer = larger;
+                } else {
+                    buffer.compact();
+                }
+                if (channel.read(buffer) < 0) {
+                    endOfInput = true;
+                }
+                buffer.flip();
+            }
+        }
+
+        private String line(int start, int end, int next) {
+            int length = end - start;
+            if (length > 0 && buffer.get(end - 1) == '\r') {
+                length--;
+            }
+            String line = new String(buffer.array(), start, length, StandardCharsets.UTF_8);
+            buffer.position(next);
+            offset += next - start;
+            return line;
+        }
+
+    }
+
+}
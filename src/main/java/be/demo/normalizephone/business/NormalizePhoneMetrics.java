@@ -0,0 +1,84 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.ValidityDetailedFlag;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency per stage of the normalization, and the number of normalized phone numbers per validity detailed flag and
+ * country. Only the configured countries get their own tag value, all other countries are counted as OTHER, so the
+ * number of time series stays bounded.
+ */
+public class NormalizePhoneMetrics {
+
+    public static final String STAGE_TIMER = "normalize.phone.stage";
+    public static final String RESULT_COUNTER = "normalize.phone.results";
+
+    static final String OTHER_COUNTRY = "OTHER";
+    // phone number that could not be parsed, no country
+    static final String NO_COUNTRY = "NONE";
+
+    private final Timer[] stageTimers;
+    private final Map<String, Integer> countryIndexes = new HashMap<>();
+    // counters indexed by validity detailed flag and country index
+    private final Counter[][] resultCounters;
+
+    /**
+     * @param registry  meter registry
+     * @param countries countries that get their own tag value
+     */
+    public NormalizePhoneMetrics(MeterRegistry registry, List<String> countries) {
+        NormalizeStage[] stages = StageTimings.stages();
+        stageTimers = new Timer[stages.length];
+        for (NormalizeStage stage : stages) {
+            stageTimers[stage.ordinal()] = Timer.builder(STAGE_TIMER)
+                    .description("Duration of a stage of the normalization of a phone number")
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram()
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(registry);
+        }
+
+        countries.forEach(country -> countryIndexes.putIfAbsent(country.trim().toUpperCase(Locale.ROOT), countryIndexes.size()));
+        int otherIndex = countryIndexes.size();
+        countryIndexes.put(OTHER_COUNTRY, otherIndex);
+        countryIndexes.put(NO_COUNTRY, otherIndex + 1);
+
+        ValidityDetailedFlag[] detailedFlags = ValidityDetailedFlag.values();
+        resultCounters = new Counter[detailedFlags.length][countryIndexes.size()];
+        for (ValidityDetailedFlag detailedFlag : detailedFlags) {
+            countryIndexes.forEach((country, index) -> resultCounters[detailedFlag.ordinal()][index] = Counter.builder(RESULT_COUNTER)
+                    .description("Number of normalized phone numbers")
+                    .tag("detailedFlag", detailedFlag.getCode())
+                    .tag("countryCode", country)
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Record the stage durations and the outcome of one normalization
+     *
+     * @param timings      durations of the stages
+     * @param detailedFlag validity detailed flag of the phone number
+     * @param countryCode  country of the phone number, null when it could not be parsed
+     */
+    void record(StageTimings timings, ValidityDetailedFlag detailedFlag, String countryCode) {
+        for (NormalizeStage stage : StageTimings.stages()) {
+            long duration = timings.getDuration(stage);
+            if (duration > 0) {
+                stageTimers[stage.ordinal()].record(duration, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        Integer countryIndex = countryIndexes.get(countryCode != null ? countryCode : NO_COUNTRY);
+        resultCounters[detailedFlag.ordinal()][countryIndex != null ? countryIndex : countryIndexes.get(OTHER_COUNTRY)].increment();
+    }
+
+}
@@ -0,0 +1,284 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.beans.OutputField;
+import be.demo.normalizephone.beans.OutputPhone;
+import be.demo.normalizephone.beans.Phone;
+import be.demo.normalizephone.beans.ResponseMode;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+@Service
+public class NormalizePhoneStream {
+
+    // Number of records normalized together by one worker
+    private static final int CHUNK_SIZE = 256;
+    // Number of chunks in flight per worker, before the reader waits for the writer
+    private static final int CHUNKS_PER_WORKER = 2;
+
+    static final String CSV_HEADER = "phone,defaultCountryCode,internationalPrefix,zonalPrefix,number,phoneDedupKey,phoneNormalized,countryCode,phoneType,phoneIntNormalized,phoneIntNormalizedE123,phoneIntNormalizedSopres,validityFlag,validityDetailedFlag,error";
+
+    private final NormalizePhoneBatch batchService;
+    private final ObjectReader inputReader;
+    private final ObjectWriter phoneWriter;
+
+    @Autowired
+    public NormalizePhoneStream(NormalizePhoneBatch batchService, ObjectMapper objectMapper) {
+        this.batchService = batchService;
+        this.inputReader = objectMapper.readerFor(InputPhone.class);
+        this.phoneWriter = objectMapper.writerFor(Phone.class);
+    }
+
+    /**
+     * Normalize a stream of phone numbers, one record per line. Records are read, normalized on the batch workers and
+     * written in the same order as they were read. Only a bounded number of records is held in memory: the reader
+     * waits for the writer when too many records are in flight.
+     *
+     * @param input  records to normalize
+     * @param output normalized records
+     * @param format record format of the input and the output
+     * @return the number of normalized records
+     * @throws IOException when reading the input or writing the output fails
+     */
+    public long normalize(Reader input, Writer output, PhoneRecordFormat format) throws IOException {
+        return normalize(input, output, format, OutputField.ALL);
+    }
+
+    /**
+     * Normalize a stream of phone numbers, one record per line. Records are read, normalized on the batch workers and
+     * written in the same order as they were read. Only a bounded number of records is held in memory: the reader
+     * waits for the writer when too many records are in flight.
+     *
+     * @param input          records to normalize
+     * @param output         normalized records
+     * @param format         record format of the input and the output
+     * @param defaultOutputs requested fields for the records that don't request fields
+     * @return the number of normalized records
+     * @throws IOException when reading the input or writing the output fails
+     */
+    public long normalize(Reader input, Writer output, PhoneRecordFormat format, Set<OutputField> defaultOutputs) throws IOException {
+        return normalize(input, output, format, defaultOutputs, ResponseMode.FULL);
+    }
+
+    /**
+     * Normalize a stream of phone numbers, one record per line. Records are read, normalized on the batch workers and
+     * written in the same order as they were read. Only a bounded number of records is held in memory: the reader
+     * waits for the writer when too many records are in flight.
+     *
+     * @param input          records to normalize
+     * @param output         normalized records
+     * @param format         record format of the input and the output
+     * @param defaultOutputs requested fields for the records that don't request fields
+     * @param responseMode   envelope of the NDJSON records, a CSV record always has the input columns
+     * @return the number of normalized records
+     * @throws IOException when reading the input or writing the output fails
+     */
+    public long normalize(Reader input, Writer output, PhoneRecordFormat format, Set<OutputField> defaultOutputs, ResponseMode responseMode)
+            throws IOException {
+        BufferedReader reader = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        int window = batchService.getParallelism() * CHUNKS_PER_WORKER;
+        Deque<Future<String>> inFlight = new ArrayDeque<>(window + 1);
+        long count = 0;
+
+        if (format == PhoneRecordFormat.CSV) {
+            output.write(CSV_HEADER);
+            output.write('\n');
+        }
+
+        try {
+            List<String> lines = new ArrayList<>(CHUNK_SIZE);
+            boolean firstLine = true;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                // a CSV input may start with a header line
+                boolean header = firstLine && isHeader(line, format);
+                firstLine = false;
+                if (header) {
+                    continue;
+                }
+
+                lines.add(line);
+                count++;
+                if (lines.size() == CHUNK_SIZE) {
+                    inFlight.add(submitChunk(lines, format, defaultOutputs, responseMode));
+                    lines = new ArrayList<>(CHUNK_SIZE);
+
+                    if (inFlight.size() >= window) {
+                        writeChunk(inFlight.poll(), output);
+                    }
+                }
+            }
+            if (!lines.isEmpty()) {
+                inFlight.add(submitChunk(lines, format, defaultOutputs, responseMode));
+            }
+            while (!inFlight.isEmpty()) {
+                writeChunk(inFlight.poll(), output);
+            }
+        } finally {
+            // the input or the output failed, don't normalize records that will never be written
+            inFlight.forEach(future -> future.cancel(true));
+        }
+
+        output.flush();
+        return count;
+    }
+
+    private Future<String> submitChunk(List<String> lines, PhoneRecordFormat format, Set<OutputField> defaultOutputs, ResponseMode responseMode) {
+        return batchService.submit(() -> normalizeChunk(lines, format, defaultOutputs, responseMode));
+    }
+
+    /**
+     * @param line   first line of the input that is not blank
+     * @param format record format of the input
+     * @return true when the line is the header of a CSV input
+     */
+    static boolean isHeader(String line, PhoneRecordFormat format) {
+        return format == PhoneRecordFormat.CSV && line.regionMatches(true, 0, "phone", 0, 5);
+    }
+
+    /**
+     * Normalize a chunk of records
+     *
+     * @param lines          records, one per line
+     * @param format         record format of the input and the output
+     * @param defaultOutputs requested fields for the records that don't request fields
+     * @param responseMode   envelope of the NDJSON records
+     * @return the normalized records, one per line
+     * @throws JsonProcessingException when a normalized record can't be written
+     */
+    String normalizeChunk(List<String> lines, PhoneRecordFormat format, Set<OutputField> defaultOutputs, ResponseMode responseMode)
+            throws JsonProcessingException {
+        StringBuilder chunk = new StringBuilder(lines.size() * 256);
+        for (String line : lines) {
+            Phone phone = normalizeRecord(line, format, defaultOutputs);
+            if (format == PhoneRecordFormat.CSV) {
+                appendCsv(chunk, phone);
+            } else {
+                chunk.append(phoneWriter.writeValueAsString(phone.in(responseMode)));
+            }
+            chunk.append('\n');
+        }
+        return chunk.toString();
+    }
+
+    private void writeChunk(Future<String> chunk, Writer output) throws IOException {
+        try {
+            output.write(chunk.get());
+            output.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Streaming normalization was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Streaming normalization failed", e.getCause());
+        }
+    }
+
+    private Phone normalizeRecord(String line, PhoneRecordFormat format, Set<OutputField> defaultOutputs) {
+        InputPhone inputPhone;
+        try {
+            inputPhone = format == PhoneRecordFormat.CSV ? parseCsv(line) : inputReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            return new Phone(null, null, "Invalid record: " + e.getOriginalMessage());
+        } catch (IllegalArgumentException e) {
+            return new Phone(null, null, "Invalid record: " + e.getMessage());
+        }
+
+        return batchService.normalizeOne(inputPhone, defaultOutputs);
+    }
+
+    /**
+     * Parse a CSV record with the phone number and the default country
+     *
+     * @param line CSV record
+     * @return the input phone
+     */
+    private InputPhone parseCsv(String line) {
+        List<String> fields = new ArrayList<>(2);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quote");
+        }
+        fields.add(field.toString());
+
+        return new InputPhone(fields.get(0), fields.size() > 1 ? fields.get(1) : null);
+    }
+
+    private void appendCsv(StringBuilder chunk, Phone phone) {
+        InputPhone inputPhone = phone.getInputPhone();
+        OutputPhone outputPhone = phone.getOutputPhone();
+
+        appendCsvField(chunk, inputPhone != null ? inputPhone.getPhone() : null).append(',');
+        appendCsvField(chunk, inputPhone != null ? inputPhone.getDefaultCountryCode() : null).append(',');
+        if (outputPhone != null) {
+            appendCsvField(chunk, outputPhone.getInternationalPrefix()).append(',');
+            appendCsvField(chunk, outputPhone.getZonalPrefix()).append(',');
+            appendCsvField(chunk, outputPhone.getNumber()).append(',');
+            appendCsvField(chunk, outputPhone.getPhoneDedupKey()).append(',');
+            appendCsvField(chunk, outputPhone.getPhoneNormalized()).append(',');
+            appendCsvField(chunk, outputPhone.getCountryCode()).append(',');
+            appendCsvField(chunk, outputPhone.getPhoneType()).append(',');
+            appendCsvField(chunk, outputPhone.getPhoneIntNormalized()).append(',');
+            appendCsvField(chunk, outputPhone.getPhoneIntNormalizedE123()).append(',');
+            appendCsvField(chunk, outputPhone.getPhoneIntNormalizedSopres()).append(',');
+            appendCsvField(chunk, outputPhone.getValidity().getFlag()).append(',');
+            appendCsvField(chunk, outputPhone.getValidity().getDetailedFlag()).append(',');
+        } else {
+            chunk.append(",,,,,,,,,,,,");
+        }
+        appendCsvField(chunk, phone.getError());
+    }
+
+    private StringBuilder appendCsvField(StringBuilder chunk, Object value) {
+        if (value == null) {
+            return chunk;
+        }
+
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return chunk.append(text);
+        }
+        return chunk.append('"').append(text.replace("\"", "\"\"")).append('"');
+    }
+
+}
@@ -0,0 +1,117 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.beans.ValidityFlag;
+import be.demo.normalizephone.config.NormalizeProperties;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.Phonenumber;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Warm-up at startup: load the metadata of the configured regions and normalize example numbers of these regions, so
+ * the first requests don't pay for the lazy metadata loading and the interpreted code. Spring Boot only reports the
+ * application as ready (/actuator/health/readiness) after the application runners, so after the warm-up.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "normalize.warmup.enabled", havingValue = "true", matchIfMissing = true)
+public class NormalizePhoneWarmup implements ApplicationRunner {
+
+    private static final PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
+
+    private static final PhoneNumberUtil.PhoneNumberType[] TYPES = {PhoneNumberUtil.PhoneNumberType.FIXED_LINE, PhoneNumberUtil.PhoneNumberType.MOBILE};
+
+    private final NormalizePhone normalizePhone;
+    private final NormalizeProperties.Warmup properties;
+    private final ApplicationContext context;
+
+    @Autowired
+    public NormalizePhoneWarmup(NormalizeProperties properties, ApplicationContext context) {
+        // The warm-up doesn't go through the cache or the metrics of the application, it would only pollute them
+        this(properties, context, new NormalizePhone());
+    }
+
+    NormalizePhoneWarmup(NormalizeProperties properties, ApplicationContext context, NormalizePhone normalizePhone) {
+        this.properties = properties.getWarmup();
+        this.context = context;
+        this.normalizePhone = normalizePhone;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        long start = System.nanoTime();
+        int total = samples().size() * properties.getRounds();
+        int count = warmUp();
+        log.info("Warm-up normalized {} phone numbers in {} ms", total, (System.nanoTime() - start) / 1_000_000);
+        if (count < total) {
+            log.warn("Warm-up: {} of the {} example numbers did not get their expected validity", total - count, total);
+        }
+
+        if (properties.isExit()) {
+            // training run of the class data sharing archive, see the cdsArchive task of the build
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    /**
+     * Load the metadata of the regions and normalize their example numbers
+     *
+     * @return the number of normalized phone numbers that got their expected validity: valid for the example numbers,
+     * invalid for the invalid number of each region
+     */
+    int warmUp() {
+        List<Sample> samples = samples();
+
+        int expected = 0;
+        for (int round = 0; round < properties.getRounds(); round++) {
+            for (Sample sample : samples) {
+                boolean valid = normalizePhone.normalize(sample.inputPhone).getValidity().getFlag() == ValidityFlag.PHONE_OK.getFlag().shortValue();
+                if (valid == sample.valid) {
+                    expected++;
+                }
+            }
+        }
+        return expected;
+    }
+
+    private List<Sample> samples() {
+        Collection<String> regions = properties.getRegions().isEmpty() ? phoneUtil.getSupportedRegions() : properties.getRegions();
+        List<Sample> samples = new ArrayList<>();
+        for (String region : regions) {
+            for (PhoneNumberUtil.PhoneNumberType type : TYPES) {
+                Phonenumber.PhoneNumber example = phoneUtil.getExampleNumberForType(region, type);
+                if (example != null) {
+                    samples.add(new Sample(new InputPhone(phoneUtil.format(example, PhoneNumberUtil.PhoneNumberFormat.NATIONAL), region), true));
+                    samples.add(new Sample(new InputPhone(phoneUtil.format(example, PhoneNumberUtil.PhoneNumberFormat.E164), region), true));
+                }
+            }
+            // an invalid number of the region, for the validity checks
+            samples.add(new Sample(new InputPhone("123", region), false));
+        }
+        return samples;
+    }
+
+    private static final class Sample {
+
+        private final InputPhone inputPhone;
+        private final boolean valid;
+
+        private Sample(InputPhone inputPhone, boolean valid) {
+            this.inputPhone = inputPhone;
+            this.valid = valid;
+        }
+
+    }
+
+}
@@ -0,0 +1,559 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.CompactPhone;
+import be.demo.normalizephone.beans.OutputField;
+import be.demo.normalizephone.beans.OutputPhone;
+import be.demo.normalizephone.beans.ValidityDetailedFlag;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+
+/**
+ * Normalized phone numbers in an append-only, memory-mapped file, so they survive a restart. Used as a second level
+ * behind NormalizePhoneCache, before libphonenumber.
+ * <p>
+ * A record has a fixed width of 6 longs: a 128 bit hash of the input, the national number, the country code, the
+ * validity, the phone type, the region, the NDC length and the separators of the E.123 format packed in two longs,
+ * and the day it was last used. All fields of the OutputPhone are rebuilt from the record, without libphonenumber. A
+ * normalized phone number that can't be rebuilt exactly from its record, with an extension for instance, is not
+ * stored.
+ * <p>
+ * The file starts with a version stamp of libphonenumber, of the record format and of the settings that change the
+ * results, such as the candidate regions of the country inference: a file with an other stamp is emptied when it is
+ * opened. The records that were not used during the retention are removed when the file is opened, by copying the
+ * other records to a new file.
+ * <p>
+ * A full store replaces a record in place for each new record, chosen by a clock: a hand goes round the records,
+ * a record used since the hand last passed gets a second chance, the first record that wasn't is replaced. A lookup
+ * only marks its record as used in memory; the hand, and closing the store, write the day of the marked records in
+ * the file under the write lock. The index on the heap is sized for the maximum number of records when the store is
+ * opened, 16 bytes per slot at a load of at most 3/4, and never grows.
+ */
+@Slf4j
+public class NormalizeResultStore implements Closeable {
+
+    public static final String METRIC_PREFIX = "normalize.store";
+
+    // bump when the normalization gives other results for the same input
+    static final int RESULT_VERSION = 1;
+
+    // "PHSTORE1"
+    private static final long MAGIC = 0x5048535430524531L;
+    // magic, version stamp, number of records, unused
+    private static final int HEADER = 8;
+    // input hash (2), national number, fields, E.123 separators, last used day
+    private static final int RECORD = 6;
+    private static final int INDEX_SLOT = 2;
+    private static final long MIN_INDEX_SLOTS = 1024;
+
+    // fields of a record
+    private static final long FULL = 1L << 36;
+    private static final ValidityDetailedFlag[] DETAILED_FLAGS = ValidityDetailedFlag.values();
+
+    private final Path file;
+    private final long maxRecords;
+    private final Clock clock;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder unstorable = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+    // bit per record, set by a lookup, cleared by the hand
+    private final AtomicLongArray used;
+
+    private LongPages records;
+    private long recordCount;
+    // open addressing on the first long of the input hash: first long, record number + 1
+    private LongPages index;
+    private long indexSlots;
+    // next record the clock considers to replace
+    private long hand;
+    // no records are added after a write error
+    private volatile boolean failed;
+
+    /**
+     * Open the store, empty it when it was written by an other version or with other settings and remove the
+     * expired records
+     *
+     * @param file       file of the store, created when it doesn't exist
+     * @param settings   settings of the normalization that change its results, empty for the defaults
+     * @param maxRecords maximum number of records, a full store replaces the records not used recently
+     * @param retention  records that were not used during the retention are removed, null to keep them until the
+     *                   store is full
+     * @param clock      clock of the last used days
+     * @throws IOException when the file can't be opened or compacted
+     */
+    public NormalizeResultStore(Path file, String settings, long maxRecords, Duration retention, Clock clock) throws IOException {
+        this.file = file;
+        this.maxRecords = maxRecords;
+        this.clock = clock;
+        this.used = new AtomicLongArray((int) Math.min((maxRecords + 63) >>> 6, Integer.MAX_VALUE - 8));
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        long stamp = versionStamp(settings);
+        this.records = LongPages.mapped(file);
+        records.ensureCapacity(HEADER);
+        if (records.get(0) != MAGIC || records.get(1) != stamp) {
+            if (records.get(0) != 0) {
+                log.info("Emptying the result store {}, it was written by an other version or with other settings", file);
+            }
+            records.close();
+            Files.delete(file);
+            this.records = LongPages.mapped(file);
+            records.ensureCapacity(HEADER);
+            records.set(1, stamp);
+            records.set(0, MAGIC);
+        }
+        this.recordCount = records.get(2);
+
+        if (retention != null) {
+            compact(today() - retention.toDays());
+        }
+        buildIndex();
+        log.info("Opened the result store {} with {} records", file, recordCount);
+    }
+
+    /**
+     * Publish the hits, misses, evictions and number of records of the store
+     *
+     * @param registry meter registry
+     */
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder(METRIC_PREFIX + ".lookups", hits, LongAdder::sum).tag("result", "hit").register(registry);
+        FunctionCounter.builder(METRIC_PREFIX + ".lookups", misses, LongAdder::sum).tag("result", "miss").register(registry);
+        FunctionCounter.builder(METRIC_PREFIX + ".unstorable", unstorable, LongAdder::sum)
+                .description("normalized phone numbers that can't be rebuilt from a record").register(registry);
+        FunctionCounter.builder(METRIC_PREFIX + ".evicted", evicted, LongAdder::sum)
+                .description("records replaced because the store was full").register(registry);
+        Gauge.builder(METRIC_PREFIX + ".records", this, NormalizeResultStore::getRecords).register(registry);
+        Gauge.builder(METRIC_PREFIX + ".failed", this, store -> store.failed ? 1 : 0)
+                .description("1 when no records are added after a write error").register(registry);
+    }
+
+    /**
+     * Get a normalized phone number from the store, normalize and store it when it is not stored yet
+     *
+     * @param phoneNumber trimmed phone number
+     * @param countryCode trimmed and uppercase default country
+     * @param normalizer  normalization of all fields of a phone number that is not stored yet
+     * @return the normalized phone number
+     */
+    OutputPhone get(String phoneNumber, String countryCode, BiFunction<String, String, OutputPhone> normalizer) {
+        long hash1 = hash(phoneNumber, countryCode, 0xcbf29ce484222325L, 0x100000001b3L);
+        long hash2 = hash(phoneNumber, countryCode, 0x84222325cbf29ce4L, 0x9e3779b97f4a7c15L);
+
+        lock.readLock().lock();
+        try {
+            long record = find(hash1, hash2);
+            if (record >= 0) {
+                long offset = HEADER + record * RECORD;
+                // null for a damaged record, it is then normalized again
+                OutputPhone outputPhone = decode(records.get(offset + 2), records.get(offset + 3), records.get(offset + 4));
+                if (outputPhone != null) {
+                    hits.increment();
+                    // the file is only written under the write lock
+                    markUsed(record);
+                    return outputPhone;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        misses.increment();
+        OutputPhone outputPhone = normalizer.apply(phoneNumber, countryCode);
+        long[] encoded = encode(outputPhone);
+        if (encoded == null) {
+            unstorable.increment();
+        } else {
+            add(hash1, hash2, encoded);
+        }
+        return outputPhone;
+    }
+
+    /**
+     * @return the number of normalized phone numbers that could not be stored, because they can't be rebuilt from a
+     * record
+     */
+    public long getUnstorable() {
+        return unstorable.sum();
+    }
+
+    /**
+     * @return the number of records
+     */
+    public long getRecords() {
+        lock.readLock().lock();
+        try {
+            return recordCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            // the days of the records used since the hand passed, for the retention
+            long day = today();
+            for (long record = 0; record < recordCount; record++) {
+                if (isUsed(record)) {
+                    records.set(HEADER + record * RECORD + 5, day);
+                }
+            }
+            records.force();
+            records.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(long hash1, long hash2, long[] encoded) {
+        lock.writeLock().lock();
+        try {
+            // an other thread may have stored the same input in the meantime
+            if (failed || find(hash1, hash2) >= 0) {
+                return;
+            }
+            if (recordCount >= maxRecords) {
+                replace(victim(), hash1, hash2, encoded);
+                evicted.increment();
+                return;
+            }
+
+            long record = recordCount;
+            long offset = HEADER + record * RECORD;
+            records.ensureCapacity(offset + RECORD);
+            write(offset, hash1, hash2, encoded);
+            // the record only counts once it is complete
+            records.set(2, ++recordCount);
+            putIndex(hash1, record + 1);
+        } catch (IOException e) {
+            log.warn("Could not add a record to the result store {}, no records are added until a restart", file, e);
+            failed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the record of the input hash, -1 when the input is not stored
+     */
+    private long find(long hash1, long hash2) {
+        long mask = indexSlots - 1;
+        for (long slot = mix(hash1) & mask; ; slot = (slot + 1) & mask) {
+            long record = index.get(slot * INDEX_SLOT + 1) - 1;
+            if (record < 0) {
+                return -1;
+            }
+            if (index.get(slot * INDEX_SLOT) == hash1 && records.get(HEADER + record * RECORD + 1) == hash2) {
+                return record;
+            }
+        }
+    }
+
+    private void putIndex(long hash1, long recordPlusOne) {
+        long mask = indexSlots - 1;
+        long slot = mix(hash1) & mask;
+        while (index.get(slot * INDEX_SLOT + 1) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.set(slot * INDEX_SLOT, hash1);
+        index.set(slot * INDEX_SLOT + 1, recordPlusOne);
+    }
+
+    /**
+     * Remove a record from the index, shifting the next slots of its probe sequence back so no tombstone is needed
+     */
+    private void removeIndex(long hash1, long record) {
+        long mask = indexSlots - 1;
+        long hole = mix(hash1) & mask;
+        while (index.get(hole * INDEX_SLOT + 1) != record + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (long slot = (hole + 1) & mask; index.get(slot * INDEX_SLOT + 1) != 0; slot = (slot + 1) & mask) {
+            // an entry can fill the hole when the hole is between its home slot and its slot
+            long home = mix(index.get(slot * INDEX_SLOT)) & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                index.set(hole * INDEX_SLOT, index.get(slot * INDEX_SLOT));
+                index.set(hole * INDEX_SLOT + 1, index.get(slot * INDEX_SLOT + 1));
+                hole = slot;
+            }
+        }
+        index.set(hole * INDEX_SLOT, 0);
+        index.set(hole * INDEX_SLOT + 1, 0);
+    }
+
+    private void buildIndex() throws IOException {
+        // a full store replaces its records, the index never holds more than the maximum
+        long capacity = Math.max(recordCount, maxRecords);
+        long slots = MIN_INDEX_SLOTS;
+        while (slots * 3 < capacity * 4) {
+            slots <<= 1;
+        }
+        index = LongPages.heap();
+        index.ensureCapacity(slots * INDEX_SLOT);
+        indexSlots = slots;
+        for (long record = 0; record < recordCount; record++) {
+            long offset = HEADER + record * RECORD;
+            if (find(records.get(offset), records.get(offset + 1)) < 0) {
+                putIndex(records.get(offset), record + 1);
+            }
+        }
+    }
+
+    /**
+     * Choose the record to replace in the full store: the hand passes the records used since it last passed them,
+     * writing the day they were used, and stops at the first record that wasn't. Runs under the write lock.
+     *
+     * @return the record to replace
+     */
+    private long victim() {
+        long day = today();
+        while (true) {
+            long record = hand;
+            hand = hand + 1 < recordCount ? hand + 1 : 0;
+            if (!clearUsed(record)) {
+                return record;
+            }
+            records.set(HEADER + record * RECORD + 5, day);
+        }
+    }
+
+    /**
+     * Replace a record in place, in the file and in the index
+     */
+    private void replace(long record, long hash1, long hash2, long[] encoded) {
+        long offset = HEADER + record * RECORD;
+        removeIndex(records.get(offset), record);
+        // without its hash, a record that is half written when the system crashes is never found
+        records.set(offset, 0);
+        records.set(offset + 1, 0);
+        write(offset, hash1, hash2, encoded);
+        putIndex(hash1, record + 1);
+    }
+
+    private void write(long offset, long hash1, long hash2, long[] encoded) {
+        records.set(offset + 2, encoded[0]);
+        records.set(offset + 3, encoded[1]);
+        records.set(offset + 4, encoded[2]);
+        records.set(offset + 5, today());
+        records.set(offset, hash1);
+        records.set(offset + 1, hash2);
+    }
+
+    private void markUsed(long record) {
+        int word = (int) (record >>> 6);
+        long bit = 1L << record;
+        if (word < used.length() && (used.get(word) & bit) == 0) {
+            used.getAndAccumulate(word, bit, (previous, mark) -> previous | mark);
+        }
+    }
+
+    private boolean isUsed(long record) {
+        int word = (int) (record >>> 6);
+        return word < used.length() && (used.get(word) & 1L << record) != 0;
+    }
+
+    /**
+     * @return true when the record was used
+     */
+    private boolean clearUsed(long record) {
+        int word = (int) (record >>> 6);
+        long bit = 1L << record;
+        return word < used.length() && (used.getAndAccumulate(word, ~bit, (previous, mask) -> previous & mask) & bit) != 0;
+    }
+
+    /**
+     * Copy the records used since a day to a new file, when there are records to remove
+     *
+     * @param oldestDay records last used before this day are removed
+     */
+    private void compact(long oldestDay) throws IOException {
+        long kept = 0;
+        for (long record = 0; record < recordCount; record++) {
+            if (records.get(HEADER + record * RECORD + 5) >= oldestDay) {
+                kept++;
+            }
+        }
+        if (kept == recordCount) {
+            return;
+        }
+
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        Files.deleteIfExists(compacted);
+        try (LongPages target = LongPages.mapped(compacted)) {
+            target.ensureCapacity(HEADER + kept * RECORD);
+            long targetOffset = HEADER;
+            for (long record = 0; record < recordCount; record++) {
+                long offset = HEADER + record * RECORD;
+                if (records.get(offset + 5) >= oldestDay) {
+                    for (int i = 0; i < RECORD; i++) {
+                        target.set(targetOffset + i, records.get(offset + i));
+                    }
+                    targetOffset += RECORD;
+                }
+            }
+            target.set(2, kept);
+            target.set(1, records.get(1));
+            target.set(0, MAGIC);
+            target.force();
+        }
+
+        records.close();
+        Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Compacted the result store {} from {} to {} records", file, recordCount, kept);
+        records = LongPages.mapped(file);
+        recordCount = kept;
+    }
+
+    private long today() {
+        return LocalDate.now(clock).toEpochDay();
+    }
+
+    /**
+     * Encode a normalized phone number with all fields in a record
+     *
+     * @param outputPhone normalized phone number with all fields
+     * @return the national number, the fields and the E.123 separators, null when the phone number can't be
+     * rebuilt exactly from them
+     */
+    static long[] encode(OutputPhone outputPhone) {
+        ValidityDetailedFlag detailedFlag = ValidityDetailedFlag.of(outputPhone.getValidity().getDetailedFlag());
+        long nationalNumber = 0;
+        long fields = (long) detailedFlag.ordinal() << 10;
+        long separators = 0;
+
+        Integer internationalPrefix = outputPhone.getInternationalPrefix();
+        if (internationalPrefix != null) {
+            String national = outputPhone.getPhoneDedupKey() != null ? Long.toString(outputPhone.getPhoneDedupKey()) : null;
+            String e164 = outputPhone.getPhoneIntNormalized();
+            String e123 = outputPhone.getPhoneIntNormalizedE123();
+            String prefix = "+" + internationalPrefix;
+            if (national == null || e164 == null || e123 == null || outputPhone.getZonalPrefix() == null || outputPhone.getCountryCode() == null
+                    || internationalPrefix < 0 || internationalPrefix > 999 || !e123.startsWith(prefix + " ")) {
+                return null;
+            }
+
+            int leadingZeros = e164.length() - prefix.length() - national.length();
+            Short phoneType = outputPhone.getPhoneType();
+            nationalNumber = outputPhone.getPhoneDedupKey();
+            fields |= FULL | internationalPrefix
+                    | (long) (phoneType == null ? 0 : phoneType + 1 & 3) << 15
+                    | (long) (outputPhone.getZonalPrefix().length() & 31) << 17
+                    | (long) (leadingZeros & 7) << 22
+                    | (long) CompactPhone.encodeCountry(outputPhone.getCountryCode()) << 25;
+
+            // 2 bits per gap between 2 digits of the national significant number
+            int digit = 0;
+            boolean separator = false;
+            for (int i = prefix.length() + 1; i < e123.length(); i++) {
+                char c = e123.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    digit++;
+                    separator = false;
+                } else if (c != ' ' && c != '-' || separator || digit == 0 || digit >= 32) {
+                    return null;
+                } else {
+                    separators |= (long) (c == ' ' ? 1 : 2) << (2 * (digit - 1));
+                    separator = true;
+                }
+            }
+        }
+
+        // only store what can be rebuilt exactly
+        return outputPhone.equals(decode(nationalNumber, fields, separators)) ? new long[]{nationalNumber, fields, separators} : null;
+    }
+
+    /**
+     * Rebuild a normalized phone number from a record, the same way as the normalization
+     *
+     * @return the normalized phone number, null when the record is invalid
+     */
+    static OutputPhone decode(long nationalNumber, long fields, long separators) {
+        int detailedFlag = (int) (fields >>> 10 & 31);
+        if (detailedFlag >= DETAILED_FLAGS.length) {
+            return null;
+        }
+        if ((fields & FULL) == 0) {
+            return OutputPhone.of(DETAILED_FLAGS[detailedFlag]);
+        }
+
+        int internationalPrefix = (int) (fields & 1023);
+        int phoneType = (int) (fields >>> 15 & 3);
+        int zonalPrefixLength = (int) (fields >>> 17 & 31);
+        int leadingZeros = (int) (fields >>> 22 & 7);
+        if (nationalNumber < 0 || zonalPrefixLength > Long.toString(nationalNumber).length()) {
+            return null;
+        }
+
+        // the formats are derived from the parts, the same way as for a normalized phone number
+        return OutputPhone.of(DETAILED_FLAGS[detailedFlag], OutputField.ALL, CompactPhone.decodeCountry((int) (fields >>> 25 & 2047)),
+                phoneType == 0 ? null : (short) (phoneType - 1), internationalPrefix, nationalNumber, leadingZeros, zonalPrefixLength, separators);
+    }
+
+    /**
+     * @param settings settings of the normalization that change its results
+     * @return a stamp of the libphonenumber version, the result version and the settings, a store with an other stamp
+     * is emptied
+     */
+    static long versionStamp(String settings) {
+        String version = "unknown";
+        try (InputStream pom = PhoneNumberUtil.class.getResourceAsStream("/META-INF/maven/com.googlecode.libphonenumber/libphonenumber/pom.properties")) {
+            if (pom != null) {
+                Properties properties = new Properties();
+                properties.load(pom);
+                version = properties.getProperty("version", version);
+            }
+        } catch (IOException e) {
+            log.warn("Could not read the libphonenumber version", e);
+        }
+        return hash(version, settings, 0xcbf29ce484222325L, 0x100000001b3L) ^ mix(0x100000000L + RESULT_VERSION);
+    }
+
+    private static long hash(String phoneNumber, String countryCode, long seed, long multiplier) {
+        long hash = seed;
+        for (int i = 0; i < phoneNumber.length(); i++) {
+            hash = (hash ^ phoneNumber.charAt(i)) * multiplier;
+        }
+        // with the length, "1" + "23" is not "12" + "3"
+        hash = (hash ^ phoneNumber.length()) * multiplier;
+        for (int i = 0; i < countryCode.length(); i++) {
+            hash = (hash ^ countryCode.charAt(i)) * multiplier;
+        }
+        return mix(hash);
+    }
+
+    // the finalizer of MurmurHash3
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+}
@@ -0,0 +1,23 @@
+package be.demo.normalizephone.business;
+
+/**
+ * Stages of the normalization of one phone number
+ */
+public enum NormalizeStage {
+
+    // scan of the input, before it is parsed
+    SCAN,
+    // fast path of the Belgian phone numbers
+    BELGIUM,
+    // libphonenumber parse of the input
+    PARSE,
+    // validity flags
+    VALIDATE,
+    // country and mobile detection
+    TYPE,
+    // prefixes and formatted phone numbers
+    FORMAT,
+    // projection of the result on the returned view
+    VIEW
+
+}
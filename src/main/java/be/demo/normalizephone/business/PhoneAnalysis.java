@@ -0,0 +1,169 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.ValidityDetailedFlag;
+import com.google.i18n.phonenumbers.PhoneNumberUtil;
+import com.google.i18n.phonenumbers.Phonenumber;
+
+import static com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberType.MOBILE;
+
+/**
+ * Facts about one parsed phone number, needed by one normalization. Every fact is computed at most once, and only
+ * when it is needed.
+ */
+class PhoneAnalysis {
+
+    private static final PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance();
+
+    private static final int BELGIUM_MOBILE_ZONE_MIN = 456;
+    private static final int BELGIUM_MOBILE_ZONE_MAX = 499;
+
+    private final Phonenumber.PhoneNumber parsedNumber;
+
+    private PhoneNumberUtil.ValidationResult possibleReason;
+    private Boolean valid;
+    private PhoneNumberUtil.PhoneNumberType numberType;
+    private String regionCode;
+    private String nationalNumber;
+    private int nationalDestinationCodeLength = -1;
+    private Short mobile;
+    private ValidityDetailedFlag validityDetailedFlag;
+
+    PhoneAnalysis(Phonenumber.PhoneNumber parsedNumber) {
+        this.parsedNumber = parsedNumber;
+    }
+
+    Phonenumber.PhoneNumber getParsedNumber() {
+        return parsedNumber;
+    }
+
+    PhoneNumberUtil.ValidationResult getPossibleReason() {
+        if (possibleReason == null) {
+            possibleReason = phoneUtil.isPossibleNumberWithReason(parsedNumber);
+        }
+        return possibleReason;
+    }
+
+    boolean isValid() {
+        if (valid == null) {
+            valid = phoneUtil.isValidNumber(parsedNumber);
+        }
+        return valid;
+    }
+
+    PhoneNumberUtil.PhoneNumberType getNumberType() {
+        if (numberType == null) {
+            numberType = phoneUtil.getNumberType(parsedNumber);
+        }
+        return numberType;
+    }
+
+    /**
+     * @return the ISO 3166 alpha-2 code of the country of the international prefix
+     */
+    String getRegionCode() {
+        if (regionCode == null) {
+            regionCode = phoneUtil.getRegionCodeForCountryCode(parsedNumber.getCountryCode());
+        }
+        return regionCode;
+    }
+
+    String getNationalNumber() {
+        if (nationalNumber == null) {
+            nationalNumber = Long.toString(parsedNumber.getNationalNumber());
+        }
+        return nationalNumber;
+    }
+
+    int getNationalDestinationCodeLength() {
+        if (nationalDestinationCodeLength < 0) {
+            nationalDestinationCodeLength = phoneUtil.getLengthOfNationalDestinationCode(parsedNumber);
+        }
+        return nationalDestinationCodeLength;
+    }
+
+    /**
+     * Get validity detailed flag of the parsed number ( PhoneNumberUtil.ValidationResult + extra checks ), without the
+     * checks on the input phone number
+     *
+     * @return validity detailed flag
+     */
+    ValidityDetailedFlag getValidityDetailedFlag() {
+        if (validityDetailedFlag == null) {
+            validityDetailedFlag = computeValidityDetailedFlag();
+        }
+        return validityDetailedFlag;
+    }
+
+    private ValidityDetailedFlag computeValidityDetailedFlag() {
+        // Check phone number with Google libphonenumber
+        switch (getPossibleReason()) {
+            case IS_POSSIBLE:
+            case IS_POSSIBLE_LOCAL_ONLY:
+                // This patch is needed, because the function isPossibleNumberWithReason is not so strict as isValidNumber for length of type phone number
+                // Extra check, isValid = false and validityDetailedFlag = 0 ( IS_POSSIBLE ) AND length for fix or mobile number is too long => validityDetailedFlag = 01 !
+                // Extra check, isValid = false and validityDetailedFlag = 0 ( IS_POSSIBLE ) AND length for mobile number is too short => validityDetailedFlag = 05 !
+                // If not, it would give : isValid = false and validityDetailedFlag = 0 ( IS_POSSIBLE ), not correct ! => validityFlag = 04 ! ( correct length but not valid number )
+                // Note : when fix number is too short => result = TOO_SHORT !
+                long nationalNumber = parsedNumber.getNationalNumber();
+                if (isValid()) {
+                    return ValidityDetailedFlag.PHONE_OK;
+                } else if (getMobile() == 0 && nationalNumber > 99999999) {
+                    return ValidityDetailedFlag.OUTPUT_TOO_LONG;
+                } else if (getMobile() == 1 && nationalNumber < 100000000) {
+                    return ValidityDetailedFlag.TOO_SHORT_FOR_CC_COUNTRY;
+                } else {
+                    return ValidityDetailedFlag.NOT_LOCAL_IN_ASKED_COUNTRY;
+                }
+            case TOO_LONG:
+                return ValidityDetailedFlag.OUTPUT_TOO_LONG;
+            case TOO_SHORT:
+                return ValidityDetailedFlag.TOO_SHORT_FOR_CC_COUNTRY;
+            case INVALID_LENGTH:
+                return ValidityDetailedFlag.INVALID_LENGTH_NAT;
+            case INVALID_COUNTRY_CODE:
+                return ValidityDetailedFlag.UNKNOWN_INT_PREFIX; // "03" "04" "06"
+            default:
+                return ValidityDetailedFlag.UNKNOWN;
+        }
+    }
+
+    /**
+     * Check if phone number is a mobile number
+     *
+     * @return 1 if the phone number is a mobile number else 0
+     */
+    Short getMobile() {
+        if (mobile == null) {
+            mobile = computeMobile();
+        }
+        return mobile;
+    }
+
+    private Short computeMobile() {
+        PhoneNumberUtil.PhoneNumberType phoneType = getNumberType();
+
+        if (phoneType == MOBILE) {
+            return 1;
+        } else if ("BE".equals(getRegionCode()) && getNationalNumber().length() >= 3 && isBetweenBelgiumMobileZones(getNationalNumber().substring(0, 3))) {
+            // Google libphonenumber doesn't recognize if mobile number when too short/long
+            // so methode isBetweenMobileZones verifies Belgium ranges for mobiles
+            return 1;
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * Check if the parsed number is in the belgium mobile zone
+     * By taking the first 3 digits of the national number
+     *
+     * @param zone the phone zone (3 digits)
+     * @return true if the phone number is in the belgium mobile zone else false
+     */
+    static boolean isBetweenBelgiumMobileZones(String zone) {
+        int str2int = Integer.parseInt("0" + zone);
+
+        return (str2int >= BELGIUM_MOBILE_ZONE_MIN && str2int <= BELGIUM_MOBILE_ZONE_MAX);
+    }
+
+}
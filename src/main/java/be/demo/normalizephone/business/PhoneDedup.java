@@ -0,0 +1,132 @@
+package be.demo.normalizephone.business;
+
+import be.demo.normalizephone.beans.DedupMatch;
+import be.demo.normalizephone.beans.DedupRecord;
+import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.beans.OutputField;
+import be.demo.normalizephone.beans.OutputPhone;
+import be.demo.normalizephone.beans.Phone;
+import be.demo.normalizephone.config.NormalizeProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Deduplication of phone numbers: the records are normalized and indexed on their international prefix and
+ * phoneDedupKey, so the records with the same phone number share the same key whatever the input format.
+ */
+@Service
+@ConditionalOnProperty(name = "normalize.dedup.enabled", havingValue = "true")
+public class PhoneDedup {
+
+    // the national number has at most 15 digits, the international prefix is put in front of it
+    private static final long KEY_MULTIPLIER = 1_000_000_000_000_000L;
+
+    private static final Set<OutputField> INGEST_OUTPUTS = EnumSet.of(OutputField.INTERNATIONAL_PREFIX, OutputField.PHONE_DEDUP_KEY);
+    private static final Set<OutputField> QUERY_OUTPUTS = EnumSet.of(OutputField.INTERNATIONAL_PREFIX, OutputField.PHONE_DEDUP_KEY, OutputField.ZONE_ID);
+
+    private final NormalizePhone phoneService;
+    private final NormalizePhoneBatch batchService;
+    private final PhoneDedupIndex index;
+    private final int maxRecordIds;
+
+    @Autowired
+    public PhoneDedup(NormalizePhone phoneService, NormalizePhoneBatch batchService, PhoneDedupIndex index, NormalizeProperties properties) {
+        this.phoneService = phoneService;
+        this.batchService = batchService;
+        this.index = index;
+        this.maxRecordIds = properties.getDedup().getMaxRecordIds();
+    }
+
+    /**
+     * Normalize the phone numbers of a batch of records on the batch workers and add the records to the index
+     *
+     * @param dedupRecords records with their phone number
+     * @return per record, in the same order, the records that share its phone number, this record included. A
+     * phone number without a dedup key, or that could not be normalized, is not indexed
+     */
+    public List<DedupMatch> ingest(List<DedupRecord> dedupRecords) {
+        List<InputPhone> inputPhones = dedupRecords.stream()
+                .map(dedupRecord -> new InputPhone(dedupRecord.getPhone(), dedupRecord.getDefaultCountryCode()))
+                .collect(Collectors.toList());
+        List<Phone> phones = batchService.normalize(inputPhones, INGEST_OUTPUTS);
+
+        List<DedupMatch> matches = new ArrayList<>(phones.size());
+        for (int i = 0; i < phones.size(); i++) {
+            Long recordId = dedupRecords.get(i).getRecordId();
+            Phone phone = phones.get(i);
+
+            DedupMatch match;
+            if (recordId == null) {
+                match = new DedupMatch();
+                match.setError("Missing recordId");
+            } else if (phone.getError() != null) {
+                match = new DedupMatch();
+                match.setError(phone.getError());
+            } else {
+                match = toMatch(phone.getOutputPhone());
+                long key = key(phone.getOutputPhone());
+                if (key > 0) {
+                    index.add(key, recordId);
+                    setRecords(match, key);
+                }
+            }
+            match.setRecordId(recordId);
+            matches.add(match);
+        }
+        return matches;
+    }
+
+    /**
+     * @param inputPhone phone number and default country
+     * @return the records with this phone number
+     */
+    public DedupMatch query(InputPhone inputPhone) {
+        OutputPhone outputPhone = phoneService.normalize(inputPhone, QUERY_OUTPUTS);
+
+        DedupMatch match = toMatch(outputPhone);
+        match.setZoneId(outputPhone.getZoneId());
+        long key = key(outputPhone);
+        if (key > 0) {
+            setRecords(match, key);
+        }
+        return match;
+    }
+
+    /**
+     * @return the key of the phone number in the index, 0 when the phone number has no dedup key
+     */
+    static long key(OutputPhone outputPhone) {
+        Integer internationalPrefix = outputPhone.getInternationalPrefix();
+        Long phoneDedupKey = outputPhone.getPhoneDedupKey();
+        if (internationalPrefix == null || phoneDedupKey == null || phoneDedupKey >= KEY_MULTIPLIER) {
+            return 0;
+        }
+        return internationalPrefix * KEY_MULTIPLIER + phoneDedupKey;
+    }
+
+    private static DedupMatch toMatch(OutputPhone outputPhone) {
+        DedupMatch match = new DedupMatch();
+        match.setInternationalPrefix(outputPhone.getInternationalPrefix());
+        match.setPhoneDedupKey(outputPhone.getPhoneDedupKey());
+        match.setValidity(outputPhone.getValidity());
+        return match;
+    }
+
+    private void setRecords(DedupMatch match, long key) {
+        long[] recordIds = index.get(key, maxRecordIds);
+        List<Long> ids = new ArrayList<>(recordIds.length);
+        for (long recordId : recordIds) {
+            ids.add(recordId);
+        }
+        match.setRecordCount(index.count(key));
+        match.setRecordIds(ids);
+    }
+
+}
@@ -0,0 +1,428 @@
+package be.demo.normalizephone.business;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index of the record IDs per phone number key, persisted in a directory.
+ * <p>
+ * The keys are in an open addressing hash table with linear probing, a slot holds the key, the last record of the
+ * key and the number of records of the key. The records are appended to a second array, a record holds the record
+ * ID and the previous record of the same key. A third hash table holds every pair of key and record ID, so adding a
+ * record that is already indexed is refused without walking the records of its key: a key shared by many records,
+ * a switchboard or a placeholder number, doesn't make the ingest quadratic. All are arrays of longs in pages, so 100M
+ * keys don't create any object: on the heap, in direct buffers outside the heap or in memory-mapped files.
+ * <p>
+ * The memory-mapped index is its own file, the operating system writes it to disk. The other stores are read from
+ * the directory when they are opened and written to it when they are saved or closed, their pairs are rebuilt from
+ * the records when they are opened.
+ */
+public class PhoneDedupIndex implements Closeable {
+
+    public enum Store {
+        // long arrays on the heap
+        HEAP,
+        // direct buffers, outside the heap and its garbage collection
+        DIRECT,
+        // memory-mapped files, only the pages in use are in memory
+        MMAP
+    }
+
+    static final String TABLE_FILE = "table.bin";
+    static final String RECORDS_FILE = "records.bin";
+    static final String PAIRS_FILE = "pairs.bin";
+
+    // "PHDEDUP1"
+    private static final long MAGIC = 0x5048444544555031L;
+    // magic, number of slots or records, number of keys, unused
+    private static final int HEADER = 4;
+    // key, last record of the key, number of records of the key
+    private static final int SLOT = 3;
+    // record ID, previous record of the key
+    private static final int RECORD = 2;
+    // key, record ID
+    private static final int PAIR = 2;
+    private static final long MIN_SLOTS = 1024;
+
+    private final Store store;
+    private final Path directory;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private LongPages table;
+    private LongPages records;
+    private LongPages pairs;
+    private long slots;
+    private long pairSlots;
+    private long keys;
+    private long recordCount;
+
+    /**
+     * Open the index of a directory, create an empty index when the directory doesn't have one
+     *
+     * @param store           where the index is kept in memory
+     * @param directory       directory of the index files
+     * @param initialCapacity number of keys before the hash table grows the first time
+     * @throws IOException when the index files can't be read or are not index files
+     */
+    public PhoneDedupIndex(Store store, Path directory, long initialCapacity) throws IOException {
+        this.store = store;
+        this.directory = directory;
+        Files.createDirectories(directory);
+
+        Path tableFile = directory.resolve(TABLE_FILE);
+        Path recordsFile = directory.resolve(RECORDS_FILE);
+        boolean exists = Files.exists(tableFile) && Files.exists(recordsFile);
+
+        this.table = newPages(tableFile);
+        this.records = newPages(recordsFile);
+        if (store != Store.MMAP && exists) {
+            records.load(recordsFile);
+            table.load(tableFile);
+        }
+        table.ensureCapacity(HEADER);
+        records.ensureCapacity(HEADER);
+
+        if (table.get(0) == MAGIC && records.get(0) == MAGIC) {
+            slots = table.get(1);
+            keys = table.get(2);
+            recordCount = records.get(1);
+        } else if (table.get(0) == 0 && records.get(0) == 0) {
+            slots = MIN_SLOTS;
+            while (slots * 3 < initialCapacity * 4) {
+                slots <<= 1;
+            }
+            table.ensureCapacity(HEADER + slots * SLOT);
+            table.set(0, MAGIC);
+            table.set(1, slots);
+            records.set(0, MAGIC);
+        } else {
+            close(table, records);
+            throw new IOException("Not a phone dedup index: " + directory);
+        }
+
+        // the pairs of an index without them, or with other records, are rebuilt
+        this.pairs = newPages(directory.resolve(PAIRS_FILE));
+        pairs.ensureCapacity(HEADER);
+        if (pairs.get(0) == MAGIC && pairs.get(2) == recordCount) {
+            pairSlots = pairs.get(1);
+        } else {
+            buildPairs(Math.max(initialCapacity, recordCount));
+        }
+    }
+
+    /**
+     * Add a record to a key, a record that is already indexed for the key is not added twice
+     *
+     * @param key      phone number key, greater than 0
+     * @param recordId record ID
+     * @return the number of records of the key, with this record
+     */
+    public long add(long key, long recordId) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Invalid phone dedup key " + key);
+        }
+
+        lock.writeLock().lock();
+        try {
+            long slot = find(table, slots, key);
+            long offset = HEADER + slot * SLOT;
+            if (!addPair(key, recordId)) {
+                return table.get(offset + 2);
+            }
+
+            long head = table.get(offset + 1);
+            long record = ++recordCount;
+            records.ensureCapacity(recordOffset(record) + RECORD);
+            records.set(recordOffset(record), recordId);
+            records.set(recordOffset(record) + 1, head);
+            records.set(1, recordCount);
+
+            long count = table.get(offset + 2) + 1;
+            table.set(offset + 1, record);
+            table.set(offset + 2, count);
+            if (count == 1) {
+                table.set(offset, key);
+                table.set(2, ++keys);
+                if (keys * 4 > slots * 3) {
+                    grow();
+                }
+            }
+            return count;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not grow the phone dedup index", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param key phone number key
+     * @return the number of records of the key, 0 when the key was never added
+     */
+    public long count(long key) {
+        lock.readLock().lock();
+        try {
+            return table.get(HEADER + find(table, slots, key) * SLOT + 2);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param key   phone number key
+     * @param limit maximum number of record IDs
+     * @return the record IDs of the key, the last added first
+     */
+    public long[] get(long key, int limit) {
+        lock.readLock().lock();
+        try {
+            long offset = HEADER + find(table, slots, key) * SLOT;
+            long[] recordIds = new long[(int) Math.min(limit, table.get(offset + 2))];
+            long record = table.get(offset + 1);
+            for (int i = 0; i < recordIds.length; i++) {
+                recordIds[i] = records.get(recordOffset(record));
+                record = records.get(recordOffset(record) + 1);
+            }
+            return recordIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of keys
+     */
+    public long getKeys() {
+        lock.readLock().lock();
+        try {
+            return keys;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of records of all keys
+     */
+    public long getRecords() {
+        lock.readLock().lock();
+        try {
+            return recordCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Write the index to its directory. The records are written before the keys, so an interrupted save leaves
+     * records that are not referenced rather than keys without their records.
+     *
+     * @throws IOException when the index can't be written
+     */
+    public void save() throws IOException {
+        lock.readLock().lock();
+        try {
+            if (store == Store.MMAP) {
+                records.force();
+                pairs.force();
+                table.force();
+            } else {
+                records.save(directory.resolve(RECORDS_FILE), HEADER + recordCount * RECORD);
+                table.save(directory.resolve(TABLE_FILE), HEADER + slots * SLOT);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Save the index and release its memory
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            save();
+            close(table, records);
+            pairs.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void grow() throws IOException {
+        long grownSlots = slots << 1;
+        Path grownFile = directory.resolve(TABLE_FILE + ".grow");
+        Files.deleteIfExists(grownFile);
+
+        LongPages grown = newPages(grownFile);
+        grown.ensureCapacity(HEADER + grownSlots * SLOT);
+        for (long slot = 0; slot < slots; slot++) {
+            long offset = HEADER + slot * SLOT;
+            long key = table.get(offset);
+            if (key != 0) {
+                long grownOffset = HEADER + find(grown, grownSlots, key) * SLOT;
+                grown.set(grownOffset, key);
+                grown.set(grownOffset + 1, table.get(offset + 1));
+                grown.set(grownOffset + 2, table.get(offset + 2));
+            }
+        }
+        grown.set(2, keys);
+        grown.set(1, grownSlots);
+        grown.set(0, MAGIC);
+
+        if (store == Store.MMAP) {
+            // the pages are written to disk by the operating system, even when the application stops
+            Files.move(grownFile, directory.resolve(TABLE_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        table.close();
+        table = grown;
+        slots = grownSlots;
+    }
+
+    /**
+     * @return false when the pair of key and record ID is already indexed
+     */
+    private boolean addPair(long key, long recordId) throws IOException {
+        long offset = HEADER + findPair(pairs, pairSlots, key, recordId) * PAIR;
+        if (pairs.get(offset) != 0) {
+            return false;
+        }
+        pairs.set(offset, key);
+        pairs.set(offset + 1, recordId);
+        // the count of the pairs follows the records, a pairs file that doesn't match is rebuilt
+        pairs.set(2, recordCount + 1);
+        if ((recordCount + 1) * 4 > pairSlots * 3) {
+            growPairs();
+        }
+        return true;
+    }
+
+    private void growPairs() throws IOException {
+        LongPages previous = pairs;
+        long previousSlots = pairSlots;
+        Path grownFile = directory.resolve(PAIRS_FILE + ".grow");
+        Files.deleteIfExists(grownFile);
+
+        pairs = newPages(grownFile);
+        pairSlots = previousSlots << 1;
+        pairs.ensureCapacity(HEADER + pairSlots * PAIR);
+        for (long slot = 0; slot < previousSlots; slot++) {
+            long offset = HEADER + slot * PAIR;
+            if (previous.get(offset) != 0) {
+                putPair(previous.get(offset), previous.get(offset + 1));
+            }
+        }
+        pairs.set(2, previous.get(2));
+        pairs.set(1, pairSlots);
+        pairs.set(0, MAGIC);
+
+        if (store == Store.MMAP) {
+            Files.move(grownFile, directory.resolve(PAIRS_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        previous.close();
+    }
+
+    /**
+     * Fill the pairs from the records of every key
+     *
+     * @param capacity number of pairs before the pairs grow the first time
+     */
+    private void buildPairs(long capacity) throws IOException {
+        pairSlots = MIN_SLOTS;
+        while (pairSlots * 3 < capacity * 4) {
+            pairSlots <<= 1;
+        }
+        pairs.ensureCapacity(HEADER + pairSlots * PAIR);
+        for (long slot = 0; slot < pairSlots; slot++) {
+            pairs.set(HEADER + slot * PAIR, 0);
+            pairs.set(HEADER + slot * PAIR + 1, 0);
+        }
+        for (long slot = 0; slot < slots; slot++) {
+            long key = table.get(HEADER + slot * SLOT);
+            if (key != 0) {
+                for (long record = table.get(HEADER + slot * SLOT + 1); record != 0; record = records.get(recordOffset(record) + 1)) {
+                    putPair(key, records.get(recordOffset(record)));
+                }
+            }
+        }
+        pairs.set(2, recordCount);
+        pairs.set(1, pairSlots);
+        pairs.set(0, MAGIC);
+    }
+
+    private void putPair(long key, long recordId) {
+        long offset = HEADER + findPair(pairs, pairSlots, key, recordId) * PAIR;
+        pairs.set(offset, key);
+        pairs.set(offset + 1, recordId);
+    }
+
+    private LongPages newPages(Path file) throws IOException {
+        switch (store) {
+            case DIRECT:
+                return LongPages.direct();
+            case MMAP:
+                return LongPages.mapped(file);
+            default:
+                return LongPages.heap();
+        }
+    }
+
+    /**
+     * @return the slot of the key, or the empty slot where it is added
+     */
+    private static long find(LongPages table, long slots, long key) {
+        long mask = slots - 1;
+        long slot = mix(key) & mask;
+        while (true) {
+            long slotKey = table.get(HEADER + slot * SLOT);
+            if (slotKey == key || slotKey == 0) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return the slot of the pair, or the empty slot where it is added
+     */
+    private static long findPair(LongPages pairs, long pairSlots, long key, long recordId) {
+        long mask = pairSlots - 1;
+        long slot = mix(mix(key) ^ recordId) & mask;
+        while (true) {
+            long slotKey = pairs.get(HEADER + slot * PAIR);
+            if (slotKey == 0 || slotKey == key && pairs.get(HEADER + slot * PAIR + 1) == recordId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static long recordOffset(long record) {
+        return HEADER + (record - 1) * RECORD;
+    }
+
+    // spread the digits of the key over the bits of the slot, see the finalizer of MurmurHash3
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static void close(LongPages table, LongPages records) throws IOException {
+        try {
+            table.close();
+        } finally {
+            records.close();
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package be.demo.normalizephone.business;
+
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+
+/**
+ * Record formats supported by the streaming normalization, one record per line
+ */
+public enum PhoneRecordFormat {
+
+    NDJSON(MediaType.APPLICATION_NDJSON_VALUE),
+    CSV(PhoneRecordFormat.TEXT_CSV_VALUE);
+
+    public static final String TEXT_CSV_VALUE = "text/csv";
+
+    private final String mediaType;
+
+    PhoneRecordFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Get the record format for a content type
+     *
+     * @param contentType content type, parameters like the charset are ignored
+     * @return the record format
+     */
+    public static PhoneRecordFormat forContentType(String contentType) {
+        MediaType mediaType = MediaType.parseMediaType(contentType);
+
+        return Arrays.stream(values())
+                .filter(format -> MediaType.parseMediaType(format.mediaType).isCompatibleWith(mediaType))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unsupported record format " + contentType));
+    }
+
+}
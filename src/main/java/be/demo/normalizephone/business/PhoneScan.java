@@ -0,0 +1,106 @@
+package be.demo.normalizephone.business;
+
+/**
+ * Single pass over a raw phone number, before it is parsed. The result of the scan is packed in an int, so scanning
+ * doesn't allocate: the number of digits and a few flags.
+ */
+final class PhoneScan {
+
+    // libphonenumber doesn't parse a longer input
+    static final int MAX_INPUT_LENGTH = 250;
+    // libphonenumber needs at least this number of digits to parse an input
+    static final int MIN_DIGITS = 2;
+
+    private static final int DIGITS_MASK = 0xFFFF;
+    private static final int BLANK = 1 << 16;
+    private static final int LETTERS = 1 << 17;
+    private static final int TOO_LONG = 1 << 18;
+    private static final int PLUS = 1 << 19;
+
+    private PhoneScan() {
+    }
+
+    /**
+     * Scan a trimmed phone number
+     *
+     * @param phoneNumber trimmed phone number
+     * @return the packed result of the scan
+     */
+    static int scan(String phoneNumber) {
+        int length = phoneNumber.length();
+        int digits = 0;
+        boolean blank = true;
+        boolean letters = false;
+        // libphonenumber starts the phone number at the first plus or digit
+        boolean started = false;
+        boolean plus = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = phoneNumber.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                blank = false;
+                started = true;
+            } else if (c == '+' || c == '\uFF0B') {
+                plus |= !started;
+                started = true;
+                blank = false;
+            } else if (Character.isLetter(c)) {
+                letters = true;
+                blank = false;
+            } else if (Character.isDigit(c) || Character.isSurrogate(c)) {
+                // other digits, or maybe a digit outside of the basic plane: libphonenumber matches the input on
+                // code points, so count it as a digit
+                digits++;
+                blank = false;
+                started |= Character.isDigit(phoneNumber.codePointAt(i));
+            } else if (blank && !Character.isWhitespace(c)) {
+                blank = false;
+            }
+        }
+
+        int scan = Math.min(digits, DIGITS_MASK);
+        if (blank) {
+            scan |= BLANK;
+        }
+        if (letters) {
+            scan |= LETTERS;
+        }
+        if (length > MAX_INPUT_LENGTH) {
+            scan |= TOO_LONG;
+        }
+        if (plus) {
+            scan |= PLUS;
+        }
+        return scan;
+    }
+
+    static boolean isBlank(int scan) {
+        return (scan & BLANK) != 0;
+    }
+
+    static boolean hasLetters(int scan) {
+        return (scan & LETTERS) != 0;
+    }
+
+    /**
+     * @param scan packed result of the scan
+     * @return true if the first plus or digit of the phone number is a plus, as libphonenumber reads it
+     */
+    static boolean startsWithPlus(int scan) {
+        return (scan & PLUS) != 0;
+    }
+
+    static int getDigits(int scan) {
+        return scan & DIGITS_MASK;
+    }
+
+    /**
+     * @param scan packed result of the scan
+     * @return true if libphonenumber can't parse the phone number: too long or too few digits
+     */
+    static boolean isUnparseable(int scan) {
+        return (scan & TOO_LONG) != 0 || getDigits(scan) < MIN_DIGITS;
+    }
+
+}
@@ -0,0 +1,56 @@
+package be.demo.normalizephone.business;
+
+/**
+ * Durations of the stages of one normalization. The clock is only read when the timings are recorded somewhere.
+ */
+class StageTimings {
+
+    // shared timings that never read the clock, used when nothing is recorded
+    static final StageTimings DISABLED = new StageTimings(false);
+
+    private static final NormalizeStage[] STAGES = NormalizeStage.values();
+
+    private final boolean enabled;
+    private final long[] durations;
+    private long last;
+
+    private StageTimings(boolean enabled) {
+        this.enabled = enabled;
+        this.durations = enabled ? new long[STAGES.length] : null;
+        this.last = enabled ? System.nanoTime() : 0;
+    }
+
+    static StageTimings start() {
+        return new StageTimings(true);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * End a stage, the next stage starts now
+     *
+     * @param stage the ended stage
+     */
+    void end(NormalizeStage stage) {
+        if (enabled) {
+            long now = System.nanoTime();
+            durations[stage.ordinal()] += now - last;
+            last = now;
+        }
+    }
+
+    /**
+     * @param stage a stage
+     * @return the duration of the stage in nanoseconds, 0 when the stage didn't run
+     */
+    long getDuration(NormalizeStage stage) {
+        return enabled ? durations[stage.ordinal()] : 0;
+    }
+
+    static NormalizeStage[] stages() {
+        return STAGES;
+    }
+
+}
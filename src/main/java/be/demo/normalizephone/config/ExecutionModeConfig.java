@@ -0,0 +1,65 @@
+package be.demo.normalizephone.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Execution mode of the HTTP layer. By default Tomcat handles the requests on its pool of platform threads
+ * (server.tomcat.threads.max). In the virtual mode every request gets its own virtual thread, so a burst of
+ * connections waits on the connection limit (server.tomcat.max-connections) instead of on a free worker thread.
+ * Virtual threads need a Java 21 runtime, the application fails to start in the virtual mode on an older runtime.
+ */
+@Slf4j
+@Configuration
+public class ExecutionModeConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "normalize.execution-mode", havingValue = "virtual")
+    public VirtualThreadCustomizer virtualThreadCustomizer() {
+        return new VirtualThreadCustomizer(newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * The application is compiled for Java 11, so the virtual thread executor is looked up at runtime
+     *
+     * @return an executor that starts a new virtual thread for each task
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("normalize.execution-mode=virtual needs a Java 21 runtime, current runtime is Java " + Runtime.version(), e);
+        }
+    }
+
+    public static class VirtualThreadCustomizer implements TomcatProtocolHandlerCustomizer<ProtocolHandler>, DisposableBean {
+
+        private final ExecutorService executor;
+
+        VirtualThreadCustomizer(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void customize(ProtocolHandler protocolHandler) {
+            log.info("Handling HTTP requests on virtual threads");
+            protocolHandler.setExecutor(executor);
+        }
+
+        @Override
+        public void destroy() {
+            // Tomcat doesn't stop an executor it didn't create
+            executor.shutdown();
+        }
+
+    }
+
+}
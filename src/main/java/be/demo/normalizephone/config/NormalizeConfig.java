@@ -0,0 +1,169 @@
+package be.demo.normalizephone.config;
+
+import be.demo.normalizephone.business.AdaptiveConcurrencyLimiter;
+import be.demo.normalizephone.business.CountryInference;
+import be.demo.normalizephone.business.NormalizeFailureReporter;
+import be.demo.normalizephone.business.NormalizeJobs;
+import be.demo.normalizephone.business.NormalizePhone;
+import be.demo.normalizephone.business.NormalizePhoneCache;
+import be.demo.normalizephone.business.NormalizePhoneMetrics;
+import be.demo.normalizephone.business.NormalizeResultStore;
+import be.demo.normalizephone.business.PhoneDedupIndex;
+import be.demo.normalizephone.controller.AdmissionControlFilter;
+import be.demo.normalizephone.controller.DeferredFlushFilter;
+import be.demo.normalizephone.controller.JfrRecordingEndpoint;
+import be.demo.normalizephone.controller.RequestDecompressionFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.Map;
+
+@Configuration
+@EnableConfigurationProperties(NormalizeProperties.class)
+public class NormalizeConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "normalize.cache.enabled", havingValue = "true")
+    public NormalizePhoneCache normalizePhoneCache(NormalizeProperties properties, MeterRegistry registry) {
+        NormalizeProperties.Cache cacheProperties = properties.getCache();
+
+        NormalizePhoneCache cache = new NormalizePhoneCache(cacheProperties.getMaxSize(), cacheProperties.getTtl());
+        cache.bindTo(registry);
+        return cache;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "normalize.result-store.enabled", havingValue = "true")
+    public NormalizeResultStore normalizeResultStore(NormalizeProperties properties, ObjectProvider<CountryInference> inference, MeterRegistry registry)
+            throws IOException {
+        NormalizeProperties.ResultStore storeProperties = properties.getResultStore();
+
+        // the stored results depend on the inference, the store is emptied when it is switched or its regions change
+        CountryInference countryInference = inference.getIfAvailable();
+        String settings = countryInference != null ? "inference=" + String.join(",", countryInference.getRegions()) : "";
+        NormalizeResultStore store = new NormalizeResultStore(Paths.get(storeProperties.getPath()), settings, storeProperties.getMaxRecords(),
+                storeProperties.getRetention(), Clock.systemDefaultZone());
+        store.bindTo(registry);
+        return store;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "normalize.dedup.enabled", havingValue = "true")
+    public PhoneDedupIndex phoneDedupIndex(NormalizeProperties properties, MeterRegistry registry) throws IOException {
+        NormalizeProperties.Dedup dedupProperties = properties.getDedup();
+
+        PhoneDedupIndex index = new PhoneDedupIndex(dedupProperties.getStore(), Paths.get(dedupProperties.getPath()), dedupProperties.getInitialCapacity());
+        registry.gauge("normalize.dedup.keys", index, PhoneDedupIndex::getKeys);
+        registry.gauge("normalize.dedup.records", index, PhoneDedupIndex::getRecords);
+        return index;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "normalize.failures.enabled", havingValue = "true", matchIfMissing = true)
+    public NormalizeFailureReporter normalizeFailureReporter(NormalizeProperties properties, MeterRegistry registry) {
+        NormalizeProperties.Failures failuresProperties = properties.getFailures();
+
+        return new NormalizeFailureReporter(registry, failuresProperties.getSummaryInterval(), failuresProperties.isSamples());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "normalize.inference.enabled", havingValue = "true")
+    public CountryInference countryInference(NormalizeProperties properties, MeterRegistry registry) {
+        CountryInference inference = new CountryInference(properties.getInference().getRegions());
+        inference.bindTo(registry);
+        return inference;
+    }
+
+    @Bean
+    public NormalizePhone.Options normalizePhoneOptions(ObjectProvider<NormalizePhoneCache> cache, ObjectProvider<NormalizeResultStore> store,
+                                                        ObjectProvider<CountryInference> inference, ObjectProvider<NormalizeFailureReporter> failures,
+                                                        ObjectProvider<NormalizePhoneMetrics> metrics) {
+        return NormalizePhone.Options.builder()
+                .cache(cache.getIfAvailable())
+                .store(store.getIfAvailable())
+                .inference(inference.getIfAvailable())
+                .failures(failures.getIfAvailable())
+                .metrics(metrics.getIfAvailable())
+                .build();
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "normalize.jobs.enabled", havingValue = "true")
+    public NormalizeJobs normalizeJobs(NormalizePhone phoneService, ObjectMapper objectMapper, NormalizeProperties properties, MeterRegistry registry)
+            throws IOException {
+        NormalizeJobs jobs = new NormalizeJobs(phoneService, objectMapper, properties.getJobs(), Clock.systemUTC());
+        jobs.bindTo(registry);
+        return jobs;
+    }
+
+    @Bean
+    @ConditionalOnAvailableEndpoint(endpoint = JfrRecordingEndpoint.class)
+    public JfrRecordingEndpoint jfrRecordingEndpoint(NormalizeProperties properties) {
+        NormalizeProperties.Jfr jfrProperties = properties.getJfr();
+
+        return new JfrRecordingEndpoint(jfrProperties.getRecordingDuration(), jfrProperties.getMaxRecordingDuration(), jfrProperties.getEventThreshold());
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "normalize.admission.enabled", havingValue = "true")
+    public AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter(NormalizeProperties properties, MeterRegistry registry) {
+        NormalizeProperties.Admission admissionProperties = properties.getAdmission();
+
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(admissionProperties.getInitialLimit(), admissionProperties.getMinLimit(),
+                admissionProperties.getMaxLimit(), admissionProperties.getTargetLatency(), admissionProperties.getBackoffRatio(),
+                admissionProperties.getLowPriorityShare());
+        limiter.bindTo(registry);
+        return limiter;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "normalize.admission.enabled", havingValue = "true")
+    public FilterRegistrationBean<AdmissionControlFilter> admissionControlFilter(NormalizeProperties properties, AdaptiveConcurrencyLimiter limiter) {
+        NormalizeProperties.Admission admissionProperties = properties.getAdmission();
+
+        FilterRegistrationBean<AdmissionControlFilter> registration = new FilterRegistrationBean<>(
+                new AdmissionControlFilter(limiter, admissionProperties.getPriorityHeader(), admissionProperties.getRetryAfter().toSeconds()));
+        registration.addUrlPatterns("/normalize", "/normalize/*", "/dedup/*");
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "normalize.decompression.enabled", havingValue = "true", matchIfMissing = true)
+    public FilterRegistrationBean<RequestDecompressionFilter> requestDecompressionFilter(NormalizeProperties properties) {
+        // the streams and the jobs don't hold their body in memory, the dedup ingest has its own limit
+        NormalizeProperties.Decompression decompression = properties.getDecompression();
+        Map<String, Long> endpointMaxSizes = Map.of(
+                "/normalize/stream", decompression.getMaxStreamSize().toBytes(),
+                "/jobs", properties.getJobs().getMaxInputSize().toBytes(),
+                "/dedup/ingest", properties.getDedup().getMaxIngestSize().toBytes());
+        FilterRegistrationBean<RequestDecompressionFilter> registration = new FilterRegistrationBean<>(
+                new RequestDecompressionFilter(decompression.getMaxSize().toBytes(), endpointMaxSizes));
+        registration.addUrlPatterns("/normalize", "/normalize/*", "/dedup/*", "/jobs");
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "server.compression.enabled", havingValue = "true")
+    public FilterRegistrationBean<DeferredFlushFilter> deferredFlushFilter() {
+        FilterRegistrationBean<DeferredFlushFilter> registration = new FilterRegistrationBean<>(new DeferredFlushFilter());
+        registration.addUrlPatterns("/normalize", "/normalize/batch");
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "normalize.metrics.enabled", havingValue = "true", matchIfMissing = true)
+    public NormalizePhoneMetrics normalizePhoneMetrics(NormalizeProperties properties, MeterRegistry registry) {
+        return new NormalizePhoneMetrics(registry, properties.getMetrics().getCountries());
+    }
+
+}
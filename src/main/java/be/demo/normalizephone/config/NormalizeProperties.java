@@ -0,0 +1,240 @@
+package be.demo.normalizephone.config;
+
+import be.demo.normalizephone.business.PhoneDedupIndex;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "normalize")
+public class NormalizeProperties {
+
+    // Threads that handle the HTTP requests, see ExecutionModeConfig
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+
+    private Admission admission = new Admission();
+    private Batch batch = new Batch();
+    private Cache cache = new Cache();
+    private Decompression decompression = new Decompression();
+    private Dedup dedup = new Dedup();
+    private Failures failures = new Failures();
+    private Inference inference = new Inference();
+    private Jfr jfr = new Jfr();
+    private Jobs jobs = new Jobs();
+    private Metrics metrics = new Metrics();
+    private ResultStore resultStore = new ResultStore();
+    private Warmup warmup = new Warmup();
+
+    public enum ExecutionMode {
+        // pool of platform threads of Tomcat
+        PLATFORM,
+        // a virtual thread per request, needs a Java 21 runtime
+        VIRTUAL
+    }
+
+    @Data
+    public static class Admission {
+
+        // Limit the requests in flight on the normalization endpoints, adapted to the latency
+        private boolean enabled = false;
+
+        // Limit before any latency is observed, and its bounds
+        private int initialLimit = 20;
+        private int minLimit = 2;
+        private int maxLimit = 200;
+
+        // Single phone number requests slower than this latency lower the limit
+        private Duration targetLatency = Duration.ofMillis(50);
+
+        // Factor of the limit after a slow request
+        private double backoffRatio = 0.9;
+
+        // Share of the limit the low priority requests may use
+        private double lowPriorityShare = 0.5;
+
+        // Request header with the priority, high or low. Without it, batch and stream requests are low priority
+        private String priorityHeader = "X-Priority";
+
+        // Retry-After of a rejected request
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+    }
+
+    @Data
+    public static class Batch {
+
+        // Maximum number of phone numbers accepted in one batch request
+        private int maxSize = 10000;
+
+        // Maximum number of worker threads used for batch normalization, shared by all batch requests
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    }
+
+    @Data
+    public static class Cache {
+
+        // Cache the normalized phone numbers in memory
+        private boolean enabled = false;
+
+        // Maximum number of cached phone numbers, the least used are evicted first
+        private long maxSize = 100000;
+
+        // Time to live of a cached phone number, not set to keep it until it is evicted
+        private Duration ttl;
+
+    }
+
+    @Data
+    public static class Decompression {
+
+        // Decompress the gzip request bodies (Content-Encoding: gzip) of the normalization endpoints
+        private boolean enabled = true;
+
+        // Maximum size of a decompressed request body, a larger body gets 413: a batch is read in memory
+        private DataSize maxSize = DataSize.ofMegabytes(8);
+
+        // Maximum size of a decompressed /normalize/stream request body, it is normalized while it is read
+        private DataSize maxStreamSize = DataSize.ofGigabytes(1);
+
+    }
+
+    @Data
+    public static class Dedup {
+
+        // Index the record IDs per phone number, with the /dedup endpoints
+        private boolean enabled = false;
+
+        // Memory of the index: heap, direct (outside the heap) or mmap (memory-mapped files)
+        private PhoneDedupIndex.Store store = PhoneDedupIndex.Store.HEAP;
+
+        // Directory of the index files
+        private String path = "dedup";
+
+        // Number of phone numbers before the index grows the first time
+        private long initialCapacity = 1000000;
+
+        // Maximum number of record IDs returned per phone number
+        private int maxRecordIds = 100;
+
+        // Maximum size of a decompressed /dedup/ingest request body, a larger body gets 413
+        private DataSize maxIngestSize = DataSize.ofMegabytes(64);
+
+    }
+
+    @Data
+    public static class Failures {
+
+        // Count the phone numbers that could not be parsed per reason, and log a summary per interval
+        private boolean enabled = true;
+
+        // Interval of the summaries in the log, 0 to only count the failures
+        private Duration summaryInterval = Duration.ofMinutes(1);
+
+        // Log a sample phone number per reason, with its digits masked but the last 2
+        private boolean samples = true;
+
+    }
+
+    @Data
+    public static class Inference {
+
+        // Infer the country of the national phone numbers that are not valid for their default country
+        private boolean enabled = false;
+
+        // Ranked candidate regions, the first region for which a phone number is valid is the best match
+        private List<String> regions = List.of("BE", "NL", "FR", "LU", "DE");
+
+    }
+
+    @Data
+    public static class Jfr {
+
+        // Duration of a recording of the jfr actuator endpoint without duration
+        private Duration recordingDuration = Duration.ofSeconds(30);
+
+        // Maximum duration of a recording of the jfr actuator endpoint
+        private Duration maxRecordingDuration = Duration.ofMinutes(5);
+
+        // Normalizations faster than the threshold have no JFR event, for a recording without threshold
+        private Duration eventThreshold = Duration.ofMillis(1);
+
+    }
+
+    @Data
+    public static class Jobs {
+
+        // Normalize files asynchronously with the /jobs endpoints
+        private boolean enabled = false;
+
+        // Directory of the jobs, with the input, the result and the state of each job
+        private String path = "jobs";
+
+        // Number of jobs running at the same time, the other jobs wait in the queue by priority
+        private int concurrency = 1;
+
+        // Worker threads shared by the running jobs, at the lowest thread priority, next to the batch workers
+        private int parallelism = 1;
+
+        // Maximum number of queued jobs, more jobs get 429
+        private int maxQueued = 100;
+
+        // Maximum size of the input of a job, a larger input gets 413
+        private DataSize maxInputSize = DataSize.ofGigabytes(1);
+
+        // Finished jobs are removed after the retention, not set to keep them
+        private Duration retention = Duration.ofDays(7);
+
+    }
+
+    @Data
+    public static class Metrics {
+
+        // Record the latency per stage and the number of normalized phone numbers per validity and country
+        private boolean enabled = true;
+
+        // Countries with their own tag value on the counters, all other countries are tagged OTHER
+        private List<String> countries = List.of("BE", "FR", "NL", "LU", "DE");
+
+    }
+
+    @Data
+    public static class ResultStore {
+
+        // Keep the normalized phone numbers in a memory-mapped file, so they survive a restart
+        private boolean enabled = false;
+
+        // File of the store, emptied when it was written by an other version of libphonenumber or with other inference
+        // settings
+        private String path = "store/results.bin";
+
+        // Maximum number of stored phone numbers, 48 bytes each in the file and up to 43 bytes each in the index on the
+        // heap (32 MB for 1000000). A full store replaces a phone number not used recently for each new one
+        private long maxRecords = 1000000;
+
+        // Phone numbers not used during the retention are removed at startup, not set to keep them
+        private Duration retention = Duration.ofDays(30);
+
+    }
+
+    @Data
+    public static class Warmup {
+
+        // Warm up the normalization at startup, before the application is ready
+        private boolean enabled = true;
+
+        // Regions to warm up, all supported regions when empty
+        private List<String> regions = List.of();
+
+        // Number of times the example numbers of the regions are normalized
+        private int rounds = 20;
+
+        // Stop the application after the warm-up, for the training run of the class data sharing archive
+        private boolean exit = false;
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package be.demo.normalizephone.config;
+
+import be.demo.normalizephone.beans.OutputField;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+/**
+ * Output fields in a request parameter, by the name of the field in OutputPhone: ?outputs=phoneIntNormalized,phoneType
+ */
+@Component
+public class OutputFieldConverter implements Converter<String, OutputField> {
+
+    @Override
+    public OutputField convert(String source) {
+        return OutputField.of(source.trim());
+    }
+
+}
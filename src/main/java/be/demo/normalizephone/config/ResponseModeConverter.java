@@ -0,0 +1,18 @@
+package be.demo.normalizephone.config;
+
+import be.demo.normalizephone.beans.ResponseMode;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+/**
+ * Response mode in a request parameter, in any case: ?response=lean
+ */
+@Component
+public class ResponseModeConverter implements Converter<String, ResponseMode> {
+
+    @Override
+    public ResponseMode convert(String source) {
+        return ResponseMode.of(source);
+    }
+
+}
@@ -0,0 +1,85 @@
+package be.demo.normalizephone.controller;
+
+import be.demo.normalizephone.business.AdaptiveConcurrencyLimiter;
+import be.demo.normalizephone.business.AdaptiveConcurrencyLimiter.Priority;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Admission control in front of the normalization endpoints, see AdaptiveConcurrencyLimiter. The priority is taken
+ * from a request header (high or low), the batch and stream requests are low priority when they don't have the
+ * header. A rejected request gets 429 when it is low priority and 503 when it is high priority, with a Retry-After.
+ * <p>
+ * Only the latency of the single phone number requests adapts the limit, the latency of a batch or a stream depends
+ * on its size.
+ */
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final String priorityHeader;
+    private final long retryAfterSeconds;
+
+    /**
+     * @param limiter           limit of the requests in flight
+     * @param priorityHeader    request header with the priority
+     * @param retryAfterSeconds Retry-After of a rejected request
+     */
+    public AdmissionControlFilter(AdaptiveConcurrencyLimiter limiter, String priorityHeader, long retryAfterSeconds) {
+        this.limiter = limiter;
+        this.priorityHeader = priorityHeader;
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        boolean single = "/normalize".equals(request.getRequestURI().substring(request.getContextPath().length()));
+        Priority priority = priority(request.getHeader(priorityHeader), single);
+
+        if (!limiter.tryAcquire(priority)) {
+            reject(response, priority);
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = false;
+        } finally {
+            // a failure is often fast, it says nothing about the load
+            limiter.release(single && !failed ? System.nanoTime() - start : -1);
+        }
+    }
+
+    private static Priority priority(String header, boolean single) {
+        if (header != null) {
+            if ("high".equalsIgnoreCase(header.trim())) {
+                return Priority.HIGH;
+            }
+            if ("low".equalsIgnoreCase(header.trim())) {
+                return Priority.LOW;
+            }
+        }
+        return single ? Priority.HIGH : Priority.LOW;
+    }
+
+    private void reject(HttpServletResponse response, Priority priority) throws IOException {
+        HttpStatus status = priority == Priority.LOW ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE;
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write("{\"status\":" + status.value() + ",\"error\":\"" + status.getReasonPhrase()
+                + "\",\"message\":\"The service is overloaded, retry later\"}");
+    }
+
+}
@@ -0,0 +1,127 @@
+package be.demo.normalizephone.controller;
+
+import be.demo.normalizephone.business.NormalizeEvent;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Actuator endpoint /actuator/jfr: a Java Flight Recorder recording of the running service for a bounded duration,
+ * returned as a .jfr file, with the normalization events of NormalizeEvent. Only one recording runs at a time, a
+ * request during a recording gets 429.
+ */
+@Slf4j
+@WebEndpoint(id = "jfr")
+public class JfrRecordingEndpoint {
+
+    private final Duration defaultDuration;
+    private final Duration maxDuration;
+    private final Duration defaultThreshold;
+    private final AtomicBoolean recording = new AtomicBoolean();
+
+    /**
+     * @param defaultDuration  duration of a recording without duration
+     * @param maxDuration      maximum duration of a recording
+     * @param defaultThreshold normalizations faster than the threshold are not recorded, for a recording without
+     *                         threshold
+     */
+    public JfrRecordingEndpoint(Duration defaultDuration, Duration maxDuration, Duration defaultThreshold) {
+        this.defaultDuration = defaultDuration;
+        this.maxDuration = maxDuration;
+        this.defaultThreshold = defaultThreshold;
+    }
+
+    /**
+     * Record for a duration and return the recording
+     *
+     * @param duration  duration of the recording, at most the maximum duration
+     * @param settings  JFR settings: default (low overhead) or profile (more samples)
+     * @param threshold normalizations faster than the threshold are not recorded
+     * @return the .jfr file, 429 during an other recording, 400 for unknown settings
+     * @throws IOException when the recording can't be written
+     */
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> record(@Nullable Duration duration, @Nullable String settings, @Nullable Duration threshold) throws IOException {
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings != null ? settings : "default");
+        } catch (ParseException | IOException e) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_BAD_REQUEST);
+        }
+        if (!recording.compareAndSet(false, true)) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_TOO_MANY_REQUESTS);
+        }
+
+        Duration recorded = duration == null || duration.isNegative() || duration.isZero() ? defaultDuration
+                : duration.compareTo(maxDuration) > 0 ? maxDuration : duration;
+        Path file = Files.createTempFile("normalize-", ".jfr");
+        try (Recording jfr = new Recording(configuration)) {
+            jfr.setName("actuator-jfr");
+            jfr.enable(NormalizeEvent.NAME).withThreshold(threshold != null ? threshold : defaultThreshold);
+            log.info("Starting a JFR recording of {} with the {} settings", recorded, configuration.getName());
+            jfr.start();
+            try {
+                Thread.sleep(recorded.toMillis());
+            } catch (InterruptedException e) {
+                // return what is recorded so far
+                Thread.currentThread().interrupt();
+            }
+            jfr.stop();
+            jfr.dump(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        } finally {
+            recording.set(false);
+        }
+        return new WebEndpointResponse<>(new TemporaryFileSystemResource(file.toFile()), WebEndpointResponse.STATUS_OK);
+    }
+
+    /**
+     * The recording file, removed once it is read
+     */
+    private static final class TemporaryFileSystemResource extends FileSystemResource {
+
+        private TemporaryFileSystemResource(File file) {
+            super(file);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Files.deleteIfExists(getFile().toPath());
+                    }
+                }
+            };
+        }
+
+        @Override
+        public boolean isFile() {
+            // read through getInputStream, not straight from the file
+            return false;
+        }
+
+    }
+
+}
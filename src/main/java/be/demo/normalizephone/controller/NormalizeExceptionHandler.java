@@ -0,0 +1,60 @@
+package be.demo.normalizephone.controller;
+
+import be.demo.normalizephone.business.NormalizeException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * HTTP status of the normalization exceptions and of the too large request bodies, with the standard error body
+ */
+@RestControllerAdvice
+public class NormalizeExceptionHandler {
+
+    @ExceptionHandler
+    public void handle(NormalizeException exception, HttpServletResponse response) throws IOException {
+        response.sendError(status(exception.getReason()).value(), exception.getMessage());
+    }
+
+    @ExceptionHandler
+    public void handle(RequestTooLargeException exception, HttpServletResponse response) throws IOException {
+        response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(), exception.getMessage());
+    }
+
+    /**
+     * A body past its maximum size, read by a message converter: Jackson wraps the failed read
+     */
+    @ExceptionHandler
+    public void handle(HttpMessageNotReadableException exception, HttpServletResponse response) throws IOException {
+        for (Throwable cause = exception.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof RequestTooLargeException) {
+                handle((RequestTooLargeException) cause, response);
+                return;
+            }
+        }
+        // the other unreadable messages get the default 400 of Spring
+        throw exception;
+    }
+
+    static HttpStatus status(NormalizeException.Reason reason) {
+        switch (reason) {
+            case TOO_LARGE:
+                return HttpStatus.PAYLOAD_TOO_LARGE;
+            case INTERRUPTED:
+                return HttpStatus.SERVICE_UNAVAILABLE;
+            case TOO_MANY_QUEUED:
+                return HttpStatus.TOO_MANY_REQUESTS;
+            case NOT_FOUND:
+                return HttpStatus.NOT_FOUND;
+            case NOT_FINISHED:
+                return HttpStatus.CONFLICT;
+            default:
+                return HttpStatus.INTERNAL_SERVER_ERROR;
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package be.demo.normalizephone.controller;
+
+import be.demo.normalizephone.beans.NormalizeJob;
+import be.demo.normalizephone.business.NormalizeJobs;
+import be.demo.normalizephone.business.PhoneRecordFormat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.Locale;
+
+@RestController
+@ConditionalOnProperty(name = "normalize.jobs.enabled", havingValue = "true")
+public class NormalizeJobController {
+
+    private final NormalizeJobs jobService;
+
+    @Autowired
+    public NormalizeJobController(NormalizeJobs jobService) {
+        this.jobService = jobService;
+    }
+
+    @PostMapping(value = "/jobs", consumes = {MediaType.APPLICATION_NDJSON_VALUE, PhoneRecordFormat.TEXT_CSV_VALUE})
+    public ResponseEntity<NormalizeJob> submitJob(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, @RequestParam(defaultValue = "0") int priority,
+                                                  HttpServletRequest request) throws IOException {
+        NormalizeJob job = jobService.submit(request.getInputStream(), PhoneRecordFormat.forContentType(contentType), priority);
+
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentRequest().replaceQuery(null).path("/{id}").buildAndExpand(job.getId()).toUri())
+                .body(job);
+    }
+
+    @GetMapping(value = "/jobs/{id}")
+    public NormalizeJob getJob(@PathVariable String id) {
+        return jobService.get(id);
+    }
+
+    @GetMapping(value = "/jobs/{id}/result")
+    public ResponseEntity<Resource> getJobResult(@PathVariable String id) {
+        PhoneRecordFormat format = jobService.getFormat(id);
+        Resource result = new FileSystemResource(jobService.getResult(id));
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getMediaType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(id + "." + format.name().toLowerCase(Locale.ROOT)).build().toString())
+                .body(result);
+    }
+
+    @DeleteMapping(value = "/jobs/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void deleteJob(@PathVariable String id) throws IOException {
+        jobService.delete(id);
+    }
+
+}
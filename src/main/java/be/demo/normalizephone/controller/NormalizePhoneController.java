@@ -1,31 +1,93 @@
 package be.demo.normalizephone.controller;
 
+import be.demo.normalizephone.beans.CompactInputPhone;
+import be.demo.normalizephone.beans.CompactPhone;
 import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.beans.OutputField;
 import be.demo.normalizephone.beans.OutputPhone;
 import be.demo.normalizephone.beans.Phone;
+import be.demo.normalizephone.beans.ResponseMode;
 import be.demo.normalizephone.business.NormalizePhone;
+import be.demo.normalizephone.business.NormalizePhoneBatch;
+import be.demo.normalizephone.business.NormalizePhoneStream;
+import be.demo.normalizephone.business.PhoneRecordFormat;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
 
 @RestController
 public class NormalizePhoneController {
 
     private final NormalizePhone phoneService;
+    private final NormalizePhoneBatch batchService;
+    private final NormalizePhoneStream streamService;
 
     @Autowired
-    public NormalizePhoneController(NormalizePhone phoneService) {
+    public NormalizePhoneController(NormalizePhone phoneService, NormalizePhoneBatch batchService, NormalizePhoneStream streamService) {
         this.phoneService = phoneService;
+        this.batchService = batchService;
+        this.streamService = streamService;
     }
 
     @PostMapping(value = "/normalize")
-    public Phone normalizePhone(@RequestBody InputPhone inputPhone) throws IOException {
-        OutputPhone normalizedPhone = phoneService.normalize(inputPhone);
+    public Phone normalizePhone(@RequestBody InputPhone inputPhone, @RequestParam(required = false) Set<OutputField> outputs,
+                                @RequestParam(name = "response", required = false) ResponseMode responseMode) {
+        OutputPhone normalizedPhone = phoneService.normalize(inputPhone, OutputField.orDefault(outputs, OutputField.ALL));
 
-        return new Phone(inputPhone, normalizedPhone);
+        return new Phone(inputPhone, normalizedPhone).in(ResponseMode.orDefault(responseMode));
     }
 
-}
\ No newline at end of file
+    @PostMapping(value = "/normalize", consumes = CompactPhone.MEDIA_TYPE, produces = CompactPhone.MEDIA_TYPE)
+    public CompactPhone normalizeCompactPhone(@RequestBody CompactInputPhone inputPhone) {
+        OutputPhone normalizedPhone = phoneService.normalize(inputPhone.toInputPhone());
+
+        return CompactPhone.of(normalizedPhone);
+    }
+
+    @PostMapping(value = "/normalize/batch")
+    public List<Phone> normalizePhones(@RequestBody List<InputPhone> inputPhones, @RequestParam(required = false) Set<OutputField> outputs,
+                                       @RequestParam(name = "response", required = false) ResponseMode responseMode) {
+        List<Phone> phones = batchService.normalize(inputPhones, OutputField.orDefault(outputs, OutputField.ALL));
+        if (responseMode != null && responseMode != ResponseMode.FULL) {
+            phones.replaceAll(phone -> phone.in(responseMode));
+        }
+        return phones;
+    }
+
+    @PostMapping(value = "/normalize/stream", consumes = {MediaType.APPLICATION_NDJSON_VALUE, PhoneRecordFormat.TEXT_CSV_VALUE})
+    public void normalizePhoneStream(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, @RequestParam(required = false) Set<OutputField> outputs,
+                                     @RequestParam(name = "response", required = false) ResponseMode responseMode,
+                                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        PhoneRecordFormat format = PhoneRecordFormat.forContentType(contentType);
+        // a CSV record has fixed columns, the lean and id envelopes only exist in NDJSON
+        if (format == PhoneRecordFormat.CSV && responseMode != null && responseMode != ResponseMode.FULL) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The response mode " + responseMode + " is not supported for CSV streams");
+        }
+        response.setContentType(format.getMediaType());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+
+        try (InputStreamReader input = new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8);
+             Writer output = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8))) {
+            streamService.normalize(input, output, format, OutputField.orDefault(outputs, OutputField.ALL), ResponseMode.orDefault(responseMode));
+        }
+    }
+
+}
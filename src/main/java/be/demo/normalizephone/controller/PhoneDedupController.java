@@ -0,0 +1,36 @@
+package be.demo.normalizephone.controller;
+
+import be.demo.normalizephone.beans.DedupMatch;
+import be.demo.normalizephone.beans.DedupRecord;
+import be.demo.normalizephone.beans.InputPhone;
+import be.demo.normalizephone.business.PhoneDedup;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@ConditionalOnProperty(name = "normalize.dedup.enabled", havingValue = "true")
+public class PhoneDedupController {
+
+    private final PhoneDedup dedupService;
+
+    @Autowired
+    public PhoneDedupController(PhoneDedup dedupService) {
+        this.dedupService = dedupService;
+    }
+
+    @PostMapping(value = "/dedup/ingest")
+    public List<DedupMatch> ingest(@RequestBody List<DedupRecord> dedupRecords) {
+        return dedupService.ingest(dedupRecords);
+    }
+
+    @PostMapping(value = "/dedup/query")
+    public DedupMatch query(@RequestBody InputPhone inputPhone) {
+        return dedupService.query(inputPhone);
+    }
+
+}
@@ -0,0 +1,190 @@
+package be.demo.normalizephone.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompression of the gzip request bodies (Content-Encoding: gzip) of the normalization endpoints, for the bulk
+ * uploads. The decompressed body is bounded: reading past the maximum size fails with 413, so a small compressed body
+ * can't fill the memory or the disk. The endpoints that don't hold their body in memory have their own, larger
+ * maximum. Other content encodings get 415.
+ */
+public class RequestDecompressionFilter extends OncePerRequestFilter {
+
+    private final long maxSize;
+    private final Map<String, Long> endpointMaxSizes;
+
+    /**
+     * @param maxSize          maximum size of a decompressed request body in bytes
+     * @param endpointMaxSizes maximum size in bytes per request path, instead of the maximum size
+     */
+    public RequestDecompressionFilter(long maxSize, Map<String, Long> endpointMaxSizes) {
+        this.maxSize = maxSize;
+        this.endpointMaxSizes = Map.copyOf(endpointMaxSizes);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        String encoding = request.getHeader(HttpHeaders.CONTENT_ENCODING);
+        if (encoding == null || encoding.isBlank() || "identity".equalsIgnoreCase(encoding.trim())) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        if (!"gzip".equalsIgnoreCase(encoding.trim()) && !"x-gzip".equalsIgnoreCase(encoding.trim())) {
+            HttpStatus status = HttpStatus.UNSUPPORTED_MEDIA_TYPE;
+            response.setStatus(status.value());
+            response.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write("{\"status\":" + status.value() + ",\"error\":\"" + status.getReasonPhrase()
+                    + "\",\"message\":\"Unsupported content encoding, only gzip is supported\"}");
+            return;
+        }
+
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        filterChain.doFilter(new DecompressedRequest(request, endpointMaxSizes.getOrDefault(path, maxSize)), response);
+    }
+
+    /**
+     * The request with its decompressed body, without the content encoding and the compressed length
+     */
+    private static final class DecompressedRequest extends HttpServletRequestWrapper {
+
+        private final long maxSize;
+        private ServletInputStream inputStream;
+
+        private DecompressedRequest(HttpServletRequest request, long maxSize) {
+            super(request);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                inputStream = new DecompressedInputStream(new GZIPInputStream(super.getInputStream(), 8192), maxSize);
+            }
+            return inputStream;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(), encoding != null ? encoding : StandardCharsets.UTF_8.name()));
+        }
+
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isRemoved(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return isRemoved(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            List<String> names = Collections.list(super.getHeaderNames());
+            names.removeIf(DecompressedRequest::isRemoved);
+            return Collections.enumeration(names);
+        }
+
+        private static boolean isRemoved(String name) {
+            return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name) || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+        }
+
+    }
+
+    /**
+     * Decompressed body, failing with RequestTooLargeException past the maximum size
+     */
+    private static final class DecompressedInputStream extends ServletInputStream {
+
+        private final InputStream input;
+        private final long maxSize;
+        private long size;
+        private boolean finished;
+
+        private DecompressedInputStream(InputStream input, long maxSize) {
+            this.input = input;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = input.read();
+            count(b < 0 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = input.read(b, off, len);
+            count(read);
+            return read;
+        }
+
+        private void count(int read) throws RequestTooLargeException {
+            if (read < 0) {
+                finished = true;
+                return;
+            }
+            size += read;
+            if (size > maxSize) {
+                throw new RequestTooLargeException("The decompressed request body exceeds the maximum of " + maxSize + " bytes");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            throw new UnsupportedOperationException("Non-blocking reads of a decompressed request body are not supported");
+        }
+
+    }
+
+}
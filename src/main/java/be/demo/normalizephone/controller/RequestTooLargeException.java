@@ -0,0 +1,15 @@
+package be.demo.normalizephone.controller;
+
+import java.io.IOException;
+
+/**
+ * A decompressed request body past its maximum size. It is an IOException, so the readers of the body pass it on as a
+ * failed read: NormalizeExceptionHandler maps it to 413, also when it is the cause of an unreadable message.
+ */
+public class RequestTooLargeException extends IOException {
+
+    public RequestTooLargeException(String message) {
+        super(message);
+    }
+
+}
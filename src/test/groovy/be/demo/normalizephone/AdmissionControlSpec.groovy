@@ -0,0 +1,131 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.business.AdaptiveConcurrencyLimiter
+import be.demo.normalizephone.business.AdaptiveConcurrencyLimiter.Priority
+import io.micrometer.core.instrument.MeterRegistry
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.MockMvc
+import spock.lang.Specification
+
+import java.time.Duration
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+
+@SpringBootTest(properties = ["normalize.admission.enabled=true", "normalize.admission.initial-limit=4", "normalize.admission.target-latency=1m",
+        "normalize.admission.retry-after=2s"])
+@AutoConfigureMockMvc
+class AdmissionControlSpec extends Specification {
+
+    static final String PHONE = '{"phone":"0479445566","defaultCountryCode":"BE"}'
+    static final long FAST = Duration.ofMillis(1).toNanos()
+    static final long SLOW = Duration.ofSeconds(1).toNanos()
+
+    @Autowired
+    MockMvc mockMvc
+
+    @Autowired
+    AdaptiveConcurrencyLimiter limiter
+
+    @Autowired
+    MeterRegistry registry
+
+    static AdaptiveConcurrencyLimiter limiter(int initialLimit) {
+        new AdaptiveConcurrencyLimiter(initialLimit, 2, 10, Duration.ofMillis(50), 0.5, 0.5)
+    }
+
+    def 'the limit goes down after slow requests and up after fast requests while it is in use'() {
+
+        given: 'A limit of 8'
+        def limiter = limiter(8)
+
+        when: 'A slow request completes'
+        limiter.tryAcquire(Priority.HIGH)
+        limiter.release(SLOW)
+
+        then: 'The limit is halved'
+        limiter.limit == 4
+
+        when: 'A fast request completes while the limit is not in use'
+        limiter.tryAcquire(Priority.HIGH)
+        limiter.release(FAST)
+
+        then: 'The limit does not grow'
+        limiter.limit == 4
+
+        when: 'Slow requests keep completing'
+        3.times {
+            limiter.tryAcquire(Priority.HIGH)
+            limiter.release(SLOW)
+        }
+
+        then: 'The limit stays at its minimum'
+        limiter.limit == 2
+
+        when: 'Fast requests complete while the whole limit is in use'
+        10.times {
+            int admitted = 0
+            while (limiter.tryAcquire(Priority.HIGH)) {
+                admitted++
+            }
+            admitted.times { limiter.release(FAST) }
+        }
+
+        then: 'The limit grows up to its maximum'
+        limiter.limit == 10
+        limiter.inFlight == 0
+    }
+
+    def 'low priority requests may only use a share of the limit'() {
+
+        given: 'A limit of 4, of which low priority requests may use 2'
+        def limiter = limiter(4)
+
+        expect: 'Low priority requests are rejected once 2 requests are in flight, high priority requests once 4 are'
+        limiter.tryAcquire(Priority.LOW)
+        limiter.tryAcquire(Priority.LOW)
+        !limiter.tryAcquire(Priority.LOW)
+        limiter.tryAcquire(Priority.HIGH)
+        limiter.tryAcquire(Priority.HIGH)
+        !limiter.tryAcquire(Priority.HIGH)
+    }
+
+    def 'an overloaded service rejects requests at once with a retry hint, by priority'() {
+
+        given: 'The limit of the low priority requests is in use'
+        int acquired = 2
+        acquired.times { assert limiter.tryAcquire(Priority.HIGH) }
+
+        expect: 'A batch and an explicit low priority request are rejected with 429'
+        mockMvc.perform(post("/normalize/batch").contentType(MediaType.APPLICATION_JSON).content("[$PHONE]"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "2"))
+        mockMvc.perform(post("/normalize").header("X-Priority", "low").contentType(MediaType.APPLICATION_JSON).content(PHONE))
+                .andExpect(status().isTooManyRequests())
+
+        and: 'A single phone number request is high priority, and is admitted'
+        mockMvc.perform(post("/normalize").contentType(MediaType.APPLICATION_JSON).content(PHONE))
+                .andExpect(status().isOk())
+
+        when: 'The whole limit is in use'
+        while (limiter.tryAcquire(Priority.HIGH)) {
+            acquired++
+        }
+
+        then: 'A high priority request is rejected with 503'
+        mockMvc.perform(post("/normalize").contentType(MediaType.APPLICATION_JSON).content(PHONE))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "2"))
+        registry.get("normalize.admission.rejected").tag("priority", "LOW").counter().count() == 2
+        registry.get("normalize.admission.rejected").tag("priority", "HIGH").counter().count() == 2
+        registry.get("normalize.admission.inflight").gauge().value() == acquired
+
+        cleanup:
+        acquired.times { limiter.release(-1) }
+    }
+
+}
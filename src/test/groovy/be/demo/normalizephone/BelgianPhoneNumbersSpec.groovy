@@ -0,0 +1,262 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone
+import be.demo.normalizephone.business.NormalizePhone
+import com.google.i18n.phonenumbers.metadata.DefaultMetadataDependenciesProvider
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+import static be.demo.normalizephone.NormalizePhoneDifferentialSpec.LegacyNormalizePhone
+import static be.demo.normalizephone.NormalizePhoneDifferentialSpec.outcome
+
+/**
+ * Compare the fast path of the Belgian phone numbers with the original implementation, over the Belgian number space:
+ * every prefix of 5 digits of the national numbers of 8 and 9 digits, with random last digits. The Belgian metadata is
+ * checked to match all or none of the national numbers with the same 5 digit prefix and length, so the last digits
+ * can't change the outcome that the fast path probes.
+ */
+class BelgianPhoneNumbersSpec extends Specification {
+
+    @Subject
+    NormalizePhone normalizePhone = new NormalizePhone()
+
+    @Shared
+    Random random = new Random(20231019)
+
+    def 'the fast path gives the same result as the original implementation for national numbers of #length digits'() {
+
+        when: 'We normalize a national number of every prefix with both implementations'
+        def differences = []
+        for (int prefix = 10000; prefix < 100000; prefix++) {
+            def phone = new InputPhone(decorate(prefix + lastDigits(length - 5), random), random.nextInt(5) == 0 ? " be " : "BE")
+            if (outcome { normalizePhone.normalize(phone) } != outcome { LegacyNormalizePhone.normalize(phone) }) {
+                differences << phone
+            }
+        }
+
+        then: 'There are no differences'
+        differences.isEmpty()
+
+        where:
+        length << [8, 9]
+
+    }
+
+    def 'every pattern of the Belgian metadata matches all or none of the national numbers with the same 5 digit prefix and length'() {
+
+        given: 'The patterns of the number types and of the formats, with their leading digits'
+        def metadata = DefaultMetadataDependenciesProvider.instance.phoneNumberMetadataSource.getMetadataForRegion("BE")
+        def patterns = [metadata.generalDesc, metadata.fixedLine, metadata.mobile, metadata.tollFree, metadata.premiumRate, metadata.sharedCost,
+                        metadata.personalNumber, metadata.voip, metadata.pager, metadata.uan, metadata.voicemail, metadata.noInternationalDialling]
+                .findAll { it.nationalNumberPattern }.collect { [it.nationalNumberPattern, true] }
+        metadata.numberFormatList.each { format ->
+            patterns << [format.pattern, true]
+            (0..<format.leadingDigitsPatternCount).each { patterns << [format.getLeadingDigitsPattern(it), false] }
+        }
+        def boxes = patterns.collect { pattern, full -> [pattern, PatternBoxes.of(pattern), full] }
+
+        when: 'We look for the prefixes and lengths where the last digits decide whether a pattern matches'
+        def undecided = []
+        for (int prefix = 10000; prefix < 100000; prefix++) {
+            for (int length = 8; length <= 9; length++) {
+                boxes.each { pattern, patternBoxes, full ->
+                    if (!decided(patternBoxes, prefix as String, length, full)) {
+                        undecided << "$prefix/$length/$pattern"
+                    }
+                }
+            }
+        }
+
+        then: 'There are none'
+        patterns.size() > 10
+        undecided.isEmpty()
+
+    }
+
+    @Unroll
+    def 'the check of #pattern for the prefix #prefix of the national numbers of 9 digits: #result'() {
+
+        expect:
+        decided(PatternBoxes.of(pattern), prefix, 9, full) == (result == 'decided')
+
+        where:
+        pattern                             | full  | prefix  || result
+        /4[5-9]\d{7}/                       | true  | "47944" || 'decided'
+        /4[5-9]\d{7}/                       | true  | "41944" || 'decided'
+        /(?:1[0-69]|7879)[0-4]\d{4}/        | true  | "78790" || 'decided'
+        /78790[0-4]\d{3}/                   | true  | "78790" || 'undecided'
+        /78790[0-4]\d{3}|78790[5-9]\d{3}/   | true  | "78790" || 'decided'
+        /787901?\d{3}/                      | true  | "78790" || 'undecided'
+        /(\d{3})(\d{2})(\d{2})(\d{2})/      | true  | "12345" || 'decided'
+        /4[23]/                             | false | "42123" || 'decided'
+        /4567[0-4]8/                        | false | "45670" || 'undecided'
+    }
+
+    def 'phone numbers with other lengths or formats give the same result as the original implementation'() {
+
+        when: 'We normalize phone numbers that are not handled by the fast path with both implementations'
+        def phones = ["+320479445566", "00320479445566", "0032 479 44 55 66", "+32 (0)2 555 96 56", "32479445566", "479445566", "0479445566#1",
+                      "0479 44 55 66 / 0479 44 55 67", "++32479445566", "0479+445566", "+33142685300", "0033142685300", "0479 44 55 6", "0479 44 55 666"]
+        (1000..9999).each { prefix -> phones << "0" + prefix + lastDigits(3) << "0" + prefix + lastDigits(6) << "+32" + prefix + lastDigits(3) }
+        def differences = phones.collect { new InputPhone(it, "BE") }.findAll { phone ->
+            outcome { normalizePhone.normalize(phone) } != outcome { LegacyNormalizePhone.normalize(phone) }
+        }
+
+        then: 'There are no differences'
+        differences.isEmpty()
+
+    }
+
+    /**
+     * @param full whether the pattern matches the whole national number, or only its first digits
+     * @return whether the boxes match all or none of the national numbers with the prefix and length
+     */
+    private static boolean decided(List<List<Integer>> boxes, String prefix, int length, boolean full) {
+        // the last positions of the boxes that match the prefix, the first digits of a leading digits pattern are followed by any digit
+        def rest = boxes.findAll { box -> (full ? box.size() == length : box.size() <= length)
+                && (0..<Math.min(prefix.length(), box.size())).every { (box[it] >> Character.digit(prefix.charAt(it), 10) & 1) != 0 } }
+                .collect { box -> (prefix.length()..<length).collect { it < box.size() ? box[it] : PatternBoxes.ALL } }
+        return rest.isEmpty() || covers(rest)
+    }
+
+    // whether the union of the boxes holds every sequence of digits
+    private static boolean covers(List<List<Integer>> boxes) {
+        if (boxes.any { box -> box.every { it == PatternBoxes.ALL } }) {
+            return true
+        }
+        return !boxes.isEmpty() && (0..9).every { digit ->
+            covers(boxes.findAll { (it[0] >> digit & 1) != 0 }.collect { it.drop(1) })
+        }
+    }
+
+    /**
+     * The national numbers a pattern of the metadata matches, as a union of boxes: the digits of each position.
+     * Only the syntax of the metadata patterns is supported: digits, \d, digit classes, groups, alternatives, ? and {n,m}.
+     */
+    static class PatternBoxes {
+
+        static final int ALL = 0x3ff
+
+        private final String pattern
+        private int position
+
+        static List<List<Integer>> of(String pattern) {
+            def parser = new PatternBoxes(pattern)
+            def boxes = parser.alternatives()
+            assert parser.position == pattern.length(): "Unsupported pattern $pattern"
+            return boxes
+        }
+
+        private PatternBoxes(String pattern) {
+            this.pattern = pattern
+        }
+
+        private List<List<Integer>> alternatives() {
+            def boxes = sequence()
+            while (peek() == '|') {
+                position++
+                boxes += sequence()
+            }
+            return boxes
+        }
+
+        private List<List<Integer>> sequence() {
+            List<List<Integer>> boxes = [[]]
+            while (position < pattern.length() && peek() != '|' && peek() != ')') {
+                def atom = atom()
+                def repeated = quantifier().collectMany { count -> repeat(atom, count) }
+                boxes = boxes.collectMany { box -> repeated.collect { box + it } }
+            }
+            return boxes
+        }
+
+        private static List<List<Integer>> repeat(List<List<Integer>> atom, int count) {
+            List<List<Integer>> boxes = [[]]
+            count.times { boxes = boxes.collectMany { box -> atom.collect { box + it } } }
+            return boxes
+        }
+
+        private List<List<Integer>> atom() {
+            char c = pattern.charAt(position++)
+            if (c == '(' as char) {
+                if (pattern.startsWith('?:', position)) {
+                    position += 2
+                }
+                def boxes = alternatives()
+                assert peek() == ')': "Unsupported pattern $pattern"
+                position++
+                return boxes
+            }
+            if (c == '[' as char) {
+                int digits = 0
+                while (peek() != ']') {
+                    int from = digit(pattern.charAt(position++))
+                    int to = from
+                    if (peek() == '-') {
+                        position++
+                        to = digit(pattern.charAt(position++))
+                    }
+                    (from..to).each { digits |= 1 << it }
+                }
+                position++
+                return [[digits]]
+            }
+            if (c == '\\' as char) {
+                assert pattern.charAt(position++) == 'd' as char: "Unsupported pattern $pattern"
+                return [[ALL]]
+            }
+            return [[1 << digit(c)]]
+        }
+
+        private List<Integer> quantifier() {
+            if (peek() == '?') {
+                position++
+                return [0, 1]
+            }
+            if (peek() == '{') {
+                int end = pattern.indexOf('}', position)
+                def bounds = pattern.substring(position + 1, end).split(',')*.toInteger()
+                position = end + 1
+                return (bounds[0]..bounds[-1]).toList()
+            }
+            return [1]
+        }
+
+        private String peek() {
+            return position < pattern.length() ? pattern[position] : ''
+        }
+
+        private int digit(char c) {
+            int digit = Character.digit(c, 10)
+            assert digit >= 0: "Unsupported pattern $pattern"
+            return digit
+        }
+
+    }
+
+    private String lastDigits(int count) {
+        def digits = new StringBuilder()
+        count.times { digits.append(random.nextInt(10)) }
+        return digits.toString()
+    }
+
+    private static String decorate(String nationalNumber, Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return "+32" + nationalNumber
+            case 1:
+                return "0032" + nationalNumber
+            case 2:
+                return "+32 " + nationalNumber.replaceAll(/(\d{2})/, '$1 ').trim()
+            case 3:
+                return "0" + nationalNumber.substring(0, 3) + "/" + nationalNumber.substring(3).replaceAll(/(\d{2})/, '$1.')
+            case 4:
+                return "(0" + nationalNumber.substring(0, 2) + ") " + nationalNumber.substring(2)
+            default:
+                return "0" + nationalNumber
+        }
+    }
+
+}
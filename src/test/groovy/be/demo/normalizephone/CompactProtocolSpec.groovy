@@ -0,0 +1,77 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.CompactInputPhone
+import be.demo.normalizephone.beans.CompactPhone
+import be.demo.normalizephone.beans.OutputField
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.test.web.servlet.MockMvc
+import spock.lang.Specification
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class CompactProtocolSpec extends Specification {
+
+    @Autowired
+    MockMvc mockMvc
+
+    CBORMapper cborMapper = new CBORMapper()
+
+    def 'the compact protocol returns the requested fields with small integers'() {
+
+        given: 'A Belgian phone number for which only the E.164 format is requested'
+        def input = new CompactInputPhone("02 555 97 19", CompactPhone.encodeCountry("BE"), 1 << OutputField.PHONE_INT_NORMALIZED.ordinal())
+
+        when: 'We normalize the phone number with the compact protocol'
+        def response = mockMvc.perform(post("/normalize")
+                .contentType(CompactPhone.MEDIA_TYPE)
+                .accept(CompactPhone.MEDIA_TYPE)
+                .content(cborMapper.writeValueAsBytes(input)))
+                .andExpect(status().isOk())
+                .andReturn().response
+        def output = cborMapper.readValue(response.contentAsByteArray, CompactPhone)
+
+        then: 'Only the validity and the E.164 format are returned'
+        response.contentType == CompactPhone.MEDIA_TYPE
+        output == new CompactPhone(flag: 0, detailedFlag: 0, phoneIntNormalized: "+3225559719")
+
+    }
+
+    def 'the compact protocol returns all fields when no fields are requested'() {
+
+        when: 'We normalize a French phone number without requested fields'
+        def response = mockMvc.perform(post("/normalize")
+                .contentType(CompactPhone.MEDIA_TYPE)
+                .content(cborMapper.writeValueAsBytes(new CompactInputPhone("01 42 68 53 00", CompactPhone.encodeCountry("FR"), 0))))
+                .andExpect(status().isOk())
+                .andReturn().response
+        def output = cborMapper.readValue(response.contentAsByteArray, CompactPhone)
+
+        then: 'The country and the phone type are small integers'
+        CompactPhone.decodeCountry(output.country) == "FR"
+        output.phoneType == 0 as Short
+        output.phoneIntNormalizedE123 == "+33 1 42 68 53 00"
+
+    }
+
+    def 'a country is encoded as a small integer'() {
+
+        expect:
+        CompactPhone.encodeCountry(country) == encoded
+        CompactPhone.decodeCountry(encoded) == country
+
+        where:
+        country || encoded
+        "AA"    || 0
+        "BE"    || 30
+        "ZZ"    || 675
+        "001"   || 1000
+
+    }
+
+}
@@ -0,0 +1,195 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone
+import be.demo.normalizephone.beans.OutputPhone
+import be.demo.normalizephone.beans.ValidityDetailedFlag
+import be.demo.normalizephone.business.CountryInference
+import be.demo.normalizephone.business.NormalizePhone
+import com.google.i18n.phonenumbers.PhoneNumberUtil
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+class CountryInferenceSpec extends Specification {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry()
+
+    CountryInference inference = new CountryInference(["BE", "NL", "FR", "LU", "DE"])
+
+    @Subject
+    NormalizePhone normalizePhone = new NormalizePhone(NormalizePhone.Options.builder().inference(inference).build())
+
+    def setup() {
+        inference.bindTo(registry)
+    }
+
+    @Unroll
+    def 'the country of #phone with the default country "#country" is inferred as #countryCode'() {
+
+        when: 'We normalize a phone number that is not valid for its default country'
+        def outputPhone = normalizePhone.normalize(new InputPhone(phone, country))
+
+        then: 'It is normalized for the only candidate region it is valid in'
+        outputPhone.validity.detailedFlag == ValidityDetailedFlag.PHONE_OK.code
+        outputPhone.countryCode == countryCode
+        outputPhone.phoneIntNormalized == phoneIntNormalized
+        registry.get("normalize.inference").tag("outcome", "INFERRED").counter().count() == 1
+
+        where:
+        phone               | country || countryCode | phoneIntNormalized
+        "01 23 45 67 89"    | ""      || "FR"        | "+33123456789"
+        "01 23 45 67 89"    | "GB"    || "FR"        | "+33123456789"
+        "0041 44 668 18 00" | ""      || "CH"        | "+41446681800"
+    }
+
+    def 'a phone number that is valid in several candidate regions is ambiguous'() {
+
+        when: 'We normalize a phone number that is a Belgian mobile number and a French fixed line number'
+        def outputPhone = normalizePhone.normalize(new InputPhone("0479445566", ""))
+
+        then: 'The best ranked region is returned with the ambiguous country flag'
+        outputPhone.validity.detailedFlag == ValidityDetailedFlag.COUNTRY_CC_NOT_FOUND.code
+        outputPhone.validity.flag == Short.valueOf((short) 6)
+        outputPhone.countryCode == "BE"
+        outputPhone.phoneIntNormalized == "+32479445566"
+        outputPhone.phoneType == Short.valueOf((short) 1)
+        registry.get("normalize.inference").tag("outcome", "AMBIGUOUS").counter().count() == 1
+    }
+
+    def 'the inference stops at the second valid region and skips the regions that cannot hold the phone number'() {
+
+        given: 'The regions that normalize the phone number'
+        List<String> regions = []
+
+        when: 'We infer the country of a Belgian mobile number'
+        inference.infer("0479445566", "", null, { region ->
+            regions << region
+            normalizePhone.normalize(new InputPhone("0479445566", region))
+        })
+
+        then: 'LU and DE are not tried, FR already makes the country ambiguous'
+        regions == ["BE", "NL", "FR"]
+
+        when: 'We infer the country of a Belgian fixed line number, too short for FR'
+        regions.clear()
+        inference.infer("02 512 34 56", "", null, { region ->
+            regions << region
+            normalizePhone.normalize(new InputPhone("02 512 34 56", region))
+        })
+
+        then: 'FR and LU are skipped, DE makes the country ambiguous'
+        regions == ["BE", "NL", "DE"]
+    }
+
+    @Unroll
+    def 'the candidate region #region is tried for #phone, which is valid there'() {
+
+        given: 'The regions that normalize the phone number'
+        List<String> regions = []
+
+        when: 'We infer the country of the phone number'
+        inference.infer(phone, "", null, { candidate ->
+            regions << candidate
+            normalizePhone.normalize(new InputPhone(phone, candidate))
+        })
+
+        then: 'The region is tried'
+        regions.contains(region)
+
+        where:
+        phone               | region
+        "0479 44 55 66 #12" | "BE"
+        "0479 44 55 66 #12" | "FR"
+        "3211234567"        | "BE"
+        "15123456789"       | "LU"
+    }
+
+    def 'skipping the regions that cannot hold a phone number does not change the inference of the example numbers'() {
+
+        given: 'The example numbers of every supported region, in national format and with the calling code without +'
+        def phoneUtil = PhoneNumberUtil.getInstance()
+        def regions = phoneUtil.supportedRegions.sort()
+        def phones = [] as LinkedHashSet
+        regions.each { region ->
+            PhoneNumberUtil.PhoneNumberType.values().each { type ->
+                def example = phoneUtil.getExampleNumberForType(region, type)
+                if (example != null) {
+                    phones << phoneUtil.format(example, PhoneNumberUtil.PhoneNumberFormat.NATIONAL)
+                    phones << phoneUtil.format(example, PhoneNumberUtil.PhoneNumberFormat.E164).substring(1)
+                }
+            }
+        }
+
+        when: 'We infer their country with and without skipping regions, one supported region at a time: an inference of several regions stops at the second valid one'
+        def plainNormalizePhone = new NormalizePhone()
+        def differences = regions.collectMany { region ->
+            def pruned = new CountryInference([region], true)
+            def unpruned = new CountryInference([region], false)
+            phones.findAll { phone ->
+                def normalizer = { candidate -> plainNormalizePhone.normalize(new InputPhone(phone, candidate)) }
+                summary(pruned.infer(phone, "", null, normalizer)) != summary(unpruned.infer(phone, "", null, normalizer))
+            }.collect { phone -> [phone, region] }
+        }
+
+        then: 'The inferences are the same'
+        phones.size() > 1000
+        differences == []
+    }
+
+    private static List<String> summary(OutputPhone outputPhone) {
+        outputPhone == null ? null : [outputPhone.countryCode, outputPhone.phoneIntNormalized, outputPhone.validity.detailedFlag]
+    }
+
+    @Unroll
+    def 'the country of #phone with the default country "#country" is not inferred'() {
+
+        when: 'We normalize a phone number'
+        def outputPhone = normalizePhone.normalize(new InputPhone(phone, country))
+
+        then: 'The normalization for the default country is returned'
+        outputPhone.validity.detailedFlag == detailedFlag
+        registry.find("normalize.inference").tag("outcome", "NOT_FOUND").counter().count() == notFound
+
+        where:
+        phone          | country || detailedFlag | notFound
+        "0479445566"   | "BE"    || "00"         | 0
+        "+33612345678" | ""      || "00"         | 0
+        "+3247944"     | "BE"    || "05"         | 0
+        "abc"          | ""      || "10"         | 0
+        "12"           | "BE"    || "05"         | 1
+    }
+
+    def 'a phone number with a short national number for a candidate region is normalized for it'() {
+
+        when: 'We normalize a phone number for a candidate region where its carrier code leaves a national number of 1 digit'
+        def outputPhone = normalizePhone.normalize(new InputPhone("1020000000", "FO"))
+
+        then: 'It is not valid there'
+        outputPhone.validity.detailedFlag != ValidityDetailedFlag.PHONE_OK.code
+    }
+
+    def 'a candidate region whose normalization fails is skipped'() {
+
+        when: 'The normalization for the first candidate region fails'
+        def outputPhone = inference.infer("01 23 45 67 89", "", null, { region ->
+            if (region == "BE") {
+                throw new IllegalStateException("failed normalization")
+            }
+            normalizePhone.normalize(new InputPhone("01 23 45 67 89", region))
+        })
+
+        then: 'The next candidate regions are tried'
+        outputPhone.countryCode == "FR"
+    }
+
+    def 'an unsupported candidate region is refused'() {
+
+        when: 'We configure an unknown region'
+        new CountryInference(["BE", "XX"])
+
+        then: 'The configuration is refused'
+        thrown(IllegalArgumentException)
+    }
+
+}
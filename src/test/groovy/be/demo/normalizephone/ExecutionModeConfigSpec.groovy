@@ -0,0 +1,41 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.config.ExecutionModeConfig
+import spock.lang.IgnoreIf
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+
+class ExecutionModeConfigSpec extends Specification {
+
+    @Requires({ Runtime.version().feature() >= 21 })
+    def 'the virtual execution mode runs each task on a virtual thread'() {
+
+        given: 'The virtual thread executor'
+        def executor = ExecutionModeConfig.newVirtualThreadPerTaskExecutor()
+
+        when: 'We run a task'
+        def virtual = executor.submit({ Thread.currentThread().isVirtual() } as Callable).get()
+
+        then: 'The task ran on a virtual thread'
+        virtual
+
+        cleanup:
+        executor?.shutdown()
+
+    }
+
+    @IgnoreIf({ Runtime.version().feature() >= 21 })
+    def 'the virtual execution mode fails fast on a runtime without virtual threads'() {
+
+        when: 'We create the virtual thread executor'
+        ExecutionModeConfig.newVirtualThreadPerTaskExecutor()
+
+        then: 'The application can not start'
+        def e = thrown(IllegalStateException)
+        e.message.contains("Java 21")
+
+    }
+
+}
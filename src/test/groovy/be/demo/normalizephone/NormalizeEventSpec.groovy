@@ -0,0 +1,102 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone
+import be.demo.normalizephone.business.NormalizeEvent
+import be.demo.normalizephone.business.NormalizePhone
+import be.demo.normalizephone.controller.JfrRecordingEndpoint
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordingFile
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+
+class NormalizeEventSpec extends Specification {
+
+    @TempDir
+    Path directory
+
+    NormalizePhone normalizePhone = new NormalizePhone()
+
+    def 'a recording gets an event per normalization with the stages, the validity and the region'() {
+
+        given: 'A recording of the normalization events'
+        def recording = new Recording()
+        recording.enable(NormalizeEvent.NAME).withThreshold(Duration.ZERO)
+        recording.start()
+
+        when: 'We normalize phone numbers'
+        normalizePhone.normalize(new InputPhone("0479445566", "BE"))
+        normalizePhone.normalize(new InputPhone("+33 6 12 27 18 93", "FR"))
+        normalizePhone.normalize(new InputPhone("0479445566", "XX"))
+        recording.stop()
+        def file = directory.resolve("recording.jfr")
+        recording.dump(file)
+        recording.close()
+        def events = RecordingFile.readAllEvents(file).findAll { it.eventType.name == NormalizeEvent.NAME }
+
+        then: 'We expect an event per normalization'
+        events.size() == 3
+        events[0].getString("defaultCountry") == "BE"
+        events[0].getString("region") == "BE"
+        events[0].getString("detailedFlag") == "00"
+        events[0].getDuration("belgium").toNanos() > 0
+        events[0].getDuration("parse") == Duration.ZERO
+        events[1].getString("region") == "FR"
+        events[1].getDuration("parse").toNanos() > 0
+        events[1].getDuration("format").toNanos() > 0
+        events[2].getString("region") == null
+        events[2].getString("detailedFlag") == "99"
+        events.every { !it.getBoolean("inference") && it.duration.toNanos() > 0 }
+
+    }
+
+    def 'the jfr endpoint returns a time-boxed recording with the normalization events'() {
+
+        given: 'The endpoint and normalizations while it records'
+        def endpoint = new JfrRecordingEndpoint(Duration.ofSeconds(30), Duration.ofMillis(500), Duration.ofMillis(1))
+        def running = true
+        def load = CompletableFuture.runAsync {
+            while (running) {
+                normalizePhone.normalize(new InputPhone("+33 6 12 27 18 93", "FR"))
+            }
+        }
+
+        when: 'We ask a recording longer than the maximum, without threshold'
+        long start = System.nanoTime()
+        def response = endpoint.record(Duration.ofMinutes(1), null, Duration.ZERO)
+        def elapsed = Duration.ofNanos(System.nanoTime() - start)
+        running = false
+        load.join()
+        def file = directory.resolve("recording.jfr")
+        response.body.inputStream.withCloseable { Files.copy(it, file) }
+
+        then: 'The recording is cut to the maximum and has the normalization events, its temporary file is removed'
+        response.status == WebEndpointResponse.STATUS_OK
+        elapsed < Duration.ofSeconds(10)
+        RecordingFile.readAllEvents(file).any { it.eventType.name == NormalizeEvent.NAME && it.getString("region") == "FR" }
+        !response.body.exists()
+
+    }
+
+    def 'the jfr endpoint runs one recording at a time and refuses unknown settings'() {
+
+        given: 'The endpoint during a recording'
+        def endpoint = new JfrRecordingEndpoint(Duration.ofMillis(500), Duration.ofSeconds(1), Duration.ofMillis(1))
+        def first = CompletableFuture.supplyAsync { endpoint.record(null, null, null) }
+        Thread.sleep(100)
+
+        expect: 'A second recording is refused, unknown settings are refused'
+        endpoint.record(null, null, null).status == WebEndpointResponse.STATUS_TOO_MANY_REQUESTS
+        endpoint.record(null, "unknown", null).status == WebEndpointResponse.STATUS_BAD_REQUEST
+        first.join().status == WebEndpointResponse.STATUS_OK
+
+        cleanup:
+        first.join().body.inputStream.close()
+    }
+
+}
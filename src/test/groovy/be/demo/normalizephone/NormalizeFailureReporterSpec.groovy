@@ -0,0 +1,90 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone
+import be.demo.normalizephone.business.NormalizeFailureReporter
+import be.demo.normalizephone.business.NormalizePhone
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+import java.time.Duration
+
+class NormalizeFailureReporterSpec extends Specification {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry()
+
+    // the summaries are triggered by the features, not by the schedule
+    NormalizeFailureReporter failures = new NormalizeFailureReporter(registry, Duration.ofDays(1), true)
+
+    @Subject
+    NormalizePhone normalizePhone = new NormalizePhone(NormalizePhone.Options.builder().failures(failures).build())
+
+    def cleanup() {
+        failures.close()
+    }
+
+    @Unroll
+    def '#phone with the default country "#country" fails with #reason, detected by the #detection'() {
+
+        when: 'We normalize a phone number that cannot be parsed'
+        def outputPhone = normalizePhone.normalize(new InputPhone(phone, country))
+
+        then: 'It is unknown and counted per reason'
+        outputPhone.validity.detailedFlag == "99"
+        failureCount(reason, detection) == 1
+        registry.get(NormalizeFailureReporter.FAILURE_COUNTER).counters().sum { it.count() } == 1
+
+        where:
+        phone                 | country || reason                 | detection
+        "0479445566"          | ""      || "INVALID_COUNTRY_CODE" | "prevalidation"
+        "0479445566"          | "XX"    || "INVALID_COUNTRY_CODE" | "prevalidation"
+        "+999 123 456"        | ""      || "INVALID_COUNTRY_CODE" | "prevalidation"
+        "+999 123 456"        | "BE"    || "INVALID_COUNTRY_CODE" | "parse"
+        "(+32)"               | "BE"    || "TOO_SHORT_AFTER_IDD"  | "prevalidation"
+        "+32 1"               | "BE"    || "TOO_SHORT_NSN"        | "prevalidation"
+        "00 1"                | "BE"    || "TOO_SHORT_AFTER_IDD"  | "parse"
+    }
+
+    def 'phone numbers that can be parsed are not failures'() {
+
+        when: 'We normalize valid and invalid phone numbers that can be parsed'
+        normalizePhone.normalize(new InputPhone("0479445566", "BE"))
+        normalizePhone.normalize(new InputPhone("+33 1 42 68 53 00", ""))
+        normalizePhone.normalize(new InputPhone("+1 650 253 0000", "XX"))
+        normalizePhone.normalize(new InputPhone("+3214268530000", "BE"))
+        normalizePhone.normalize(new InputPhone("+0032 479 44 55 66", "BE"))
+
+        then: 'No failure is counted'
+        registry.get(NormalizeFailureReporter.FAILURE_COUNTER).counters().sum { it.count() } == 0
+    }
+
+    def 'the failures are summarized per interval'() {
+
+        given: 'Failures of 2 reasons'
+        3.times { normalizePhone.normalize(new InputPhone("0479445566", "")) }
+        normalizePhone.normalize(new InputPhone("+32 1", "BE"))
+
+        expect: 'The summary holds the failures since the last summary'
+        failures.summarize() == 4
+        failures.summarize() == 0
+    }
+
+    @Unroll
+    def 'the sample #phone is logged as #masked'() {
+
+        expect: 'Only the last 2 digits are kept'
+        NormalizeFailureReporter.mask(phone) == masked
+
+        where:
+        phone                                         || masked
+        "+32 479 44 55 66"                            || "+xx xxx xx xx 66"
+        "12"                                          || "12"
+        "0479445566 0479445566 0479445566 0479445566" || "xxxxxxxxxx xxxxxxxxxx xxxxxxxxxx..."
+    }
+
+    private double failureCount(String reason, String detection) {
+        registry.get(NormalizeFailureReporter.FAILURE_COUNTER).tag("reason", reason).tag("detection", detection).counter().count()
+    }
+
+}
@@ -0,0 +1,218 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.NormalizeJob
+import be.demo.normalizephone.business.NormalizeException
+import be.demo.normalizephone.business.NormalizeJobs
+import be.demo.normalizephone.business.NormalizePhone
+import be.demo.normalizephone.business.PhoneRecordFormat
+import be.demo.normalizephone.config.NormalizeProperties
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.springframework.util.unit.DataSize
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class NormalizeJobsSpec extends Specification {
+
+    static final Instant NOW = Instant.parse("2024-05-01T12:00:00Z")
+
+    @TempDir
+    Path directory
+
+    NormalizeProperties.Jobs properties
+
+    NormalizeJobs jobs
+
+    def setup() {
+        properties = new NormalizeProperties.Jobs(path: directory.toString())
+    }
+
+    def cleanup() {
+        jobs?.close()
+    }
+
+    def 'a submitted job is normalized and its result is downloaded'() {
+
+        given: 'The jobs'
+        jobs = new NormalizeJobs(new NormalizePhone(), new ObjectMapper(), properties, Clock.fixed(NOW, ZoneOffset.UTC))
+
+        when: 'We submit a CSV input and wait for the job'
+        def input = 'phone,defaultCountryCode\n0479445566,BE\n"+33 6 12 27 18 93",FR\n+3247944556A,BE\n'
+        def submitted = jobs.submit(new ByteArrayInputStream(input.bytes), PhoneRecordFormat.CSV, 0)
+        def done = waitFor(submitted.id)
+
+        then: 'The job is done with a result per record, in the order of the input'
+        submitted.status == NormalizeJob.Status.QUEUED
+        submitted.inputSize == input.length()
+        done.status == NormalizeJob.Status.DONE
+        done.records == 3
+        done.percent == 100
+        done.format == "csv"
+        def lines = Files.readAllLines(jobs.getResult(submitted.id))
+        lines.size() == 4
+        lines[1] == '0479445566,BE,32,479,445566,479445566,0479/445566,BE,1,+32479445566,+32 479 44 55 66,+32 (0479) 445566,0,00,'
+        lines[2].startsWith('+33 6 12 27 18 93,FR,33,6,12271893,')
+
+        when: 'We delete the job'
+        jobs.delete(submitted.id)
+        jobs.get(submitted.id)
+
+        then: 'The job and its files are removed'
+        def exception = thrown(NormalizeException)
+        exception.reason == NormalizeException.Reason.NOT_FOUND
+        !Files.exists(directory.resolve(submitted.id))
+
+    }
+
+    def 'the jobs that did not finish before a restart run again, by priority'() {
+
+        given: 'A running job and two queued jobs saved before a restart, the last one with a higher priority'
+        saveJob("running", NormalizeJob.Status.RUNNING, 0, NOW.minusSeconds(30))
+        saveJob("low", NormalizeJob.Status.QUEUED, 0, NOW.minusSeconds(20))
+        saveJob("high", NormalizeJob.Status.QUEUED, 5, NOW.minusSeconds(10))
+
+        when: 'We load the jobs, with a clock that ticks at every call'
+        jobs = new NormalizeJobs(new NormalizePhone(), new ObjectMapper(), properties, new TickingClock())
+        def done = ["running", "low", "high"].collectEntries { [it, waitFor(it)] }
+
+        then: 'All jobs are done, the job with the higher priority ran before the other queued job'
+        done.values().every { it.status == NormalizeJob.Status.DONE && it.records == 100 }
+        done.running.started < done.high.started
+        done.high.started < done.low.started
+        Files.readAllLines(jobs.getResult("low")).size() == 100
+
+    }
+
+    def 'finished jobs are removed after the retention'() {
+
+        given: 'A job that finished before the retention, and a job that finished after it'
+        saveJob("expired", NormalizeJob.Status.DONE, 0, NOW.minus(Duration.ofDays(10)), NOW.minus(Duration.ofDays(8)))
+        saveJob("kept", NormalizeJob.Status.FAILED, 0, NOW.minus(Duration.ofDays(10)), NOW.minus(Duration.ofDays(6)))
+
+        when: 'We load the jobs'
+        jobs = new NormalizeJobs(new NormalizePhone(), new ObjectMapper(), properties, Clock.fixed(NOW, ZoneOffset.UTC))
+
+        then: 'Only the expired job is removed'
+        !Files.exists(directory.resolve("expired"))
+        jobs.get("kept").status == NormalizeJob.Status.FAILED
+
+        when: 'We ask the result of the failed job'
+        jobs.getResult("kept")
+
+        then: 'It has no result'
+        def exception = thrown(NormalizeException)
+        exception.reason == NormalizeException.Reason.NOT_FINISHED
+
+    }
+
+    def 'an input larger than the maximum is refused'() {
+
+        given: 'Jobs with a small maximum input size'
+        properties.maxInputSize = DataSize.ofBytes(100)
+        jobs = new NormalizeJobs(new NormalizePhone(), new ObjectMapper(), properties, Clock.fixed(NOW, ZoneOffset.UTC))
+
+        when: 'We submit a larger input'
+        jobs.submit(new ByteArrayInputStream(("0479445566,BE\n" * 10).bytes), PhoneRecordFormat.CSV, 0)
+
+        then: 'The input is refused and not kept'
+        def exception = thrown(NormalizeException)
+        exception.reason == NormalizeException.Reason.TOO_LARGE
+        Files.list(directory).count() == 0
+
+    }
+
+    def 'concurrent submits do not exceed the maximum number of queued jobs'() {
+
+        given: 'Jobs with at most 2 queued jobs, and 5 submits whose input is still being uploaded'
+        properties.maxQueued = 2
+        jobs = new NormalizeJobs(new NormalizePhone(), new ObjectMapper(), properties, Clock.fixed(NOW, ZoneOffset.UTC))
+        def uploaded = new CountDownLatch(1)
+        def submits = (0..<5).collect {
+            def input = new FilterInputStream(new ByteArrayInputStream("0479445566,BE\n".bytes)) {
+                @Override
+                int read(byte[] buffer, int offset, int length) {
+                    uploaded.await()
+                    return super.read(buffer, offset, length)
+                }
+            }
+            CompletableFuture.supplyAsync {
+                try {
+                    jobs.submit(input, PhoneRecordFormat.CSV, 0)
+                    return "queued"
+                } catch (NormalizeException e) {
+                    return e.reason.name()
+                }
+            }
+        }
+
+        when: 'The submits above the maximum are refused while the others upload, then the uploads end'
+        long deadline = System.currentTimeMillis() + 10000
+        while (submits.count { it.done } < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        def refused = submits.findAll { it.done }.collect { it.get() }
+        uploaded.countDown()
+        def results = submits.collect { it.get(10, TimeUnit.SECONDS) }
+
+        then: 'Only 2 jobs are queued'
+        refused == ["TOO_MANY_QUEUED"] * 3
+        results.count("queued") == 2
+
+    }
+
+    private NormalizeJob waitFor(String id) {
+        long deadline = System.currentTimeMillis() + 30000
+        NormalizeJob job = jobs.get(id)
+        while (!job.status.finished && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20)
+            job = jobs.get(id)
+        }
+        return job
+    }
+
+    private void saveJob(String id, NormalizeJob.Status status, int priority, Instant submitted, Instant finished = null) {
+        def jobDirectory = Files.createDirectories(directory.resolve(id))
+        Files.writeString(jobDirectory.resolve("input"), (0..<100).collect { /{"phone":"0479${String.format("%06d", it)}","defaultCountryCode":"BE"}/ }.join("\n"))
+        def state = new Properties()
+        state.putAll([id         : id, format: "NDJSON", priority: priority as String, submitted: submitted as String,
+                      inputSize  : Files.size(jobDirectory.resolve("input")) as String, status: status.name(), records: "0",
+                      inputOffset: "0"])
+        if (finished) {
+            state.finished = finished as String
+        }
+        Files.newBufferedWriter(jobDirectory.resolve("job.properties")).withCloseable { state.store(it, null) }
+    }
+
+    static class TickingClock extends Clock {
+
+        final AtomicInteger ticks = new AtomicInteger()
+
+        @Override
+        ZoneId getZone() {
+            return ZoneOffset.UTC
+        }
+
+        @Override
+        Clock withZone(ZoneId zone) {
+            return this
+        }
+
+        @Override
+        Instant instant() {
+            return NOW.plusSeconds(ticks.getAndIncrement())
+        }
+
+    }
+
+}
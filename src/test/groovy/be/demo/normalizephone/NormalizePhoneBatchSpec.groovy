@@ -0,0 +1,97 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone
+import be.demo.normalizephone.business.NormalizeException
+import be.demo.normalizephone.business.NormalizePhone
+import be.demo.normalizephone.business.NormalizePhoneBatch
+import be.demo.normalizephone.business.NormalizePhoneStream
+import be.demo.normalizephone.config.NormalizeProperties
+import be.demo.normalizephone.controller.NormalizeExceptionHandler
+import be.demo.normalizephone.controller.NormalizePhoneController
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.setup.MockMvcBuilders
+import spock.lang.Specification
+import spock.lang.Subject
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+
+class NormalizePhoneBatchSpec extends Specification {
+
+    static NormalizeProperties properties() {
+        def properties = new NormalizeProperties()
+        properties.batch.maxSize = 1000
+        properties.batch.parallelism = 4
+        return properties
+    }
+
+    @Subject
+    NormalizePhoneBatch normalizePhoneBatch = new NormalizePhoneBatch(new NormalizePhone(), properties())
+
+    def cleanup() {
+        normalizePhoneBatch.shutdown()
+    }
+
+    def 'batch normalization keeps the order of the input'() {
+
+        given: 'A batch of different phone numbers'
+        def inputPhones = (0..<500).collect { new InputPhone(String.format("0479%06d", it), "BE") }
+
+        when: 'We normalize the batch'
+        def phones = normalizePhoneBatch.normalize(inputPhones)
+
+        then: 'Every result belongs to the input at the same position'
+        phones.size() == 500
+        (0..<500).every {
+            phones[it].inputPhone.is(inputPhones[it]) && phones[it].outputPhone.phoneDedupKey == 479000000L + it
+        }
+
+    }
+
+    def 'a failing phone number does not fail the other phone numbers of the batch'() {
+
+        given: 'A batch with a phone number without default country'
+        def inputPhones = [new InputPhone("0479445566", "BE"), new InputPhone("0479445566", null), new InputPhone("0612271893", "FR")]
+
+        when: 'We normalize the batch'
+        def phones = normalizePhoneBatch.normalize(inputPhones)
+
+        then: 'Only the invalid input has an error'
+        phones[0].outputPhone.phoneIntNormalized == "+32479445566"
+        phones[0].error == null
+        phones[1].outputPhone == null
+        phones[1].error
+        phones[2].outputPhone.phoneIntNormalized == "+33612271893"
+        phones[2].error == null
+
+    }
+
+    def 'a batch larger than the maximum size is rejected'() {
+
+        given: 'A batch above the maximum size'
+        def inputPhones = (0..1000).collect { new InputPhone("0479445566", "BE") }
+
+        when: 'We normalize the batch'
+        normalizePhoneBatch.normalize(inputPhones)
+
+        then: 'The batch is rejected'
+        def exception = thrown(NormalizeException)
+        exception.reason == NormalizeException.Reason.TOO_LARGE
+
+    }
+
+    def 'the web layer answers a rejected batch with 413'() {
+
+        given: 'The controller with the batch service'
+        def controller = new NormalizePhoneController(new NormalizePhone(), normalizePhoneBatch, new NormalizePhoneStream(normalizePhoneBatch, new ObjectMapper()))
+        def mockMvc = MockMvcBuilders.standaloneSetup(controller).setControllerAdvice(new NormalizeExceptionHandler()).build()
+        def body = '[' + (['{"phone":"0479445566","defaultCountryCode":"BE"}'] * 1001).join(',') + ']'
+
+        expect: 'The batch above the maximum size gets 413'
+        mockMvc.perform(post("/normalize/batch").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isPayloadTooLarge())
+
+    }
+
+}
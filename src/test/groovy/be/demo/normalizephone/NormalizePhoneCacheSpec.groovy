@@ -0,0 +1,74 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone
+import be.demo.normalizephone.beans.OutputField
+import be.demo.normalizephone.beans.ValidityDetailedFlag
+import be.demo.normalizephone.business.NormalizePhone
+import be.demo.normalizephone.business.NormalizePhoneCache
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+import spock.lang.Subject
+
+class NormalizePhoneCacheSpec extends Specification {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry()
+
+    NormalizePhoneCache cache = new NormalizePhoneCache(100, null)
+
+    @Subject
+    NormalizePhone normalizePhone = new NormalizePhone(NormalizePhone.Options.builder().cache(cache).build())
+
+    def setup() {
+        cache.bindTo(registry)
+    }
+
+    def 'phone numbers that only differ in whitespace and case of the country are cached once'() {
+
+        when: 'We normalize the same phone number twice'
+        def first = normalizePhone.normalize(new InputPhone("0479445566", "BE"))
+        def second = normalizePhone.normalize(new InputPhone(" 0479445566 ", " be"))
+
+        then: 'The second normalization is a cache hit with the same result'
+        first == second
+        registry.get("cache.gets").tag("cache", NormalizePhoneCache.CACHE_NAME).tag("result", "miss").functionCounter().count() == 1
+        registry.get("cache.gets").tag("cache", NormalizePhoneCache.CACHE_NAME).tag("result", "hit").functionCounter().count() == 1
+
+    }
+
+    def 'a cached phone number is shared, it cannot be corrupted by a caller'() {
+
+        given: 'A normalized phone number'
+        def first = normalizePhone.normalize(new InputPhone("0479445566", "BE"))
+
+        when: 'A caller tries to modify it'
+        first.phoneIntNormalized = "corrupted"
+
+        then: 'The phone number is immutable'
+        thrown(ReadOnlyPropertyException)
+
+        when: 'We normalize the same phone number again'
+        def second = normalizePhone.normalize(new InputPhone("0479445566", "BE"))
+
+        then: 'The cached phone number is unchanged and handed out without a copy'
+        second.is(first)
+        second.phoneIntNormalized == "+32479445566"
+        second.phoneType == Short.valueOf((short) 1)
+
+    }
+
+    def 'a cached phone number only returns the requested fields'() {
+
+        given: 'A cached phone number'
+        normalizePhone.normalize(new InputPhone("0479445566", "BE"))
+
+        when: 'We normalize the same phone number for the E.164 format only'
+        def outputPhone = normalizePhone.normalize(new InputPhone("0479445566", "BE"), EnumSet.of(OutputField.PHONE_INT_NORMALIZED))
+
+        then: 'Only the validity and the E.164 format are returned'
+        outputPhone.validity == ValidityDetailedFlag.PHONE_OK.validity
+        outputPhone.phoneIntNormalized == "+32479445566"
+        OutputField.values().findAll { it != OutputField.PHONE_INT_NORMALIZED }.every { outputPhone[it.fieldName] == null }
+
+    }
+
+}
@@ -0,0 +1,330 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone
+import be.demo.normalizephone.beans.OutputField
+import be.demo.normalizephone.beans.OutputPhone
+import be.demo.normalizephone.beans.Validity
+import be.demo.normalizephone.business.NormalizePhone
+import be.demo.normalizephone.business.NormalizeResultStore
+import com.fasterxml.jackson.databind.ObjectWriter
+import com.google.i18n.phonenumbers.NumberParseException
+import com.google.i18n.phonenumbers.PhoneNumberUtil
+import com.google.i18n.phonenumbers.Phonenumber
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.TempDir
+
+import java.nio.file.Path
+import java.time.Clock
+
+import static com.google.i18n.phonenumbers.PhoneNumberUtil.PhoneNumberType.MOBILE
+
+/**
+ * Compare the normalization with the original implementation over a large generated corpus of phone numbers
+ */
+class NormalizePhoneDifferentialSpec extends Specification {
+
+    static final PhoneNumberUtil phoneUtil = PhoneNumberUtil.getInstance()
+
+    // the fields of the original bean, in the order of its JSON
+    static final List<String> FIELDS = ["internationalPrefix", "zonalPrefix", "number", "phoneDedupKey", "phoneNormalized", "zoneId", "validity",
+                                        "countryCode", "phoneType", "phoneIntNormalized", "phoneIntNormalizedE123", "phoneIntNormalizedSopres"]
+
+    static final ObjectWriter jsonWriter = Jackson2ObjectMapperBuilder.json().build().writer()
+
+    static final List<String> regions = ["BE", "FR", "NL", "DE", "LU", "GB", "US", "IT", "ES", "CH", "AT", "PL", "MA", "TR"]
+
+    @Subject
+    NormalizePhone normalizePhone = new NormalizePhone()
+
+    @TempDir
+    Path directory
+
+    @Shared
+    List<InputPhone> corpus = generateCorpus(new Random(20231018))
+
+    def 'the normalization gives the same result as the original implementation for every phone number of the corpus'() {
+
+        when: 'We normalize every phone number of the corpus with both implementations'
+        def differences = corpus.findAll { input ->
+            outcome { normalizePhone.normalize(input) } != outcome { LegacyNormalizePhone.normalize(input) }
+        }
+
+        then: 'There are no differences'
+        corpus.size() > 20000
+        differences.isEmpty()
+
+    }
+
+    def 'a normalization of some fields gives the same fields as the normalization of all fields'() {
+
+        given: 'A random selection of fields per phone number'
+        def random = new Random(20231020)
+        def selections = corpus.collect { OutputField.fromBits(random.nextInt(1 << OutputField.values().length)) }
+
+        when: 'We normalize every phone number of the corpus with its selection of fields and with all fields'
+        def differences = (0..<corpus.size()).findAll { i ->
+            outcome { normalizePhone.normalize(corpus[i], selections[i]) } != outcome { normalizePhone.normalize(corpus[i]).retain(selections[i]) }
+        }
+
+        then: 'There are no differences'
+        differences.isEmpty()
+
+    }
+
+    def 'the result store gives the same result as the normalization, when the result is stored and after a restart'() {
+
+        given: 'A normalization with an empty result store'
+        def file = directory.resolve("results.bin")
+        def store = new NormalizeResultStore(file, "", 1000000, null, Clock.systemUTC())
+        def storedNormalizePhone = new NormalizePhone(NormalizePhone.Options.builder().store(store).build())
+
+        when: 'We normalize every distinct phone number of the corpus once to fill the store, and the corpus from the store'
+        def distinct = corpus.unique(false) { [it.phone.trim(), it.defaultCountryCode.trim().toUpperCase()] }
+        def stored = distinct.collect { input -> outcome { storedNormalizePhone.normalize(input) } }
+        def unstorable = store.unstorable
+        def read = corpus.collect { input -> outcome { storedNormalizePhone.normalize(input) } }
+        store.close()
+
+        and: 'We normalize every phone number of the corpus after opening the store again'
+        def reopened = new NormalizeResultStore(file, "", 1000000, null, Clock.systemUTC())
+        def reopenedNormalizePhone = new NormalizePhone(NormalizePhone.Options.builder().store(reopened).build())
+        def afterRestart = corpus.collect { input -> outcome { reopenedNormalizePhone.normalize(input) } }
+        def expected = corpus.collect { input -> outcome { normalizePhone.normalize(input) } }
+        def inputs = (0..<corpus.size()).findAll { expected[it] instanceof Map }
+                .collect { [corpus[it].phone.trim(), corpus[it].defaultCountryCode.trim().toUpperCase()] }.toSet()
+
+        then: 'Every normalized phone number is stored once, unless it cannot be rebuilt from a record, and every result is the same as the normalization'
+        unstorable < inputs.size() * 0.01
+        reopened.records == inputs.size() - unstorable
+        stored == distinct.collect { input -> outcome { normalizePhone.normalize(input) } }
+        read == expected
+        afterRestart == expected
+
+        cleanup:
+        reopened?.close()
+    }
+
+    // the fields and the JSON of the result, or the type of the exception for an input that can't be normalized
+    static Object outcome(Closure normalization) {
+        try {
+            def result = normalization()
+            if (result instanceof OutputPhone) {
+                return [fields: FIELDS.collectEntries { [it, result[it]] }, json: jsonWriter.writeValueAsString(result)]
+            }
+            // the original bean left out the empty fields and the zone id
+            return [fields: result, json: jsonWriter.writeValueAsString(result.findAll { it.key != "zoneId" && it.value != null && it.value != "" })]
+        } catch (RuntimeException e) {
+            return e.class
+        }
+    }
+
+    static List<InputPhone> generateCorpus(Random random) {
+        def corpus = []
+        regions.each { region ->
+            def countryCode = phoneUtil.getCountryCodeForRegion(region)
+            phoneUtil.getSupportedTypesForRegion(region).each { type ->
+                def example = phoneUtil.getExampleNumberForType(region, type)
+                if (example == null) {
+                    return
+                }
+                def nationalNumber = String.valueOf(example.nationalNumber)
+                250.times {
+                    def digits = mutate(nationalNumber, random)
+                    def defaultCountry = random.nextInt(4) == 0 ? regions[random.nextInt(regions.size())] : region
+                    corpus << new InputPhone(decorate(digits, countryCode, random), defaultCountry)
+                }
+            }
+        }
+        // phone numbers without digits, with letters, with an unknown default country or an unknown international prefix
+        ["", "   ", "abc", "+", "0", "00", "+32", "0479 44 55 66 ext. 12", "0479-44-55-66", "(02) 555 96 56", "+999123456", "0032479445566",
+         // one digit, unicode digits and whitespace, a digit outside of the basic plane, too long inputs, an extension
+         "4", "+4", "\u2003", "\u2003\u2003", "\uFF10\uFF14\uFF17\uFF19\uFF14\uFF14\uFF15\uFF15\uFF16\uFF16", "\u0660\u0664\u0667\u0669\u0664\u0664\u0665\u0665\u0666\u0666",
+         "\uD835\uDFCE\uD835\uDFD2", "0479445566" + " " * 240, "0479445566" + "-" * 241, "0" * 251, "0479 44 55 66 #12"].each { phone ->
+            ["BE", "FR", "", "XX", "be", " Be "].each { corpus << new InputPhone(phone, it) }
+        }
+        return corpus
+    }
+
+    private static String mutate(String nationalNumber, Random random) {
+        def digits = new StringBuilder(nationalNumber)
+        switch (random.nextInt(6)) {
+            case 0: // the example number
+                break
+            case 1: // one digit too many
+                digits.append(random.nextInt(10))
+                break
+            case 2: // one digit too few
+                digits.setLength(digits.length() - 1)
+                break
+            default: // random subscriber number
+                for (int i = Math.min(2, digits.length()); i < digits.length(); i++) {
+                    digits.setCharAt(i, Character.forDigit(random.nextInt(10), 10))
+                }
+        }
+        if (random.nextInt(50) == 0) {
+            digits.insert(random.nextInt(digits.length()), 'A')
+        }
+        return digits.toString()
+    }
+
+    private static String decorate(String digits, int countryCode, Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+                return "+" + countryCode + digits
+            case 1:
+                return "00" + countryCode + digits
+            case 2:
+                return "+" + countryCode + " " + digits.replaceAll(/(\d{2})/, '$1 ').trim()
+            case 3:
+                return " 0" + digits + " "
+            default:
+                return "0" + digits
+        }
+    }
+
+    /**
+     * The original normalization, before the optimizations of NormalizePhone
+     */
+    static class LegacyNormalizePhone {
+
+        static Map<String, Object> normalize(InputPhone phone) {
+            String phoneNumber = phone.getPhone().trim()
+            String countryCode = phone.getDefaultCountryCode().trim().toUpperCase()
+
+            Phonenumber.PhoneNumber parsedNumber
+            Map<String, Object> outputPhone = FIELDS.collectEntries { [it, null] }
+
+            try {
+                parsedNumber = phoneUtil.parse(phoneNumber, countryCode)
+            } catch (NumberParseException ignored) {
+                parsedNumber = null
+            }
+
+            String validityDetailedFlag = getValidityDetailedFlag(parsedNumber, phoneNumber)
+            Short validityFlag = getValidityFlag(validityDetailedFlag)
+            outputPhone.validity = new Validity(validityFlag, getValidityFlagDescription(validityFlag), validityDetailedFlag, getValidityDetailedFlagDescription(validityDetailedFlag))
+
+            if (parsedNumber != null) {
+                int interNationalPrefix = parsedNumber.getCountryCode()
+                outputPhone.internationalPrefix = interNationalPrefix
+                String zonalPrefix = String.valueOf(parsedNumber.getNationalNumber()).substring(0, phoneUtil.getLengthOfNationalDestinationCode(parsedNumber))
+                outputPhone.zonalPrefix = zonalPrefix
+                String numberWithoutIntNatPrefix = String.valueOf(parsedNumber.getNationalNumber()).substring(phoneUtil.getLengthOfNationalDestinationCode(parsedNumber))
+                outputPhone.number = numberWithoutIntNatPrefix
+                outputPhone.phoneDedupKey = parsedNumber.getNationalNumber()
+                outputPhone.phoneNormalized = "0" + zonalPrefix + "/" + numberWithoutIntNatPrefix
+                if (!zonalPrefix.isBlank()) {
+                    outputPhone.zoneId = interNationalPrefix * 10000 + Integer.parseInt(zonalPrefix)
+                }
+                outputPhone.countryCode = phoneUtil.getRegionCodeForCountryCode(interNationalPrefix)
+                if (validityFlag == 0 || validityFlag == 6) {
+                    outputPhone.phoneType = isMobileNumber(parsedNumber)
+                }
+                outputPhone.phoneIntNormalized = phoneUtil.format(parsedNumber, PhoneNumberUtil.PhoneNumberFormat.E164)
+                outputPhone.phoneIntNormalizedE123 = phoneUtil.format(parsedNumber, PhoneNumberUtil.PhoneNumberFormat.INTERNATIONAL)
+                outputPhone.phoneIntNormalizedSopres = "+" + interNationalPrefix + " (0" + zonalPrefix + ") " + numberWithoutIntNatPrefix
+            }
+
+            // the limited view only keeps the validity and the phone type
+            if ((validityFlag as int) in [1, 2, 3, 5, 8]) {
+                Map<String, Object> limited = FIELDS.collectEntries { [it, null] }
+                limited.validity = outputPhone.validity
+                limited.phoneType = outputPhone.phoneType
+                return limited
+            }
+            return outputPhone
+        }
+
+        static Short getValidityFlag(String validityDetailedFl) {
+            def flags = ["00": 0, "01": 1, "05": 1, "02": 5, "04": 8, "07": 2, "08": 4, "09": 6, "10": 3]
+            return (short) flags.getOrDefault(validityDetailedFl, 9)
+        }
+
+        static String getValidityDetailedFlag(Phonenumber.PhoneNumber parsedNumber, String phoneNumber) {
+            String validityDetailedFlag = "99"
+            if (parsedNumber != null) {
+                PhoneNumberUtil.ValidationResult result = phoneUtil.isPossibleNumberWithReason(parsedNumber)
+                boolean isValid = phoneUtil.isValidNumber(parsedNumber)
+                switch (result) {
+                    case PhoneNumberUtil.ValidationResult.IS_POSSIBLE:
+                    case PhoneNumberUtil.ValidationResult.IS_POSSIBLE_LOCAL_ONLY:
+                        if (isValid) {
+                            validityDetailedFlag = "00"
+                        } else if (isMobileNumber(parsedNumber) == 0 && parsedNumber.getNationalNumber() > 99999999) {
+                            validityDetailedFlag = "01"
+                        } else if (isMobileNumber(parsedNumber) == 1 && parsedNumber.getNationalNumber() < 100000000) {
+                            validityDetailedFlag = "05"
+                        } else {
+                            validityDetailedFlag = "04"
+                        }
+                        break
+                    case PhoneNumberUtil.ValidationResult.TOO_LONG:
+                        validityDetailedFlag = "01"
+                        break
+                    case PhoneNumberUtil.ValidationResult.TOO_SHORT:
+                        validityDetailedFlag = "05"
+                        break
+                    case PhoneNumberUtil.ValidationResult.INVALID_LENGTH:
+                        validityDetailedFlag = "02"
+                        break
+                    case PhoneNumberUtil.ValidationResult.INVALID_COUNTRY_CODE:
+                        validityDetailedFlag = "07"
+                        break
+                }
+            }
+            if (phoneNumber.isBlank()) {
+                validityDetailedFlag = "08"
+            }
+            if (phoneNumber.chars().anyMatch { Character.isLetter(it) }) {
+                validityDetailedFlag = "10"
+            }
+            return validityDetailedFlag
+        }
+
+        static Short isMobileNumber(Phonenumber.PhoneNumber parsedNumber) {
+            def phoneType = phoneUtil.getNumberType(parsedNumber)
+            String countryCode = phoneUtil.getRegionCodeForCountryCode(parsedNumber.getCountryCode())
+            String zone = Long.toString(parsedNumber.getNationalNumber()).substring(0, 3)
+            int zoneValue = Integer.parseInt("0" + zone)
+            if (phoneType == MOBILE) {
+                return 1
+            } else if ("BE" == countryCode && zoneValue >= 456 && zoneValue <= 499) {
+                return 1
+            }
+            return 0
+        }
+
+        static String getValidityFlagDescription(Short validityFl) {
+            def descriptions = [
+                    0: "phone number OK",
+                    1: "invalid length for National def",
+                    2: "invalid prefix",
+                    3: "invalid character (contains letters)",
+                    4: "Blank Phone",
+                    5: "invalid length for Zonal def",
+                    6: "ambiguous country detection",
+                    7: "set to blank because specified dedup format too short",
+                    8: "invalid number for Zonal def"]
+            return descriptions.getOrDefault(validityFl as int, "Unknown validity flag")
+        }
+
+        static String getValidityDetailedFlagDescription(String validityDetailedFl) {
+            def descriptions = [
+                    "00": "PHONE_OK",
+                    "01": "ERROR_OUTPUT_TOO_LONG",
+                    "02": "ERROR_INVALID_LENGTH_NAT",
+                    "04": "ERROR_NOT_LOCAL_IN_ASKED_COUNTRY",
+                    "05": "ERROR_TOO_SHORT_FOR_CC_COUNTRY",
+                    "07": "ERROR_UNKNOWN_INT_PREFIX",
+                    "08": "ERROR_BLANK_PHONE",
+                    "09": "ERROR_COUNTRY_CC_NOT_FOUND",
+                    "10": "ERROR_INVALID_CHARACTERS"]
+            return descriptions.getOrDefault(validityDetailedFl, "Unknown validity flag")
+        }
+
+    }
+
+}
@@ -0,0 +1,132 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.business.NormalizePhone
+import be.demo.normalizephone.business.NormalizePhoneBatch
+import be.demo.normalizephone.business.NormalizePhoneFile
+import be.demo.normalizephone.business.NormalizePhoneStream
+import be.demo.normalizephone.business.PhoneRecordFormat
+import be.demo.normalizephone.config.NormalizeProperties
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.TempDir
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.time.Duration
+
+class NormalizePhoneFileSpec extends Specification {
+
+    static final ObjectMapper objectMapper = new ObjectMapper()
+
+    @TempDir
+    Path directory
+
+    NormalizePhoneBatch normalizePhoneBatch = new NormalizePhoneBatch(new NormalizePhone(), new NormalizeProperties())
+
+    @Subject
+    NormalizePhoneFile normalizePhoneFile = new NormalizePhoneFile(normalizePhoneBatch, new NormalizePhoneStream(normalizePhoneBatch, objectMapper),
+            64, Duration.ZERO)
+
+    def cleanup() {
+        normalizePhoneBatch.shutdown()
+    }
+
+    def 'NDJSON files are normalized in the order of the input'() {
+
+        given: 'An NDJSON file of many chunks, with blank lines and Windows line ends'
+        def input = directory.resolve("phones.ndjson")
+        Files.writeString(input, (0..<1000).collect { /{"phone":"0479${String.format("%06d", it)}","defaultCountryCode":"BE"}/ }.join("\r\n") + "\n\n")
+        def output = directory.resolve("phones-normalized.ndjson")
+
+        when: 'We normalize the file'
+        def done = normalizePhoneFile.normalize(input, output, PhoneRecordFormat.NDJSON, false, Duration.ofHours(1), {})
+
+        then: 'Every output line belongs to the input line at the same position, and the checkpoint is removed'
+        def lines = Files.readAllLines(output)
+        done.records == 1000
+        done.inputOffset == Files.size(input)
+        done.percent == 100
+        lines.size() == 1000
+        (0..<1000).every { objectMapper.readTree(lines[it]).at("/outputPhone/phoneDedupKey").asLong() == 479000000L + it }
+        !Files.exists(directory.resolve("phones-normalized.ndjson" + NormalizePhoneFile.CHECKPOINT_SUFFIX))
+
+    }
+
+    def 'CSV files are normalized with one header line'() {
+
+        given: 'A CSV file with a header line'
+        def input = directory.resolve("phones.csv")
+        Files.writeString(input, 'phone,defaultCountryCode\n0479445566,BE\n"+33 6 12 27 18 93",FR\n+3247944556A,BE')
+        def output = directory.resolve("phones-normalized.csv")
+
+        when: 'We normalize the file'
+        normalizePhoneFile.normalize(input, output, PhoneRecordFormat.CSV, false, Duration.ofHours(1), {})
+
+        then: 'We expect the header line of the output and one line per record'
+        def lines = Files.readAllLines(output)
+        lines.size() == 4
+        lines[0].startsWith("phone,defaultCountryCode,")
+        lines[1] == '0479445566,BE,32,479,445566,479445566,0479/445566,BE,1,+32479445566,+32 479 44 55 66,+32 (0479) 445566,0,00,'
+        lines[2].startsWith('+33 6 12 27 18 93,FR,33,6,12271893,')
+        lines[3].startsWith('+3247944556A,BE,')
+
+    }
+
+    def 'A crashed normalization is resumed from its checkpoint'() {
+
+        given: 'A CSV file and its uninterrupted normalization'
+        def input = directory.resolve("phones.csv")
+        Files.writeString(input, "phone,defaultCountryCode\n" + (0..<1000).collect { "0479${String.format("%06d", it)},BE" }.join("\n") + "\n")
+        def expected = directory.resolve("expected.csv")
+        normalizePhoneFile.normalize(input, expected, PhoneRecordFormat.CSV, false, Duration.ofHours(1), {})
+        def output = directory.resolve("phones-normalized.csv")
+
+        when: 'The normalization crashes after some chunks'
+        int reports = 0
+        normalizePhoneFile.normalize(input, output, PhoneRecordFormat.CSV, false, Duration.ZERO, {
+            if (++reports == 5) {
+                throw new IllegalStateException("crash")
+            }
+        })
+
+        then: 'The checkpoint is kept'
+        thrown(IllegalStateException)
+        Files.exists(directory.resolve("phones-normalized.csv" + NormalizePhoneFile.CHECKPOINT_SUFFIX))
+
+        when: 'Records after the checkpoint are in the output too, and we resume the normalization'
+        Files.writeString(output, "garbage\n", java.nio.file.StandardOpenOption.APPEND)
+        def done = normalizePhoneFile.normalize(input, output, PhoneRecordFormat.CSV, true, Duration.ofHours(1), {})
+
+        then: 'The output is the same as the uninterrupted normalization'
+        done.resumedRecords == 5 * 64
+        done.records == 1000
+        Files.readAllLines(output) == Files.readAllLines(expected)
+        !Files.exists(directory.resolve("phones-normalized.csv" + NormalizePhoneFile.CHECKPOINT_SUFFIX))
+
+    }
+
+    def 'A checkpoint of an other version of the input is rejected'() {
+
+        given: 'A crashed normalization'
+        def input = directory.resolve("phones.ndjson")
+        Files.writeString(input, (0..<200).collect { /{"phone":"0479${String.format("%06d", it)}","defaultCountryCode":"BE"}/ }.join("\n"))
+        def output = directory.resolve("phones-normalized.ndjson")
+        try {
+            normalizePhoneFile.normalize(input, output, PhoneRecordFormat.NDJSON, false, Duration.ZERO, { throw new IllegalStateException("crash") })
+        } catch (IllegalStateException ignored) {
+        }
+
+        when: 'The input changes before we resume'
+        Files.setLastModifiedTime(input, FileTime.fromMillis(Files.getLastModifiedTime(input).toMillis() + 1000))
+        normalizePhoneFile.normalize(input, output, PhoneRecordFormat.NDJSON, true, Duration.ofHours(1), {})
+
+        then: 'We expect an exception, the output is not overwritten'
+        def exception = thrown(IllegalStateException)
+        exception.message.contains("other version of the input")
+        Files.size(output) > 0
+
+    }
+
+}
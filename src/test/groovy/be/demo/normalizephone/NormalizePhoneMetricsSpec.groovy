@@ -0,0 +1,83 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone
+import be.demo.normalizephone.business.NormalizePhone
+import be.demo.normalizephone.business.NormalizePhoneMetrics
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+import spock.lang.Subject
+
+class NormalizePhoneMetricsSpec extends Specification {
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry()
+
+    @Subject
+    NormalizePhone normalizePhone = new NormalizePhone(NormalizePhone.Options.builder().metrics(new NormalizePhoneMetrics(registry, ["BE", "FR"])).build())
+
+    def 'every normalization is counted per validity detailed flag and country'() {
+
+        when: 'We normalize phone numbers of a configured country, an other country and without country'
+        normalizePhone.normalize(new InputPhone("0479445566", "BE"))
+        normalizePhone.normalize(new InputPhone("0479445566", "BE"))
+        normalizePhone.normalize(new InputPhone("+31 20 123 4567", "BE"))
+        normalizePhone.normalize(new InputPhone("   ", "BE"))
+
+        then: 'The countries that are not configured share one tag value'
+        resultCount("00", "BE") == 2
+        resultCount("00", "OTHER") == 1
+        resultCount("08", "NONE") == 1
+        resultCount("00", "FR") == 0
+
+    }
+
+    def 'only the stages that ran are timed'() {
+
+        when: 'We normalize a valid phone number and a phone number of the limited view'
+        normalizePhone.normalize(new InputPhone("01 42 68 53 00", "FR"))
+        normalizePhone.normalize(new InputPhone("+3314268530000", "FR"))
+
+        then: 'The limited view skips the type and format stages'
+        stageCount("parse") == 2
+        stageCount("validate") == 2
+        stageCount("type") == 1
+        stageCount("format") == 1
+        stageCount("view") == 1
+
+    }
+
+    def 'a Belgian phone number is not parsed'() {
+
+        when: 'We normalize a Belgian phone number'
+        normalizePhone.normalize(new InputPhone("0479445566", "BE"))
+
+        then: 'Only the scan and the Belgian fast path are timed'
+        stageCount("scan") == 1
+        stageCount("belgium") == 1
+        stageCount("parse") == 0
+        resultCount("00", "BE") == 1
+
+    }
+
+    def 'input that can not be a phone number is not parsed'() {
+
+        when: 'We normalize a blank phone number, a phone number with letters and a phone number with one digit'
+        normalizePhone.normalize(new InputPhone("   ", "BE"))
+        normalizePhone.normalize(new InputPhone("+3247944556A", "BE"))
+        normalizePhone.normalize(new InputPhone("+4", "BE"))
+
+        then: 'Only the scan and the validity are timed'
+        stageCount("scan") == 3
+        stageCount("parse") == 0
+        stageCount("validate") == 3
+
+    }
+
+    private double resultCount(String detailedFlag, String countryCode) {
+        registry.get(NormalizePhoneMetrics.RESULT_COUNTER).tag("detailedFlag", detailedFlag).tag("countryCode", countryCode).counter().count()
+    }
+
+    private long stageCount(String stage) {
+        registry.get(NormalizePhoneMetrics.STAGE_TIMER).tag("stage", stage).timer().count()
+    }
+
+}
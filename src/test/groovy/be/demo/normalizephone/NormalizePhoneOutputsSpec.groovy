@@ -0,0 +1,63 @@
+package be.demo.normalizephone;
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.MockMvc
+import spock.lang.Specification
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+import static org.hamcrest.Matchers.containsString
+import static org.hamcrest.Matchers.not
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class NormalizePhoneOutputsSpec extends Specification {
+
+    @Autowired
+    MockMvc mockMvc
+
+    def 'without requested outputs all fields are returned as before'() {
+
+        expect:
+        mockMvc.perform(post("/normalize").contentType(MediaType.APPLICATION_JSON).content('{"phone":"025559719","defaultCountryCode":"BE"}'))
+                .andExpect(status().isOk())
+                .andExpect(content().json('{"inputPhone":{"phone":"025559719","defaultCountryCode":"BE"},"outputPhone":{"internationalPrefix":32,"zonalPrefix":"2","number":"5559719","phoneDedupKey":25559719,"phoneNormalized":"02/5559719","validity":{"flag":0,"message":"phone number OK","detailedFlag":"00","detailedMessage":"PHONE_OK"},"countryCode":"BE","phoneType":0,"phoneIntNormalized":"+3225559719","phoneIntNormalizedE123":"+32 2 555 97 19","phoneIntNormalizedSopres":"+32 (02) 5559719"}}', true))
+
+    }
+
+    def 'only the outputs requested by the input phone are returned'() {
+
+        expect:
+        mockMvc.perform(post("/normalize").contentType(MediaType.APPLICATION_JSON).content('{"phone":"025559719","defaultCountryCode":"BE","outputs":["phoneIntNormalized","phoneType"]}'))
+                .andExpect(status().isOk())
+                .andExpect(content().json('{"inputPhone":{"phone":"025559719","defaultCountryCode":"BE","outputs":["phoneType","phoneIntNormalized"]},"outputPhone":{"validity":{"flag":0,"message":"phone number OK","detailedFlag":"00","detailedMessage":"PHONE_OK"},"phoneType":0,"phoneIntNormalized":"+3225559719"}}', true))
+
+    }
+
+    def 'the outputs of the request apply to the phone numbers that do not request outputs'() {
+
+        expect:
+        mockMvc.perform(post("/normalize/batch").param("outputs", "phoneIntNormalized").contentType(MediaType.APPLICATION_JSON)
+                .content('[{"phone":"025559719","defaultCountryCode":"BE"},{"phone":"0479445566","defaultCountryCode":"BE","outputs":["countryCode"]}]'))
+                .andExpect(status().isOk())
+                .andExpect(content().json('[{"outputPhone":{"phoneIntNormalized":"+3225559719"}},{"outputPhone":{"countryCode":"BE"}}]'))
+                .andExpect(content().string(not(containsString("phoneIntNormalizedE123"))))
+
+    }
+
+    def 'an unknown output is a bad request'() {
+
+        expect:
+        mockMvc.perform(post("/normalize").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isBadRequest())
+
+        where:
+        body << ['{"phone":"025559719","defaultCountryCode":"BE","outputs":["unknown"]}']
+
+    }
+
+}
@@ -1,7 +1,10 @@
 package be.demo.normalizephone;
 
 import be.demo.normalizephone.beans.InputPhone
+import be.demo.normalizephone.beans.ValidityDetailedFlag
 import be.demo.normalizephone.business.NormalizePhone
+import be.demo.normalizephone.business.PhoneAnalysis
+import com.fasterxml.jackson.databind.ObjectMapper
 import com.google.i18n.phonenumbers.NumberParseException
 import com.google.i18n.phonenumbers.PhoneNumberUtil
 import com.google.i18n.phonenumbers.Phonenumber
@@ -123,11 +126,11 @@ class NormalizePhoneSpec extends Specification {
 
     }
 
-    // launch multiple tests on the function getValidityFlag() with input values and expected results
+    // launch multiple tests on the reduced validity flag of ValidityDetailedFlag with input values and expected results
     @Unroll
-    def 'test method getValidityFlag() with validityDetailedFlag "#validityDetailedFlag" should give the expected result #validityFlag'() {
-        when: 'Result back from function'
-        def output = normalizePhone.getValidityFlag(validityDetailedFlag)
+    def 'the validity detailed flag "#validityDetailedFlag" should give the validity flag #validityFlag'() {
+        when: 'Result back from the table of the validity detailed flags'
+        def output = ValidityDetailedFlag.of(validityDetailedFlag).validityFlag.flag
 
         then: 'We expect the following result'
         output == validityFlag
@@ -149,15 +152,14 @@ class NormalizePhoneSpec extends Specification {
         ""                   || 9 // Normally not used
     }
 
-    // launch multiple tests on the function getValidityFlag() with input values and expected results
+    // launch multiple tests on the validity detailed flag of the normalization with input values and expected results
     @Unroll
-    def 'test method getValidityDetailedFlag with inputPhone "#inputPhone" and inputDefaultCountry "#inputDefaultCountry" should give the expected result #validityFlagDetail'() {
-        when: 'Result back, after pre-treatments, from function'
-        Phonenumber.PhoneNumber parsedNumber
-        parsedNumber = phoneUtil.parse(inputPhone, inputDefaultCountry)
+    def 'the validity detailed flag of inputPhone "#inputPhone" and inputDefaultCountry "#inputDefaultCountry" should be #validityFlagDetail'() {
+        when: 'We normalize the input'
+        def outputPhone = normalizePhone.normalize(new InputPhone(inputPhone, inputDefaultCountry))
 
         then: 'We expect the following result'
-        normalizePhone.getValidityDetailedFlag(parsedNumber, inputPhone) == validityFlagDetail
+        outputPhone.validity.detailedFlag == validityFlagDetail
 
         where:
         // Better version than with spphone, google libphonenumber detects valid phone number via isValid function
@@ -196,9 +198,9 @@ class NormalizePhoneSpec extends Specification {
         thrown NumberParseException
     }
 
-    // launch multiple tests on the function getValidityFlag() with input values and expected results
+    // launch multiple tests on the mobile check of PhoneAnalysis with input values and expected results
     @Unroll
-    def 'test method isMobileNumber with inputPhone "#inputPhone" and inputDefaultCountry "#inputDefaultCountry" should give the expected result #isMobileNumber'() {
+    def 'the analysis of inputPhone "#inputPhone" and inputDefaultCountry "#inputDefaultCountry" should give the mobile flag #isMobileNumber'() {
         when: 'Result back, after pre-treatments, from function'
         Phonenumber.PhoneNumber parsedNumber
         parsedNumber = phoneUtil.parse(inputPhone, inputDefaultCountry)
@@ -206,7 +208,7 @@ class NormalizePhoneSpec extends Specification {
         then: 'We expect the following result'
         // Instead of putting value in field output, use the function to compare,
         // so you get input information which is handy when having tests that fails !
-        normalizePhone.isMobileNumber(parsedNumber) == isMobileNumber
+        new PhoneAnalysis(parsedNumber).mobile == isMobileNumber
 
         where:
         inputPhone      | inputDefaultCountry || isMobileNumber
@@ -225,19 +227,11 @@ class NormalizePhoneSpec extends Specification {
         "+3225559656"   | ""                  || 0
     }
 
-    def 'test method isMobileNumber with parsedNumber null should throw a null'() {
-        when: 'Calling the Google phone util with null values'
-        def isMobileNumber = normalizePhone.isMobileNumber(null)
-
-        then: 'A NumberParseException should be thrown'
-        isMobileNumber == null
-    }
-
     // launch multiple tests on the function isBetweenBelgiumMobileZones() with input values and expected results
     @Unroll
     def 'test with method isBetweenBelgiumMobileZones with zone "#zone" should return #isBetweenBelgiumMobileZones'() {
         when: 'Result back from function isBetweenBelgiumMobileZones'
-        def output = normalizePhone.isBetweenBelgiumMobileZones(zone)
+        def output = PhoneAnalysis.isBetweenBelgiumMobileZones(zone)
 
         then: 'We expect the following result'
         output == isBetweenBelgiumMobileZones
@@ -254,4 +248,27 @@ class NormalizePhoneSpec extends Specification {
         ""     || false
     }
 
-}
\ No newline at end of file
+    // the JSON of the shared validities must stay the same for the consumers
+    @Unroll
+    def 'validity of validity detailed flag #validityDetailedFlag should be serialized as #json'() {
+        when: 'Serialize the validity of the validity detailed flag'
+        def output = new ObjectMapper().writeValueAsString(validityDetailedFlag.validity)
+
+        then: 'We expect the following JSON'
+        output == json
+
+        where:
+        validityDetailedFlag                            || json
+        ValidityDetailedFlag.PHONE_OK                   || '{"flag":0,"message":"phone number OK","detailedFlag":"00","detailedMessage":"PHONE_OK"}'
+        ValidityDetailedFlag.OUTPUT_TOO_LONG            || '{"flag":1,"message":"invalid length for National def","detailedFlag":"01","detailedMessage":"ERROR_OUTPUT_TOO_LONG"}'
+        ValidityDetailedFlag.INVALID_LENGTH_NAT         || '{"flag":5,"message":"invalid length for Zonal def","detailedFlag":"02","detailedMessage":"ERROR_INVALID_LENGTH_NAT"}'
+        ValidityDetailedFlag.NOT_LOCAL_IN_ASKED_COUNTRY || '{"flag":8,"message":"invalid number for Zonal def","detailedFlag":"04","detailedMessage":"ERROR_NOT_LOCAL_IN_ASKED_COUNTRY"}'
+        ValidityDetailedFlag.TOO_SHORT_FOR_CC_COUNTRY   || '{"flag":1,"message":"invalid length for National def","detailedFlag":"05","detailedMessage":"ERROR_TOO_SHORT_FOR_CC_COUNTRY"}'
+        ValidityDetailedFlag.UNKNOWN_INT_PREFIX         || '{"flag":2,"message":"invalid prefix","detailedFlag":"07","detailedMessage":"ERROR_UNKNOWN_INT_PREFIX"}'
+        ValidityDetailedFlag.BLANK_PHONE                || '{"flag":4,"message":"Blank Phone","detailedFlag":"08","detailedMessage":"ERROR_BLANK_PHONE"}'
+        ValidityDetailedFlag.COUNTRY_CC_NOT_FOUND       || '{"flag":6,"message":"ambiguous country detection","detailedFlag":"09","detailedMessage":"ERROR_COUNTRY_CC_NOT_FOUND"}'
+        ValidityDetailedFlag.INVALID_CHARACTERS         || '{"flag":3,"message":"invalid character (contains letters)","detailedFlag":"10","detailedMessage":"ERROR_INVALID_CHARACTERS"}'
+        ValidityDetailedFlag.UNKNOWN                    || '{"flag":9,"message":"Unknown validity flag","detailedFlag":"99","detailedMessage":"Unknown validity flag"}'
+    }
+
+}
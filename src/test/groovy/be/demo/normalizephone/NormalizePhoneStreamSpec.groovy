@@ -0,0 +1,65 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.business.NormalizePhone
+import be.demo.normalizephone.business.NormalizePhoneBatch
+import be.demo.normalizephone.business.NormalizePhoneStream
+import be.demo.normalizephone.business.PhoneRecordFormat
+import be.demo.normalizephone.config.NormalizeProperties
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+import spock.lang.Subject
+
+class NormalizePhoneStreamSpec extends Specification {
+
+    static final ObjectMapper objectMapper = new ObjectMapper()
+
+    NormalizePhoneBatch normalizePhoneBatch = new NormalizePhoneBatch(new NormalizePhone(), new NormalizeProperties())
+
+    @Subject
+    NormalizePhoneStream normalizePhoneStream = new NormalizePhoneStream(normalizePhoneBatch, objectMapper)
+
+    def cleanup() {
+        normalizePhoneBatch.shutdown()
+    }
+
+    def 'NDJSON records are normalized in the order of the input'() {
+
+        given: 'More NDJSON records than fit in one chunk, with an invalid record'
+        def records = (0..<2000).collect { /{"phone":"0479${String.format("%06d", it)}","defaultCountryCode":"BE"}/ }
+        records[1000] = '{"phone":'
+        def output = new StringWriter()
+
+        when: 'We normalize the stream'
+        def count = normalizePhoneStream.normalize(new StringReader(records.join("\n")), output, PhoneRecordFormat.NDJSON)
+
+        then: 'Every output line belongs to the input line at the same position'
+        def lines = output.toString().readLines()
+        count == 2000
+        lines.size() == 2000
+        (0..<2000).findAll { it != 1000 }.every {
+            objectMapper.readTree(lines[it]).at("/outputPhone/phoneDedupKey").asLong() == 479000000L + it
+        }
+        objectMapper.readTree(lines[1000]).get("error").asText().startsWith("Invalid record")
+
+    }
+
+    def 'CSV records are normalized with a header line'() {
+
+        given: 'CSV records with a header line'
+        def input = 'phone,defaultCountryCode\n0479445566,BE\n"+33 6 12 27 18 93",FR\n+3247944556A,BE\n'
+        def output = new StringWriter()
+
+        when: 'We normalize the stream'
+        normalizePhoneStream.normalize(new StringReader(input), output, PhoneRecordFormat.CSV)
+
+        then: 'We expect a header line and one line per record'
+        def lines = output.toString().readLines()
+        lines.size() == 4
+        lines[0].startsWith("phone,defaultCountryCode,")
+        lines[1] == '0479445566,BE,32,479,445566,479445566,0479/445566,BE,1,+32479445566,+32 479 44 55 66,+32 (0479) 445566,0,00,'
+        lines[2].startsWith('+33 6 12 27 18 93,FR,33,6,12271893,')
+        lines[3] == '+3247944556A,BE,,,,,,,,,,,3,10,'
+
+    }
+
+}
@@ -0,0 +1,65 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone
+import be.demo.normalizephone.beans.OutputPhone
+import be.demo.normalizephone.beans.ValidityDetailedFlag
+import be.demo.normalizephone.business.NormalizePhone
+import be.demo.normalizephone.business.NormalizePhoneWarmup
+import be.demo.normalizephone.config.NormalizeProperties
+import org.springframework.context.support.GenericApplicationContext
+import spock.lang.Specification
+
+class NormalizePhoneWarmupSpec extends Specification {
+
+    NormalizeProperties properties = new NormalizeProperties()
+
+    def setup() {
+        properties.warmup.regions = ["BE", "FR"]
+        properties.warmup.rounds = 3
+    }
+
+    def 'the warm-up normalizes the example numbers of the configured regions to their expected validity'() {
+
+        given: 'A warm-up of two regions that records the normalized numbers'
+        def normalized = []
+        def normalizePhone = new NormalizePhone() {
+            @Override
+            OutputPhone normalize(InputPhone phone) {
+                def outputPhone = super.normalize(phone)
+                normalized << [phone.phone, phone.defaultCountryCode, outputPhone.validity.detailedFlag]
+                return outputPhone
+            }
+        }
+        def warmup = new NormalizePhoneWarmup(properties, new GenericApplicationContext(), normalizePhone)
+
+        when: 'We warm up'
+        def count = warmup.warmUp()
+
+        then: 'A fixed line and a mobile number in national and international format, and an invalid number, per region and round'
+        normalized.size() == 2 * 5 * 3
+        count == 2 * 5 * 3
+
+        and: 'The example numbers are valid, the invalid number of each region is not'
+        normalized.take(10) == [["012 34 56 78", "BE", "00"], ["+3212345678", "BE", "00"], ["0470 12 34 56", "BE", "00"], ["+32470123456", "BE", "00"],
+                                ["123", "BE", "05"], ["01 23 45 67 89", "FR", "00"], ["+33123456789", "FR", "00"], ["06 12 34 56 78", "FR", "00"],
+                                ["+33612345678", "FR", "00"], ["123", "FR", "05"]]
+
+    }
+
+    def 'the warm-up only counts the numbers that get their expected validity'() {
+
+        given: 'A warm-up with a normalization that finds every number invalid'
+        def normalizePhone = new NormalizePhone() {
+            @Override
+            OutputPhone normalize(InputPhone phone) {
+                return OutputPhone.of(ValidityDetailedFlag.UNKNOWN)
+            }
+        }
+        def warmup = new NormalizePhoneWarmup(properties, new GenericApplicationContext(), normalizePhone)
+
+        expect: 'Only the invalid number of each region is counted'
+        warmup.warmUp() == 2 * 1 * 3
+
+    }
+
+}
@@ -0,0 +1,208 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.InputPhone
+import be.demo.normalizephone.beans.OutputField
+import be.demo.normalizephone.business.NormalizePhone
+import be.demo.normalizephone.business.NormalizeResultStore
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+import spock.lang.TempDir
+
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+
+class NormalizeResultStoreSpec extends Specification {
+
+    @TempDir
+    Path directory
+
+    SimpleMeterRegistry registry = new SimpleMeterRegistry()
+
+    static Clock day(int day) {
+        Clock.fixed(Instant.parse("2026-01-01T12:00:00Z").plus(Duration.ofDays(day)), ZoneOffset.UTC)
+    }
+
+    NormalizeResultStore open(Path file, Duration retention, Clock clock) {
+        def store = new NormalizeResultStore(file, "", 100, retention, clock)
+        store.bindTo(registry)
+        return store
+    }
+
+    def 'a stored phone number is read from the store, with only the requested fields'() {
+
+        given: 'A normalization with a result store'
+        def store = open(directory.resolve("results.bin"), null, day(0))
+        def normalizePhone = new NormalizePhone(NormalizePhone.Options.builder().store(store).build())
+
+        when: 'We normalize the same phone number twice, the second time only its E.164 format'
+        def first = normalizePhone.normalize(new InputPhone("0612271893", "FR"))
+        def second = normalizePhone.normalize(new InputPhone(" 0612271893 ", "fr"), EnumSet.of(OutputField.PHONE_INT_NORMALIZED))
+
+        then: 'The second normalization is read from the store'
+        registry.get("normalize.store.lookups").tag("result", "miss").functionCounter().count() == 1
+        registry.get("normalize.store.lookups").tag("result", "hit").functionCounter().count() == 1
+        store.records == 1
+        first.phoneIntNormalizedE123 == "+33 6 12 27 18 93"
+        second.phoneIntNormalized == "+33612271893"
+        second.validity == first.validity
+        second.phoneIntNormalizedE123 == null
+        second.countryCode == null
+
+        cleanup:
+        store.close()
+    }
+
+    def 'a phone number that cannot be rebuilt from a record is not stored'() {
+
+        given: 'A normalization with a result store'
+        def store = open(directory.resolve("results.bin"), null, day(0))
+        def normalizePhone = new NormalizePhone(NormalizePhone.Options.builder().store(store).build())
+
+        when: 'We normalize a phone number with an extension twice'
+        def first = normalizePhone.normalize(new InputPhone("+1 650 253 0000 #1234", "US"))
+        def second = normalizePhone.normalize(new InputPhone("+1 650 253 0000 #1234", "US"))
+
+        then: 'It is normalized both times'
+        store.records == 0
+        registry.get("normalize.store.unstorable").functionCounter().count() == 2
+        first == second
+        first.phoneIntNormalizedE123 == "+1 650-253-0000 ext. 1234"
+
+        cleanup:
+        store.close()
+    }
+
+    def 'a store written by an other version is emptied'() {
+
+        given: 'A store with a phone number'
+        def file = directory.resolve("results.bin")
+        def store = open(file, null, day(0))
+        store.get("0479445566", "BE") { phone, country -> new NormalizePhone().normalize(new InputPhone(phone, country)) }
+        store.close()
+
+        and: 'An other version stamp in the file'
+        FileChannel.open(file, StandardOpenOption.WRITE).withCloseable {
+            it.write(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, 42L), 8)
+        }
+
+        when: 'We open the store'
+        def reopened = open(file, null, day(0))
+
+        then: 'It is empty'
+        reopened.records == 0
+
+        cleanup:
+        reopened?.close()
+    }
+
+    def 'a store written with other inference settings is emptied'() {
+
+        given: 'A store with a phone number, written with the country inference'
+        def file = directory.resolve("results.bin")
+        def normalizer = { phone, country -> new NormalizePhone().normalize(new InputPhone(phone, country)) }
+        def store = new NormalizeResultStore(file, "inference=BE,NL", 100, null, day(0))
+        store.get("0479445566", "BE", normalizer)
+        store.close()
+
+        when: 'We open the store with the same settings, then with other candidate regions and without inference'
+        def records = ["inference=BE,NL", "inference=NL,BE", ""].collect { settings ->
+            new NormalizeResultStore(file, settings, 100, null, day(0)).withCloseable { it.records }
+        }
+
+        then: 'Only the store opened with the same settings keeps its phone number'
+        records == [1, 0, 0]
+
+    }
+
+    def 'the phone numbers that were not used during the retention are removed at startup'() {
+
+        given: 'A store with 3 phone numbers, of which 1 is used again 20 days later'
+        def file = directory.resolve("results.bin")
+        def normalizer = { phone, country -> new NormalizePhone().normalize(new InputPhone(phone, country)) }
+        def store = open(file, Duration.ofDays(30), day(0))
+        ["0479445566", "025559719", "0612271893"].each { store.get(it, "BE", normalizer) }
+        store.close()
+        store = open(file, Duration.ofDays(30), day(20))
+        store.get("025559719", "BE", normalizer)
+        store.close()
+
+        when: 'We open the store 40 days after the first use'
+        def compacted = open(file, Duration.ofDays(30), day(40))
+        def kept = compacted.get("025559719", "BE") { phone, country -> throw new AssertionError("not stored") }
+
+        then: 'Only the phone number used 20 days ago is kept'
+        compacted.records == 1
+        kept.phoneIntNormalized == "+3225559719"
+
+        cleanup:
+        compacted?.close()
+    }
+
+    def 'a full store replaces the phone numbers that were not used again, also within one day'() {
+
+        given: 'A full store with 100 phone numbers, of which the last 50 are used again on the same day'
+        def store = open(directory.resolve("results.bin"), null, day(0))
+        def normalizer = { phone, country -> new NormalizePhone().normalize(new InputPhone(phone, country)) }
+        def stored = { phone -> store.get(phone, "BE") { p, country -> throw new AssertionError(phone + " not stored") } }
+        (0..<100).each { store.get(String.format("0479%06d", it), "BE", normalizer) }
+        (50..<100).each { stored(String.format("0479%06d", it)) }
+
+        when: 'We store 50 more phone numbers'
+        (100..<150).each { store.get(String.format("0479%06d", it), "BE", normalizer) }
+
+        then: 'The phone numbers that were not used again are replaced one by one'
+        store.records == 100
+        registry.get("normalize.store.evicted").functionCounter().count() == 50
+        (50..<150).every { stored(String.format("0479%06d", it)).phoneIntNormalized == String.format("+32479%06d", it) }
+
+        when: 'We store a phone number that was replaced'
+        def normalized = 0
+        store.get("0479000010", "BE") { phone, country -> normalized++; normalizer(phone, country) }
+
+        then: 'It is normalized again'
+        normalized == 1
+        store.records == 100
+
+        cleanup:
+        store?.close()
+    }
+
+    def 'a full store keeps finding its phone numbers after many replacements'() {
+
+        given: 'A full store'
+        def file = directory.resolve("results.bin")
+        def store = open(file, null, day(0))
+        def normalizer = { phone, country -> new NormalizePhone().normalize(new InputPhone(phone, country)) }
+
+        when: 'We store 10 times more phone numbers than it holds, none of them used again'
+        (0..<1000).each { store.get(String.format("02%07d", it * 7919 % 10000000), "BE", normalizer) }
+
+        then: 'The last 100 phone numbers are stored'
+        store.records == 100
+        registry.get("normalize.store.evicted").functionCounter().count() == 900
+        (900..<1000).every { i ->
+            store.get(String.format("02%07d", i * 7919 % 10000000), "BE") { phone, country -> throw new AssertionError(phone + " not stored") } != null
+        }
+
+        when: 'We open the store again'
+        store.close()
+        store = open(file, null, day(0))
+
+        then: 'The replaced records are found from the file'
+        store.records == 100
+        (900..<1000).every { i ->
+            store.get(String.format("02%07d", i * 7919 % 10000000), "BE") { phone, country -> throw new AssertionError(phone + " not stored") } != null
+        }
+
+        cleanup:
+        store?.close()
+    }
+
+}
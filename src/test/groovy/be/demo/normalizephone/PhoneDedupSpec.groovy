@@ -0,0 +1,150 @@
+package be.demo.normalizephone;
+
+import be.demo.normalizephone.beans.DedupRecord
+import be.demo.normalizephone.beans.InputPhone
+import be.demo.normalizephone.business.NormalizePhone
+import be.demo.normalizephone.business.NormalizePhoneBatch
+import be.demo.normalizephone.business.PhoneDedup
+import be.demo.normalizephone.business.PhoneDedupIndex
+import be.demo.normalizephone.config.NormalizeProperties
+import spock.lang.Specification
+import spock.lang.TempDir
+import spock.lang.Timeout
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+class PhoneDedupSpec extends Specification {
+
+    @TempDir
+    Path directory
+
+    def 'the index keeps the record IDs per key while it grows, and reloads them after a restart'() {
+
+        given: 'An index with a small initial capacity'
+        def index = new PhoneDedupIndex(store, directory, 10)
+
+        when: 'We add 5000 keys with 1 to 3 records each, and add some records twice'
+        (1..5000).each { key ->
+            (1..(key % 3 + 1)).each { index.add(key * 7919L, key * 10L + it) }
+        }
+        index.add(7919L, 11L)
+        index.close()
+
+        and: 'We open the index again'
+        def reopened = new PhoneDedupIndex(store, directory, 10)
+
+        then: 'All keys have their records, the last added first, without the records added twice'
+        reopened.keys == 5000
+        reopened.records == (1..5000).sum { it % 3 + 1 }
+        (1..5000).every { key ->
+            reopened.count(key * 7919L) == key % 3 + 1 &&
+                    reopened.get(key * 7919L, 10) == ((key % 3 + 1)..1).collect { key * 10L + it } as long[]
+        }
+        reopened.count(13L) == 0
+        reopened.get(13L, 10).length == 0
+
+        cleanup:
+        reopened?.close()
+
+        where:
+        store << PhoneDedupIndex.Store.values()
+    }
+
+    @Timeout(30)
+    def 'a key shared by many records is ingested without walking its records'() {
+
+        given: 'An index with a small initial capacity'
+        def index = new PhoneDedupIndex(store, directory, 10)
+
+        when: 'We add 200000 records to one key, and add all of them a second time'
+        (1..200000).each { index.add(4711L, it) }
+        (1..200000).each { index.add(4711L, it) }
+        index.close()
+
+        and: 'We open the index again and add the records a third time'
+        def reopened = new PhoneDedupIndex(store, directory, 10)
+        (1..200000).each { reopened.add(4711L, it) }
+
+        then: 'The key has every record once, the last added first'
+        reopened.keys == 1
+        reopened.records == 200000
+        reopened.count(4711L) == 200000
+        reopened.get(4711L, 3) == [200000L, 199999L, 199998L] as long[]
+
+        when: 'We add a new record to the key'
+        def count = reopened.add(4711L, 200001L)
+
+        then: 'It is added'
+        count == 200001
+
+        cleanup:
+        reopened?.close()
+
+        where:
+        store << PhoneDedupIndex.Store.values()
+    }
+
+    def 'a directory with other files is not opened as an index'() {
+
+        given: 'A directory with a table file that is not an index'
+        Files.write(directory.resolve("table.bin"), new byte[64])
+        Files.write(directory.resolve("records.bin"), "not an index".padRight(64).bytes)
+
+        when: 'We open the directory'
+        new PhoneDedupIndex(PhoneDedupIndex.Store.HEAP, directory, 10)
+
+        then: 'The index is refused'
+        thrown(IOException)
+    }
+
+    def 'records with the same phone number in different formats share the same key'() {
+
+        given: 'The dedup service'
+        def properties = new NormalizeProperties()
+        properties.dedup.maxRecordIds = 2
+        def phoneService = new NormalizePhone()
+        def batchService = new NormalizePhoneBatch(phoneService, properties)
+        def index = new PhoneDedupIndex(PhoneDedupIndex.Store.HEAP, directory, 10)
+        def dedup = new PhoneDedup(phoneService, batchService, index, properties)
+
+        when: 'We ingest records with the same phone numbers in different formats'
+        def matches = dedup.ingest([
+                new DedupRecord(1L, "0479 44 55 66", "BE"),
+                new DedupRecord(2L, "+32479445566", "FR"),
+                new DedupRecord(3L, "0612271893", "FR"),
+                new DedupRecord(4L, "0032 479/44.55.66", "BE"),
+                new DedupRecord(5L, "123", "BE"),
+                new DedupRecord(null, "0479445566", "BE")])
+
+        then: 'Each record gets the records that share its phone number'
+        matches*.recordId == [1L, 2L, 3L, 4L, 5L, null]
+        matches[0].recordCount == 1 && matches[0].recordIds == [1L]
+        matches[1].recordCount == 2 && matches[1].recordIds == [2L, 1L]
+        matches[2].recordCount == 1 && matches[2].recordIds == [3L]
+        matches[3].recordCount == 3 && matches[3].recordIds == [4L, 2L]
+        matches[3].internationalPrefix == 32 && matches[3].phoneDedupKey == 479445566L
+
+        and: 'A phone number without dedup key and a record without ID are not indexed'
+        matches[4].recordCount == null && matches[4].validity.flag != 0
+        matches[5].error
+        index.records == 4
+
+        when: 'We query a phone number'
+        def match = dedup.query(new InputPhone("+32 479 44 55 66", "NL"))
+        def unknown = dedup.query(new InputPhone("02 555 97 19", "BE"))
+
+        then: 'The records of the phone number are returned with its zone'
+        match.recordId == null
+        match.recordCount == 3
+        match.recordIds == [4L, 2L]
+        match.zoneId == 320479
+        unknown.recordCount == 0
+        unknown.recordIds == []
+
+        cleanup:
+        batchService.shutdown()
+        index.close()
+    }
+
+}
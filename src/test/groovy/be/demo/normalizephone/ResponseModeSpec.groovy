@@ -0,0 +1,105 @@
+package be.demo.normalizephone;
+
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.MockMvc
+import spock.lang.Specification
+
+import java.util.zip.GZIPOutputStream
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
+
+@SpringBootTest(properties = ["normalize.decompression.max-size=32KB", "normalize.decompression.max-stream-size=1MB"])
+@AutoConfigureMockMvc
+class ResponseModeSpec extends Specification {
+
+    static final String PHONES = '[{"phone":"0479445566","defaultCountryCode":"BE","id":"customer-1"},{"phone":"+3247944556A","defaultCountryCode":"BE","id":"customer-2"}]'
+
+    @Autowired
+    MockMvc mockMvc
+
+    def 'the lean response leaves out the input, the id response only echoes the correlation id'() {
+
+        expect: 'The full response echoes the input with its id'
+        mockMvc.perform(post("/normalize").contentType(MediaType.APPLICATION_JSON).content('{"phone":"0479445566","defaultCountryCode":"BE","id":"customer-1"}'))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$.inputPhone.id').value("customer-1"))
+                .andExpect(jsonPath('$.outputPhone.phoneIntNormalized').value("+32479445566"))
+
+        and: 'The lean response has only the output'
+        mockMvc.perform(post("/normalize/batch?response=lean").contentType(MediaType.APPLICATION_JSON).content(PHONES))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$[0].inputPhone').doesNotExist())
+                .andExpect(jsonPath('$[0].id').doesNotExist())
+                .andExpect(jsonPath('$[0].outputPhone.phoneIntNormalized').value("+32479445566"))
+
+        and: 'The id response has the correlation id next to the output'
+        mockMvc.perform(post("/normalize/batch?response=ID").contentType(MediaType.APPLICATION_JSON).content(PHONES))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$[0].inputPhone').doesNotExist())
+                .andExpect(jsonPath('$[0].id').value("customer-1"))
+                .andExpect(jsonPath('$[1].id').value("customer-2"))
+                .andExpect(jsonPath('$[1].outputPhone.validity').exists())
+
+        and: 'The NDJSON stream has the same envelopes'
+        mockMvc.perform(post("/normalize/stream?response=id").contentType(MediaType.APPLICATION_NDJSON)
+                .content('{"phone":"0479445566","defaultCountryCode":"BE","id":"customer-1"}\n'))
+                .andExpect(status().isOk())
+                .andExpect(content().string(org.hamcrest.Matchers.startsWith('{"outputPhone":')))
+                .andExpect(content().string(org.hamcrest.Matchers.containsString('"id":"customer-1"')))
+
+        and: 'A CSV stream has fixed columns, a lean or id response is refused'
+        mockMvc.perform(post("/normalize/stream?response=id").contentType("text/csv").content('0479445566,BE\n'))
+                .andExpect(status().isBadRequest())
+
+        and: 'An unknown response mode is refused'
+        mockMvc.perform(post("/normalize?response=tiny").contentType(MediaType.APPLICATION_JSON).content('{"phone":"0479445566","defaultCountryCode":"BE"}'))
+                .andExpect(status().isBadRequest())
+
+    }
+
+    def 'a gzip request body is decompressed up to the maximum size'() {
+
+        expect: 'A gzip batch is normalized'
+        mockMvc.perform(post("/normalize/batch").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .content(gzip(PHONES)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath('$[0].outputPhone.phoneIntNormalized').value("+32479445566"))
+
+        and: 'A gzip body that decompresses past the maximum after several reads of the JSON parser is refused'
+        def large = '[' + (['{"phone":"0479445566","defaultCountryCode":"BE"}'] * 1000).join(',') + ']'
+        mockMvc.perform(post("/normalize/batch").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .content(gzip(large)))
+                .andExpect(status().isPayloadTooLarge())
+
+        and: 'A stream is normalized while it is read, it has its own maximum'
+        def lines = (['{"phone":"0479445566","defaultCountryCode":"BE"}'] * 1000).join('\n') + '\n'
+        mockMvc.perform(post("/normalize/stream").contentType(MediaType.APPLICATION_NDJSON).header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .content(gzip(lines)))
+                .andExpect(status().isOk())
+
+        and: 'A gzip body that is no JSON is still a bad request'
+        mockMvc.perform(post("/normalize/batch").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .content(gzip('[{"phone":')))
+                .andExpect(status().isBadRequest())
+
+        and: 'An other encoding is refused'
+        mockMvc.perform(post("/normalize/batch").contentType(MediaType.APPLICATION_JSON).header(HttpHeaders.CONTENT_ENCODING, "br")
+                .content(PHONES))
+                .andExpect(status().isUnsupportedMediaType())
+
+    }
+
+    private static byte[] gzip(String content) {
+        def compressed = new ByteArrayOutputStream()
+        new GZIPOutputStream(compressed).withCloseable { it.write(content.bytes) }
+        compressed.toByteArray()
+    }
+
+}